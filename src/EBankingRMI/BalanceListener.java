@@ -0,0 +1,17 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Remote Balance Listener
+ * Client export đối tượng này và đăng ký qua BankService.addBalanceListener(...);
+ * server gọi lại khi một giao dịch đã commit làm thay đổi số dư tài khoản
+ */
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface BalanceListener extends Remote {
+    
+    // Số dư mới của tài khoản; changes = số giao dịch được gộp vào lần báo này
+    // (nhiều thay đổi liên tiếp chỉ báo số dư cuối cùng)
+    void balanceChanged(String accountNumber, double balance, int changes) throws RemoteException;
+}
@@ -0,0 +1,188 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Balance Notifier
+ * Đẩy thay đổi số dư tới các BalanceListener của client, không chặn luồng giao dịch:
+ * - publish() chỉ đặt sự kiện vào hàng đợi của từng listener rồi trả về ngay
+ * - Hàng đợi mỗi listener có giới hạn (ebanking.rmi.listenerQueue, mặc định 16 tài khoản)
+ *   và gộp các thay đổi liên tiếp của cùng tài khoản thành một lần báo số dư mới nhất
+ * - Mỗi listener được gửi tuần tự trên pool thread chung; listener đã chết
+ *   (NoSuchObjectException/ConnectException hoặc lỗi liên tiếp) bị loại bỏ
+ */
+
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BalanceNotifier {
+    private static final int QUEUE_CAPACITY = Integer.getInteger("ebanking.rmi.listenerQueue", 16);
+    private static final int DELIVERY_THREADS = Integer.getInteger("ebanking.rmi.notifierThreads", 4);
+    private static final int MAX_FAILURES = 3;
+    
+    // số tài khoản -> listener đang theo dõi
+    private final Map<String, Set<ListenerQueue>> byAccount = new ConcurrentHashMap<>();
+    private final Map<BalanceListener, ListenerQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService delivery;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    
+    public BalanceNotifier() {
+        AtomicInteger threadId = new AtomicInteger();
+        delivery = Executors.newFixedThreadPool(DELIVERY_THREADS, r -> {
+            Thread t = new Thread(r, "balance-notifier-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    public void register(String accountNumber, BalanceListener listener) {
+        ListenerQueue queue = queues.computeIfAbsent(listener, ListenerQueue::new);
+        queue.accounts.add(accountNumber);
+        byAccount.computeIfAbsent(accountNumber, k -> ConcurrentHashMap.newKeySet()).add(queue);
+    }
+    
+    public void unregister(BalanceListener listener) {
+        ListenerQueue queue = queues.remove(listener);
+        if (queue == null) {
+            return;
+        }
+        for (String accountNumber : queue.accounts) {
+            Set<ListenerQueue> listeners = byAccount.get(accountNumber);
+            if (listeners != null) {
+                listeners.remove(queue);
+                if (listeners.isEmpty()) {
+                    byAccount.remove(accountNumber, listeners);
+                }
+            }
+        }
+    }
+    
+    // false khi listener đã bị gỡ, kể cả khi bị loại vì client không còn nhận được
+    public boolean isRegistered(BalanceListener listener) {
+        return queues.containsKey(listener);
+    }
+    
+    // Có listener nào cho tài khoản không: tránh đọc lại số dư khi không ai theo dõi
+    public boolean hasListeners(String accountNumber) {
+        Set<ListenerQueue> listeners = byAccount.get(accountNumber);
+        return listeners != null && !listeners.isEmpty();
+    }
+    
+    // Gọi sau khi giao dịch đã commit
+    public void publish(String accountNumber, double balance) {
+        Set<ListenerQueue> listeners = byAccount.get(accountNumber);
+        if (listeners == null) {
+            return;
+        }
+        for (ListenerQueue queue : listeners) {
+            if (queue.offer(accountNumber, balance)) {
+                delivery.execute(queue::drain);
+            }
+        }
+    }
+    
+    public String getStats() {
+        return "listeners=" + queues.size() + " delivered=" + delivered.sum()
+                + " coalesced=" + coalesced.sum() + " dropped=" + dropped.sum();
+    }
+    
+    public void close() {
+        delivery.shutdownNow();
+        queues.clear();
+        byAccount.clear();
+    }
+    
+    private static class Pending {
+        private double balance;
+        private int changes;
+    }
+    
+    private class ListenerQueue {
+        private final BalanceListener listener;
+        private final Set<String> accounts = ConcurrentHashMap.newKeySet();
+        // Thứ tự chèn: khi đầy, bỏ sự kiện cũ nhất
+        private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+        private boolean scheduled = false;
+        private int failures = 0;
+        
+        ListenerQueue(BalanceListener listener) {
+            this.listener = listener;
+        }
+        
+        // true nếu cần lên lịch gửi (chưa có luồng nào đang gửi cho listener này)
+        synchronized boolean offer(String accountNumber, double balance) {
+            Pending event = pending.get(accountNumber);
+            if (event != null) {
+                coalesced.increment();
+            } else {
+                if (pending.size() >= QUEUE_CAPACITY) {
+                    Iterator<String> oldest = pending.keySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    dropped.increment();
+                }
+                event = new Pending();
+                pending.put(accountNumber, event);
+            }
+            event.balance = balance;
+            event.changes++;
+            
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+        
+        private synchronized Map.Entry<String, Pending> poll() {
+            Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+            if (!it.hasNext()) {
+                scheduled = false;
+                return null;
+            }
+            Map.Entry<String, Pending> next = it.next();
+            it.remove();
+            return next;
+        }
+        
+        // Gửi tuần tự cho đến khi hàng đợi rỗng
+        void drain() {
+            Map.Entry<String, Pending> next;
+            while ((next = poll()) != null) {
+                try {
+                    listener.balanceChanged(next.getKey(), next.getValue().balance, next.getValue().changes);
+                    delivered.increment();
+                    failures = 0;
+                } catch (NoSuchObjectException | ConnectException e) {
+                    // Client đã thoát hoặc gỡ export listener
+                    drop();
+                    return;
+                } catch (RemoteException e) {
+                    if (++failures >= MAX_FAILURES) {
+                        System.err.println("Dropping balance listener after " + failures + " failures: " + e.getMessage());
+                        drop();
+                        return;
+                    }
+                }
+            }
+        }
+        
+        private void drop() {
+            unregister(listener);
+            synchronized (this) {
+                pending.clear();
+                scheduled = false;
+            }
+        }
+    }
+}
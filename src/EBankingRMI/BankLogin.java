@@ -0,0 +1,25 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Remote Login Factory
+ * Đối tượng duy nhất được đăng ký trong RMI Registry;
+ * mỗi client mở một phiên BankService riêng để đăng nhập và giao dịch
+ */
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface BankLogin extends Remote {
+    
+    // Gửi banner chào mừng
+    // Returns: "Welcome to NLU e-Bank..."
+    String getBanner() throws RemoteException;
+    
+    // Tạo phiên mới cho client (chưa đăng nhập)
+    // Returns: stub của BankService dành riêng cho client này
+    BankService openSession() throws RemoteException;
+    
+    // Ping kiểm tra kết nối
+    // Returns: "PONG"
+    String ping() throws RemoteException;
+}
@@ -0,0 +1,120 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Login Factory Implementation
+ * Tạo và quản lý các phiên BankServiceImpl:
+ * - Mỗi phiên có DatabaseManager riêng, mượn kết nối từ pool cho từng thao tác
+ * - Phiên bị đóng khi client không còn tham chiếu (Unreferenced, theo lease DGC)
+ *   hoặc không gọi gì trong ebanking.rmi.sessionTimeoutSec giây (trừ phiên còn BalanceListener hoạt động)
+ * - Factory, phiên và cursor được export qua Instrumentation (đo từng lời gọi)
+ * - Trước khi StartupPipeline sẵn sàng, openSession() ném ServerNotReadyException
+ */
+
+import java.rmi.RemoteException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+public class BankLoginImpl implements BankLogin {
+    
+    private static final long SESSION_TIMEOUT_MS = Long.getLong("ebanking.rmi.sessionTimeoutSec", 900) * 1000;
+    
+    // Socket cho mọi đối tượng export (factory, phiên, cursor); null = socket RMI mặc định
+    static final CompressedSocketFactory SOCKET_FACTORY = CompressedSocketFactory.fromProperties();
+    
+    private final ConnectionPool pool;
+    private final Predicate<String> ownsAccount;
+    private final ReplicationLog replicationLog;
+    private final BalanceNotifier notifier = new BalanceNotifier();
+    private final Set<BankServiceImpl> sessions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService reaper;
+    private volatile StartupPipeline startup;
+    
+    public BankLoginImpl(ConnectionPool pool) {
+        this(pool, accountNumber -> true);
+    }
+    
+    // ownsAccount: tài khoản thuộc shard của server này
+    public BankLoginImpl(ConnectionPool pool, Predicate<String> ownsAccount) {
+        this(pool, ownsAccount, null);
+    }
+    
+    // replicationLog: nhận các thay đổi đã commit cho server chỉ đọc (null = không nhân bản)
+    public BankLoginImpl(ConnectionPool pool, Predicate<String> ownsAccount, ReplicationLog replicationLog) {
+        this.pool = pool;
+        this.ownsAccount = ownsAccount;
+        this.replicationLog = replicationLog;
+        
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::closeIdleSessions, 30, 30, TimeUnit.SECONDS);
+    }
+    
+    @Override
+    public String getBanner() throws RemoteException {
+        return "Welcome to NLU e-Bank...";
+    }
+    
+    // Server đăng ký Registry trước khi CSDL sẵn sàng; null = luôn sẵn sàng
+    public void setStartup(StartupPipeline startup) {
+        this.startup = startup;
+    }
+    
+    @Override
+    public BankService openSession() throws RemoteException {
+        StartupPipeline pipeline = startup;
+        if (pipeline != null && !pipeline.isReady()) {
+            throw new ServerNotReadyException(pipeline.describe());
+        }
+        BankServiceImpl session = new BankServiceImpl(new DatabaseManager(pool, notifier, ownsAccount, replicationLog),
+                notifier, this);
+        sessions.add(session);
+        return Instrumentation.export(session, BankService.class);
+    }
+    
+    @Override
+    public String ping() throws RemoteException {
+        return "PONG";
+    }
+    
+    // Gọi từ BankServiceImpl khi phiên đóng
+    void sessionClosed(BankServiceImpl session) {
+        sessions.remove(session);
+    }
+    
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    public BalanceNotifier getNotifier() {
+        return notifier;
+    }
+    
+    // Đóng các phiên client đã bỏ đi mà DGC chưa phát hiện (client treo, lease dài).
+    // Phiên có listener đang nhận callback thì không cần gọi gì; listener chết bị BalanceNotifier
+    // loại khi gửi lỗi, sau đó phiên lại bị tính thời gian rảnh như bình thường
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (BankServiceImpl session : sessions) {
+            if (now - session.getLastAccess() > SESSION_TIMEOUT_MS && !session.hasActiveListener()) {
+                System.out.println("Session timed out: " + session.describe());
+                session.close();
+            }
+        }
+    }
+    
+    public void close() {
+        reaper.shutdownNow();
+        for (BankServiceImpl session : sessions) {
+            session.close();
+        }
+        notifier.close();
+        Instrumentation.unexport(this);
+    }
+}
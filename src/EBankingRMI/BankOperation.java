@@ -0,0 +1,60 @@
+package EBankingRMI;
+
+import java.io.Serializable;
+
+/*
+ * E-Banking System - Batch Operation
+ * Một thao tác trong BankService.executeBatch(...)
+ */
+
+public class BankOperation implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    public enum Type { DEPOSIT, WITHDRAW, BALANCE, REPORT, IS_LOGGED_IN }
+    
+    private final Type type;
+    private final double amount;
+    
+    private BankOperation(Type type, double amount) {
+        this.type = type;
+        this.amount = amount;
+    }
+    
+    public static BankOperation deposit(double amount) {
+        return new BankOperation(Type.DEPOSIT, amount);
+    }
+    
+    public static BankOperation withdraw(double amount) {
+        return new BankOperation(Type.WITHDRAW, amount);
+    }
+    
+    public static BankOperation balance() {
+        return new BankOperation(Type.BALANCE, 0);
+    }
+    
+    public static BankOperation report() {
+        return new BankOperation(Type.REPORT, 0);
+    }
+    
+    public static BankOperation isLoggedIn() {
+        return new BankOperation(Type.IS_LOGGED_IN, 0);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public double getAmount() {
+        return amount;
+    }
+    
+    // Thao tác làm thay đổi số dư
+    public boolean isWrite() {
+        return type == Type.DEPOSIT || type == Type.WITHDRAW;
+    }
+    
+    @Override
+    public String toString() {
+        return isWrite() ? type + " " + amount : type.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package EBankingRMI;
+
+import java.io.Serializable;
+import java.util.List;
+
+/*
+ * E-Banking System - Batch Result
+ * Kết quả của một BankOperation: dòng trạng thái "+OK ..."/"-ERR ...",
+ * kèm số (BALANCE: số dư, IS_LOGGED_IN: 1/0) hoặc danh sách giao dịch (REPORT)
+ */
+
+public class BankResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final String status;
+    private final double value;
+    private final List<Transaction> transactions;
+    
+    private BankResult(String status, double value, List<Transaction> transactions) {
+        this.status = status;
+        this.value = value;
+        this.transactions = transactions;
+    }
+    
+    public static BankResult ok(String status, double value) {
+        return new BankResult(status, value, null);
+    }
+    
+    public static BankResult ok(String status, List<Transaction> transactions) {
+        return new BankResult(status, 0, transactions);
+    }
+    
+    public static BankResult error(String status) {
+        return new BankResult(status, 0, null);
+    }
+    
+    // Kết quả của deposit/withdraw: thành công khi bắt đầu bằng "+OK"
+    public static BankResult of(String status) {
+        return new BankResult(status, 0, null);
+    }
+    
+    public boolean isOk() {
+        return status.startsWith("+OK");
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public double getValue() {
+        return value;
+    }
+    
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+    
+    @Override
+    public String toString() {
+        return status;
+    }
+}
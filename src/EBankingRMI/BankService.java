@@ -2,11 +2,13 @@ package EBankingRMI;
 
 /*
  * E-Banking System - Remote Service Interface
- * Định nghĩa các phương thức mà client có thể gọi từ xa
+ * Định nghĩa các phương thức mà client có thể gọi từ xa trên phiên của mình
+ * (mỗi client nhận một phiên riêng từ BankLogin.openSession())
  */
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.time.LocalDate;
 import java.util.List;
 
 public interface BankService extends Remote {
@@ -39,18 +41,41 @@ public interface BankService extends Remote {
     // Returns: Số dư tài khoản
     double getBalance() throws RemoteException;
     
-    // Lấy nhật ký giao dịch
+    // Lấy toàn bộ nhật ký giao dịch (lịch sử dài nên dùng openTransactionCursor)
     // Returns: List<Transaction>
     List<Transaction> getTransactionLog() throws RemoteException;
     
+    // Mở cursor đọc nhật ký theo trang trong khoảng [from, to] (null = không giới hạn)
+    // Returns: TransactionCursor; gọi nextPage(n) đến khi page.isLast()
+    TransactionCursor openTransactionCursor(LocalDate from, LocalDate to) throws RemoteException;
+    
+    // Các giao dịch mới hơn lastSeq (0 = từ đầu), cũ nhất trước, tối đa 500 dòng mỗi lần
+    // Returns: TransactionDelta; gọi lại với getLastSeq() đến khi isComplete()
+    TransactionDelta getTransactionsSince(long lastSeq) throws RemoteException;
+    
+    // Đăng ký nhận thông báo khi số dư tài khoản đang đăng nhập thay đổi (thay cho việc gọi getBalance định kỳ)
+    // Returns: "+OK ..." hoặc "-ERR Not logged in"; listener bị huỷ khi đăng xuất/đóng phiên
+    String addBalanceListener(BalanceListener listener) throws RemoteException;
+    
+    // Huỷ đăng ký listener
+    // Returns: "+OK Listener removed"
+    String removeBalanceListener(BalanceListener listener) throws RemoteException;
+    
     // Kiểm tra trạng thái đăng nhập
     // Returns: true nếu đã đăng nhập
     boolean isLoggedIn() throws RemoteException;
     
+    // Chạy nhiều thao tác trong một lời gọi (một vòng mạng); atomic = true: tất cả hoặc không gì cả
+    // Returns: List<BankResult> theo đúng thứ tự operations
+    List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) throws RemoteException;
+    
     // Đăng xuất
     // Returns: "OK"
     String logout() throws RemoteException;
     
+    // Đóng phiên ngay, không chờ lease DGC hết hạn; lời gọi sau đó nhận NoSuchObjectException
+    void close() throws RemoteException;
+    
     // Ping kiểm tra kết nối
     // Returns: "PONG"
     String ping() throws RemoteException;
@@ -2,30 +2,49 @@ package EBankingRMI;
 
 /*
  * E-Banking System - RMI Service Implementation
- * Triển khai các phương thức remote cho BankService
+ * Một phiên của một client, được tạo bởi BankLoginImpl.openSession();
+ * các phiên độc lập chạy song song trên các thread kết nối của RMI
  */
 
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class BankServiceImpl extends UnicastRemoteObject implements BankService {
+public class BankServiceImpl implements BankService, Unreferenced {
     
-    private static final long serialVersionUID = 1L;
-    private DatabaseManager dbManager;
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("ebanking.rmi.maxBatchSize", 100);
+    private static final int MAX_DELTA_ROWS = 500;
+    private final DatabaseManager dbManager;
+    private final BankLoginImpl factory;
+    private final BalanceNotifier notifier;
+    private final Set<BalanceListener> listeners = ConcurrentHashMap.newKeySet();
+    private final Set<TransactionCursorImpl> cursors = ConcurrentHashMap.newKeySet();
+    private volatile long lastAccess = System.currentTimeMillis();
+    private volatile boolean closed = false;
     
-    public BankServiceImpl() throws RemoteException {
-        super();
-        this.dbManager = new DatabaseManager();
+    public BankServiceImpl(DatabaseManager dbManager, BalanceNotifier notifier, BankLoginImpl factory) {
+        this.dbManager = dbManager;
+        this.notifier = notifier;
+        this.factory = factory;
     }
     
     @Override
     public String getBanner() throws RemoteException {
+        touch();
         return "Welcome to NLU e-Bank...";
     }
     
     @Override
     public String authenticateUser(String username) throws RemoteException {
+        touch();
         if (username == null || username.trim().isEmpty()) {
             return "-ERR Username cannot be empty";
         }
@@ -34,6 +53,7 @@ public class BankServiceImpl extends UnicastRemoteObject implements BankService
     
     @Override
     public String authenticatePassword(String password) throws RemoteException {
+        touch();
         if (password == null || password.isEmpty()) {
             return "-ERR Password cannot be empty";
         }
@@ -42,6 +62,7 @@ public class BankServiceImpl extends UnicastRemoteObject implements BankService
     
     @Override
     public String deposit(double amount) throws RemoteException {
+        touch();
         if (amount <= 0) {
             return "-ERR Invalid amount. Amount must be greater than 0";
         }
@@ -50,6 +71,7 @@ public class BankServiceImpl extends UnicastRemoteObject implements BankService
     
     @Override
     public String withdraw(double amount) throws RemoteException {
+        touch();
         if (amount <= 0) {
             return "-ERR Invalid amount. Amount must be greater than 0";
         }
@@ -58,28 +80,163 @@ public class BankServiceImpl extends UnicastRemoteObject implements BankService
     
     @Override
     public double getBalance() throws RemoteException {
+        touch();
         return dbManager.getBalance();
     }
     
     @Override
     public List<Transaction> getTransactionLog() throws RemoteException {
+        touch();
         return dbManager.getTransactionLog();
     }
     
+    @Override
+    public TransactionCursor openTransactionCursor(LocalDate from, LocalDate to) throws RemoteException {
+        touch();
+        Account account = dbManager.getCurrentAccount();
+        if (account == null) {
+            throw new RemoteException("Not logged in");
+        }
+        
+        Timestamp lower = from != null ? Timestamp.valueOf(from.atStartOfDay()) : new Timestamp(0);
+        Timestamp upper = to != null ? Timestamp.valueOf(to.plusDays(1).atStartOfDay())
+                                     : Timestamp.valueOf(LocalDateTime.of(9999, 12, 31, 0, 0));
+        TransactionCursorImpl cursor = new TransactionCursorImpl(dbManager, this, account.getAccountNumber(), lower, upper);
+        cursors.add(cursor);
+        return Instrumentation.export(cursor, TransactionCursor.class);
+    }
+    
+    @Override
+    public TransactionDelta getTransactionsSince(long lastSeq) throws RemoteException {
+        touch();
+        Account account = dbManager.getCurrentAccount();
+        if (account == null) {
+            throw new RemoteException("Not logged in");
+        }
+        try {
+            return dbManager.loadTransactionsSince(account.getAccountNumber(), Math.max(0, lastSeq), MAX_DELTA_ROWS);
+        } catch (SQLException e) {
+            System.err.println("Error reading transactions since " + lastSeq + ": " + e.getMessage());
+            // Không gửi SQLException của driver sang client
+            throw new RemoteException("Database error");
+        }
+    }
+    
+    void cursorClosed(TransactionCursorImpl cursor) {
+        cursors.remove(cursor);
+    }
+    
+    @Override
+    public String addBalanceListener(BalanceListener listener) throws RemoteException {
+        touch();
+        if (listener == null) {
+            return "-ERR Listener cannot be null";
+        }
+        Account account = dbManager.getCurrentAccount();
+        if (account == null) {
+            return "-ERR Not logged in";
+        }
+        notifier.register(account.getAccountNumber(), listener);
+        listeners.add(listener);
+        return "+OK Listening for balance changes on " + account.getAccountNumber();
+    }
+    
+    @Override
+    public String removeBalanceListener(BalanceListener listener) throws RemoteException {
+        touch();
+        if (listener != null && listeners.remove(listener)) {
+            notifier.unregister(listener);
+        }
+        return "+OK Listener removed";
+    }
+    
     @Override
     public boolean isLoggedIn() throws RemoteException {
+        touch();
         return dbManager.isLoggedIn();
     }
     
+    @Override
+    public List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) throws RemoteException {
+        touch();
+        if (operations == null || operations.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (operations.size() > MAX_BATCH_SIZE) {
+            List<BankResult> rejected = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                rejected.add(BankResult.error("-ERR Batch too large (max " + MAX_BATCH_SIZE + ")"));
+            }
+            return rejected;
+        }
+        return dbManager.executeBatch(operations, atomic);
+    }
+    
     @Override
     public String logout() throws RemoteException {
+        touch();
+        removeListeners();
         dbManager.logout();
         return "+OK Logged out successfully";
     }
     
     @Override
     public String ping() throws RemoteException {
+        touch();
         return "PONG";
     }
+    
+    // Client không còn giữ stub (thoát hoặc lease DGC hết hạn)
+    @Override
+    public void unreferenced() {
+        close();
+    }
+    
+    // Đóng phiên: đăng xuất và gỡ export; lời gọi sau đó nhận NoSuchObjectException
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (TransactionCursorImpl cursor : cursors) {
+            cursor.close();
+        }
+        removeListeners();
+        dbManager.logout();
+        factory.sessionClosed(this);
+        Instrumentation.unexport(this);
+    }
+    
+    private void removeListeners() {
+        for (BalanceListener listener : listeners) {
+            notifier.unregister(listener);
+        }
+        listeners.clear();
+    }
+    
+    void touch() throws RemoteException {
+        if (closed) {
+            throw new NoSuchObjectException("Session closed");
+        }
+        lastAccess = System.currentTimeMillis();
+    }
+    
+    public long getLastAccess() {
+        return lastAccess;
+    }
+    
+    // Phiên chỉ chờ callback không gọi gì nhưng vẫn đang được dùng
+    public boolean hasActiveListener() {
+        for (BalanceListener listener : listeners) {
+            if (notifier.isRegistered(listener)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public String describe() {
+        return dbManager.isLoggedIn() ? "user " + dbManager.getCurrentUser() : "anonymous";
+    }
 }
-
@@ -0,0 +1,137 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Call Metrics
+ * Số liệu theo phương thức remote, được ghi bởi lớp bọc Instrumentation:
+ * - Độ trễ phía server (từ lúc RMI gọi vào đến khi phương thức trả về, chưa tính marshalling)
+ * - Số lỗi theo loại exception
+ * - Kích thước tham số/kết quả khi serialize và thời gian serialize kết quả, đo trên
+ *   1/ebanking.rmi.metricsSample lời gọi (mặc định 1/16, 0 = tắt) vì phải serialize thêm một lần
+ */
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CallMetrics {
+    private static final int SIZE_SAMPLE = Integer.getInteger("ebanking.rmi.metricsSample", 16);
+    
+    private static final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    
+    private CallMetrics() {
+    }
+    
+    static MethodMetrics forMethod(String name) {
+        return methods.computeIfAbsent(name, MethodMetrics::new);
+    }
+    
+    // Sắp theo tên để các file dump so sánh được giữa các bản build
+    public static List<MethodStats> getStats() {
+        List<MethodStats> stats = new ArrayList<>();
+        for (MethodMetrics m : new TreeMap<>(methods).values()) {
+            // Bỏ qua phương thức chỉ đang chạy lần gọi đầu tiên
+            if (m.latency.getCount() > 0) {
+                stats.add(m.snapshot());
+            }
+        }
+        return stats;
+    }
+    
+    public static void reset() {
+        methods.clear();
+    }
+    
+    static class MethodMetrics {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram marshal = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, LongAdder> exceptions = new ConcurrentHashMap<>();
+        private final AtomicLong sequence = new AtomicLong();
+        private final LongAdder sampled = new LongAdder();
+        private final LongAdder argBytes = new LongAdder();
+        private final LongAdder resultBytes = new LongAdder();
+        
+        MethodMetrics(String name) {
+            this.name = name;
+        }
+        
+        void recordCall(long nanos) {
+            latency.record(nanos);
+        }
+        
+        void recordError(long nanos, Throwable error) {
+            latency.record(nanos);
+            errors.increment();
+            exceptions.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+        
+        boolean shouldSample() {
+            return SIZE_SAMPLE > 0 && sequence.getAndIncrement() % SIZE_SAMPLE == 0;
+        }
+        
+        // Gọi sau khi phương thức đã trả về, không tính vào độ trễ
+        void recordSizes(Object[] args, Object result) {
+            long argSize = args == null ? 0 : serializedSize(args);
+            long start = System.nanoTime();
+            long resultSize = result == null ? 0 : serializedSize(result);
+            long marshalNanos = System.nanoTime() - start;
+            if (argSize < 0 || resultSize < 0) {
+                return;
+            }
+            sampled.increment();
+            argBytes.add(argSize);
+            resultBytes.add(resultSize);
+            if (result != null) {
+                marshal.record(marshalNanos);
+            }
+        }
+        
+        MethodStats snapshot() {
+            Map<String, Long> exceptionCounts = new TreeMap<>();
+            exceptions.forEach((type, count) -> exceptionCounts.put(type, count.sum()));
+            long samples = sampled.sum();
+            return new MethodStats(name, latency.getCount(), errors.sum(), exceptionCounts, latency, samples,
+                    samples == 0 ? 0 : (double) argBytes.sum() / samples,
+                    samples == 0 ? 0 : (double) resultBytes.sum() / samples, marshal);
+        }
+    }
+    
+    // Số byte khi serialize (trừ header 4 byte của ObjectOutputStream); -1 nếu không serialize được
+    private static long serializedSize(Object value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            if (value instanceof Object[]) {
+                for (Object arg : (Object[]) value) {
+                    out.writeObject(arg);
+                }
+            } else {
+                out.writeObject(value);
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return counter.count - 4;
+    }
+    
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+        
+        @Override
+        public void write(int b) {
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
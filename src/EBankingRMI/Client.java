@@ -2,18 +2,36 @@ package EBankingRMI;
 
 /*
  * E-Banking System - RMI Client
- * Kết nối với RMI Server và gọi các phương thức từ xa
+ * Kết nối với RMI Server và gọi các phương thức từ xa;
+ * -Debanking.rmi.shards=./shards.conf: định tuyến tới nhiều server theo ShardMap (RoutingBankService)
+ * -Debanking.rmi.replica=localhost:1199: đọc số dư/nhật ký trên ReplicaServer (ReadRoutingBankService)
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Scanner;
 
 public class Client {
-    private static final String SERVICE_URL = "rmi://localhost:1099/BankService";
+    private static final String SERVICE_URL = "rmi://localhost:1099/BankLogin";
+    private static final String SHARDS_FILE = System.getProperty("ebanking.rmi.shards");
+    private static final String REPLICA = System.getProperty("ebanking.rmi.replica");
+    private static final int REPORT_PAGE_SIZE = 100;
+    // Server vừa khởi động (ServerNotReadyException): chờ tối đa ngần này trước khi bỏ cuộc
+    private static final long READY_WAIT_MS = Long.getLong("ebanking.rmi.readyWaitSec", 30) * 1000;
+    // Nhật ký lưu trên đĩa, chỉ tải giao dịch mới; false = đọc qua cursor mỗi lần
+    private static final boolean USE_CACHE = Boolean.parseBoolean(System.getProperty("ebanking.rmi.clientCache", "true"));
     
+    private BankLogin bankLogin;
     private BankService bankService;
+    private BalanceListener balanceListener;
+    private TransactionCache transactionCache;
+    private String username;
     private Scanner scanner;
     private boolean connected;
     private boolean loggedIn;
@@ -25,20 +43,29 @@ public class Client {
     }
     
     public void connect() {
+        if (SHARDS_FILE != null) {
+            connectSharded();
+            return;
+        }
         try {
             System.out.println("Connecting to RMI Server: " + SERVICE_URL);
             
-            // Lookup service từ RMI Registry
-            bankService = (BankService) Naming.lookup(SERVICE_URL);
+            // Lookup factory từ RMI Registry
+            bankLogin = (BankLogin) Naming.lookup(SERVICE_URL);
             
             // Kiểm tra kết nối bằng ping
-            String response = bankService.ping();
+            String response = bankLogin.ping();
             if ("PONG".equals(response)) {
+                // Phiên riêng của client này trên server
+                bankService = openSessionWhenReady();
+                if (REPLICA != null) {
+                    connectReplica();
+                }
                 connected = true;
                 System.out.println("Connected successfully!");
                 
                 // Hiển thị banner
-                String banner = bankService.getBanner();
+                String banner = bankLogin.getBanner();
                 System.out.println(banner);
             }
             
@@ -56,6 +83,58 @@ public class Client {
         }
     }
     
+    // openSession(), thử lại trong READY_WAIT_MS khi server còn đang khởi động
+    private BankService openSessionWhenReady() throws RemoteException {
+        long deadline = System.currentTimeMillis() + READY_WAIT_MS;
+        while (true) {
+            try {
+                return bankLogin.openSession();
+            } catch (java.rmi.ServerException e) {
+                // RMI bọc RemoteException ném từ server trong ServerException
+                if (!(e.detail instanceof ServerNotReadyException) || System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                System.out.println(e.detail.getMessage() + ", waiting...");
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    // Mở thêm phiên trên ReplicaServer cho các lời đọc; không kết nối được thì chỉ dùng primary
+    private void connectReplica() {
+        String replicaURL = "rmi://" + REPLICA + "/BankLogin";
+        try {
+            BankService replicaSession = ((BankLogin) Naming.lookup(replicaURL)).openSession();
+            bankService = new ReadRoutingBankService(bankService, replicaSession);
+            System.out.println("Reads routed to replica: " + replicaURL);
+        } catch (Exception e) {
+            System.err.println("Replica not available (" + e.getMessage() + "), reading from primary");
+        }
+    }
+    
+    // Không có factory chung: phiên được mở trên shard sở hữu tài khoản khi nhập USER
+    private void connectSharded() {
+        try {
+            ShardRouter router = new ShardRouter(new ShardMap(new File(SHARDS_FILE)));
+            System.out.println("Connecting via shard map " + SHARDS_FILE + ": " + router.getShards());
+            
+            bankService = new RoutingBankService(router);
+            String banner = bankService.getBanner();
+            connected = true;
+            System.out.println("Connected successfully!");
+            System.out.println(banner);
+        } catch (RemoteException e) {
+            System.err.println("Cannot connect to any shard: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Cannot load shard map: " + e.getMessage());
+        }
+    }
+    
     public void start() {
         if (!connected) {
             connect();
@@ -84,11 +163,13 @@ public class Client {
             System.out.println("  DEPOSIT amount   - Gửi tiền");
             System.out.println("  WITHDRAW amount  - Rút tiền");
             System.out.println("  BALANCE          - Kiểm tra số dư");
-            System.out.println("  REPORT           - Xem nhật ký giao dịch");
+            System.out.println("  REPORT [from] [to] - Xem nhật ký giao dịch (yyyy-MM-dd hoặc *)");
             System.out.println("  QUIT             - Đăng xuất và thoát");
             System.out.println("========================================\n");
             
+            registerBalanceListener();
             handleTransactionPhase();
+            unregisterBalanceListener();
         }
         
         System.out.println("Client terminated.");
@@ -118,6 +199,12 @@ public class Client {
                             String username = parts[1].trim();
                             String response = bankService.authenticateUser(username);
                             System.out.println(response);
+                            if (response.startsWith("+OK")) {
+                                this.username = username;
+                                if (bankService instanceof RoutingBankService) {
+                                    System.out.println("Shard: " + ((RoutingBankService) bankService).getShard());
+                                }
+                            }
                         }
                         break;
                         
@@ -132,6 +219,9 @@ public class Client {
                             // Kiểm tra nếu đăng nhập thành công
                             if (response.startsWith("+OK")) {
                                 loggedIn = true;
+                                if (USE_CACHE) {
+                                    transactionCache = new TransactionCache(username);
+                                }
                             }
                         }
                         break;
@@ -145,6 +235,9 @@ public class Client {
                         System.out.println("-ERR Unknown command: " + command);
                         System.out.println("Valid commands: USER, PASSWORD, QUIT");
                 }
+            } catch (java.rmi.NoSuchObjectException e) {
+                System.err.println("-ERR Session expired, please reconnect");
+                connected = false;
             } catch (RemoteException e) {
                 System.err.println("Remote error: " + e.getMessage());
                 connected = false;
@@ -175,13 +268,7 @@ public class Client {
                         } else {
                             try {
                                 double amount = Double.parseDouble(parts[1].trim());
-                                String response = bankService.deposit(amount);
-                                System.out.println(response);
-                                
-                                // Hiển thị số dư sau giao dịch thành công
-                                if (response.startsWith("+OK")) {
-                                    System.out.println("So du tai khoan: " + bankService.getBalance());
-                                }
+                                runAndShowBalance(BankOperation.deposit(amount));
                             } catch (NumberFormatException e) {
                                 System.out.println("-ERR Invalid amount");
                             }
@@ -194,13 +281,7 @@ public class Client {
                         } else {
                             try {
                                 double amount = Double.parseDouble(parts[1].trim());
-                                String response = bankService.withdraw(amount);
-                                System.out.println(response);
-                                
-                                // Hiển thị số dư sau giao dịch thành công
-                                if (response.startsWith("+OK")) {
-                                    System.out.println("So du tai khoan: " + bankService.getBalance());
-                                }
+                                runAndShowBalance(BankOperation.withdraw(amount));
                             } catch (NumberFormatException e) {
                                 System.out.println("-ERR Invalid amount");
                             }
@@ -213,7 +294,7 @@ public class Client {
                         break;
                         
                     case "REPORT":
-                        displayTransactionLog();
+                        displayTransactionLog(parts.length > 1 ? parts[1].trim() : "");
                         break;
                         
                     case "QUIT":
@@ -226,6 +307,9 @@ public class Client {
                         System.out.println("-ERR Unknown command: " + command);
                         System.out.println("Valid commands: DEPOSIT, WITHDRAW, BALANCE, REPORT, QUIT");
                 }
+            } catch (java.rmi.NoSuchObjectException e) {
+                System.err.println("-ERR Session expired, please reconnect");
+                connected = false;
             } catch (RemoteException e) {
                 System.err.println("Remote error: " + e.getMessage());
                 connected = false;
@@ -233,11 +317,83 @@ public class Client {
         }
     }
     
+    // Server đẩy số dư mới sau mỗi giao dịch đã commit (kể cả từ phiên khác của cùng tài khoản)
+    private static class ConsoleBalanceListener implements BalanceListener {
+        @Override
+        public void balanceChanged(String accountNumber, double balance, int changes) {
+            System.out.println("\n[Thong bao] So du tai khoan " + accountNumber + ": " + balance
+                    + (changes > 1 ? " (" + changes + " giao dich)" : ""));
+        }
+    }
+    
+    private void registerBalanceListener() {
+        try {
+            ConsoleBalanceListener listener = new ConsoleBalanceListener();
+            BalanceListener stub = (BalanceListener) UnicastRemoteObject.exportObject(listener, 0);
+            String response = bankService.addBalanceListener(stub);
+            if (response.startsWith("+OK")) {
+                balanceListener = listener;
+            } else {
+                UnicastRemoteObject.unexportObject(listener, true);
+            }
+        } catch (RemoteException e) {
+            // Không nhận được thông báo (ví dụ client sau NAT), các lệnh vẫn hoạt động bình thường
+            System.err.println("Balance notifications unavailable: " + e.getMessage());
+        }
+    }
+    
+    private void unregisterBalanceListener() {
+        if (balanceListener == null) {
+            return;
+        }
+        try {
+            UnicastRemoteObject.unexportObject(balanceListener, true);
+        } catch (java.rmi.NoSuchObjectException e) {
+            // đã gỡ export
+        }
+        balanceListener = null;
+    }
+    
+    // Giao dịch và số dư sau giao dịch trong một lời gọi
+    private void runAndShowBalance(BankOperation operation) throws RemoteException {
+        List<BankResult> results = bankService.executeBatch(
+                List.of(operation, BankOperation.balance()), false);
+        System.out.println(results.get(0).getStatus());
+        
+        // Hiển thị số dư sau giao dịch thành công
+        if (results.get(0).isOk()) {
+            System.out.println("So du tai khoan: " + results.get(1).getValue());
+        }
+    }
+    
     // Hiển thị nhật ký giao dịch theo định dạng yêu cầu
-    private void displayTransactionLog() throws RemoteException {
-        List<Transaction> transactions = bankService.getTransactionLog();
+    // REPORT [tu ngay] [den ngay]: ngày dạng yyyy-MM-dd, * = không giới hạn
+    private void displayTransactionLog(String args) throws RemoteException {
+        LocalDate from = null;
+        LocalDate to = null;
+        String[] dates = args.isEmpty() ? new String[0] : args.split("\\s+");
+        try {
+            if (dates.length > 0 && !dates[0].equals("*")) {
+                from = LocalDate.parse(dates[0]);
+            }
+            if (dates.length > 1 && !dates[1].equals("*")) {
+                to = LocalDate.parse(dates[1]);
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("-ERR Invalid date. Usage: REPORT [yyyy-MM-dd|*] [yyyy-MM-dd|*]");
+            return;
+        }
         
-        if (transactions.isEmpty()) {
+        if (transactionCache != null) {
+            displayCachedTransactionLog(from, to);
+            return;
+        }
+        
+        // Không dùng cache: in từng trang ngay khi nhận được
+        TransactionCursor cursor = bankService.openTransactionCursor(from, to);
+        TransactionPage page = cursor.nextPage(REPORT_PAGE_SIZE);
+        
+        if (page.size() == 0) {
             System.out.println("Chua co giao dich nao!");
             return;
         }
@@ -246,12 +402,40 @@ public class Client {
         System.out.println("So tai khoan || Ngay thang || Thao tac || Gia tri");
         System.out.println("-------------------------------------------------");
         
-        for (Transaction t : transactions) {
-            System.out.println(t.toDisplayFormat());
+        while (true) {
+            for (int i = 0; i < page.size(); i++) {
+                System.out.println(page.get(i).toDisplayFormat());
+            }
+            if (page.isLast()) {
+                break;
+            }
+            page = cursor.nextPage(REPORT_PAGE_SIZE);
+        }
+        
+        System.out.println("-------------------------------------------------");
+        System.out.println("So du tai khoan: " + bankService.getBalance());
+        System.out.println("=================================================");
+    }
+    
+    // Chỉ tải các giao dịch mới hơn lần xem trước, lọc khoảng ngày trên cache
+    private void displayCachedTransactionLog(LocalDate from, LocalDate to) throws RemoteException {
+        int added = transactionCache.sync(bankService);
+        List<Transaction> transactions = transactionCache.getTransactions(from, to);
+        
+        if (transactions.isEmpty()) {
+            System.out.println("Chua co giao dich nao!");
+            return;
         }
         
+        System.out.println("================ Nhat ky giao dich ================");
+        System.out.println("So tai khoan || Ngay thang || Thao tac || Gia tri");
+        System.out.println("-------------------------------------------------");
+        for (Transaction transaction : transactions) {
+            System.out.println(transaction.toDisplayFormat());
+        }
         System.out.println("-------------------------------------------------");
         System.out.println("So du tai khoan: " + bankService.getBalance());
+        System.out.println("(" + added + " giao dich moi, " + transactionCache.size() + " trong cache)");
         System.out.println("=================================================");
     }
     
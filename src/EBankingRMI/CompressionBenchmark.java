@@ -0,0 +1,200 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Compression Benchmark
+ * So sánh số byte trên dây và độ trễ của lời gọi RMI có/không nén (CompressedSocketFactory).
+ * Lượt "off" dùng socket RMI thường, chỉ bọc bộ đếm byte (CountingSocketFactory), không frame/đệm.
+ * Không cần CSDL: một đối tượng remote trả về nhật ký giao dịch giả lập.
+ *   java EBankingRMI.CompressionBenchmark rows=500 calls=200 threshold=512 bandwidthKbps=2000
+ * bandwidthKbps: ước lượng thời gian truyền trên đường WAN với băng thông đó.
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CompressionBenchmark {
+    
+    public interface ReportSource extends Remote {
+        List<Transaction> report(int rows) throws RemoteException;
+        
+        TransactionPage page(int rows) throws RemoteException;
+    }
+    
+    // Mỗi lời gọi sinh dữ liệu mới để từ điển nén không "nhớ" nguyên kết quả của lời gọi trước
+    private static class FakeReportSource implements ReportSource {
+        private final Random random = new Random(42);
+        
+        @Override
+        public synchronized List<Transaction> report(int rows) {
+            List<Transaction> transactions = new ArrayList<>(rows);
+            LocalDateTime date = LocalDateTime.now();
+            for (int i = 0; i < rows; i++) {
+                date = date.minusMinutes(1 + random.nextInt(600));
+                transactions.add(new Transaction("10000001", randomOperation(), date, randomAmount()));
+            }
+            return transactions;
+        }
+        
+        @Override
+        public synchronized TransactionPage page(int rows) {
+            TransactionPage page = new TransactionPage("10000001", rows);
+            long millis = System.currentTimeMillis();
+            for (int i = 0; i < rows; i++) {
+                millis -= 60_000L * (1 + random.nextInt(600));
+                page.add(rows - i, millis, randomOperation(), randomAmount());
+            }
+            page.setLast(true);
+            return page;
+        }
+        
+        private String randomOperation() {
+            return random.nextInt(3) == 0 ? "WITHDRAW" : "DEPOSIT";
+        }
+        
+        private double randomAmount() {
+            return (1 + random.nextInt(500)) * 1000;
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int rows = Integer.parseInt(options.getOrDefault("rows", "500"));
+        int calls = Integer.parseInt(options.getOrDefault("calls", "200"));
+        int threshold = Integer.parseInt(options.getOrDefault("threshold", "512"));
+        double bandwidthKbps = Double.parseDouble(options.getOrDefault("bandwidthKbps", "2000"));
+        
+        System.out.printf("rows=%d calls=%d threshold=%d bandwidth=%.0f kbit/s%n", rows, calls, threshold, bandwidthKbps);
+        System.out.printf("%-22s %12s %12s %7s %9s %9s %12s%n",
+                "mode", "raw B/call", "wire B/call", "ratio", "p50 ms", "p99 ms", "WAN ms/call");
+        
+        for (boolean paged : new boolean[] {false, true}) {
+            run(paged ? "page off" : "list off", rows, calls, 0, paged, bandwidthKbps);
+            run(paged ? "page deflate" : "list deflate", rows, calls, threshold, paged, bandwidthKbps);
+        }
+        System.exit(0);
+    }
+    
+    // threshold = 0: socket RMI thường (không nén), chỉ đếm byte
+    private static void run(String mode, int rows, int calls, int threshold, boolean paged,
+                            double bandwidthKbps) throws Exception {
+        FakeReportSource source = new FakeReportSource();
+        ReportSource stub;
+        if (threshold > 0) {
+            CompressedSocketFactory factory = new CompressedSocketFactory(threshold);
+            stub = (ReportSource) UnicastRemoteObject.exportObject(source, 0, factory, factory);
+        } else {
+            CountingSocketFactory factory = new CountingSocketFactory();
+            stub = (ReportSource) UnicastRemoteObject.exportObject(source, 0, factory, factory);
+        }
+        
+        // Làm nóng: JIT và kết nối RMI
+        for (int i = 0; i < Math.max(10, calls / 10); i++) {
+            invoke(stub, rows, paged);
+        }
+        
+        CompressedSocketFactory.resetStats();
+        CountingSocketFactory.bytes.reset();
+        long[] latencies = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            invoke(stub, rows, paged);
+            latencies[i] = System.nanoTime() - start;
+        }
+        UnicastRemoteObject.unexportObject(source, true);
+        
+        Arrays.sort(latencies);
+        long rawTotal = threshold > 0 ? CompressedSocketFactory.getRawBytes() : CountingSocketFactory.bytes.sum();
+        long wireTotal = threshold > 0 ? CompressedSocketFactory.getWireBytes() : rawTotal;
+        double raw = (double) rawTotal / calls;
+        double wire = (double) wireTotal / calls;
+        System.out.printf("%-22s %12.0f %12.0f %6.1fx %9.3f %9.3f %12.1f%n", mode, raw, wire, raw / wire,
+                latencies[calls / 2] / 1e6, latencies[Math.min(calls - 1, calls * 99 / 100)] / 1e6,
+                wire * 8 / bandwidthKbps);
+    }
+    
+    private static int invoke(ReportSource stub, int rows, boolean paged) throws RemoteException {
+        return paged ? stub.page(rows).size() : stub.report(rows).size();
+    }
+    
+    // Socket thường, đếm byte ghi ra (cả hai chiều vì client và server cùng JVM)
+    private static class CountingSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+        private static final long serialVersionUID = 1L;
+        static final LongAdder bytes = new LongAdder();
+        
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return new CountingSocket(host, port);
+        }
+        
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port) {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = new CountingSocket();
+                    implAccept(socket);
+                    return socket;
+                }
+            };
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CountingSocketFactory;
+        }
+        
+        @Override
+        public int hashCode() {
+            return getClass().hashCode();
+        }
+    }
+    
+    private static class CountingSocket extends Socket {
+        private OutputStream out;
+        
+        CountingSocket() {
+        }
+        
+        CountingSocket(String host, int port) throws IOException {
+            super(host, port);
+        }
+        
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        CountingSocketFactory.bytes.increment();
+                    }
+                    
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        CountingSocketFactory.bytes.add(len);
+                    }
+                };
+            }
+            return out;
+        }
+    }
+}
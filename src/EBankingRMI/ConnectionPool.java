@@ -0,0 +1,260 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Connection Pool
+ * Pool kết nối JDBC dùng chung cho mọi phiên RMI (mỗi lời gọi mượn một kết nối rồi trả lại):
+ * - Giới hạn số kết nối tối đa, mở sẵn MIN_IDLE kết nối trong warmUp()
+ * - Kiểm tra kết nối (isValid) trước khi cho mượn nếu đã rảnh lâu
+ * - Đóng bớt kết nối rảnh quá IDLE_TIMEOUT
+ * getInstance() không mở kết nối nào; warmUp() (gọi một lần từ StartupPipeline) tạo bảng
+ * và mở các kết nối ban đầu.
+ */
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPool {
+    // Mỗi shard có file CSDL riêng (Server đặt ebanking.db.file theo ShardMap trước khi tạo pool)
+    private static final String DB_URL = "jdbc:ucanaccess://" + System.getProperty("ebanking.db.file", "./ebanking.accdb");
+    
+    private static final int MAX_SIZE = Integer.getInteger("ebanking.pool.maxSize", 10);
+    private static final int MIN_IDLE = Integer.getInteger("ebanking.pool.minIdle", 2);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("ebanking.pool.borrowTimeoutMs", 5000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("ebanking.pool.idleTimeoutMs", 300000);
+    private static final long VALIDATE_AFTER_MS = 30000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    
+    private static ConnectionPool instance;
+    
+    // LIFO: kết nối vừa trả được dùng lại trước, kết nối cũ nằm cuối để bị đóng
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    
+    private ConnectionPool() {
+        try {
+            Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
+        } catch (ClassNotFoundException e) {
+            System.err.println("UCanAccess driver not found: " + e.getMessage());
+        }
+        
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, 30, 30, TimeUnit.SECONDS);
+    }
+    
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool();
+        }
+        return instance;
+    }
+    
+    // Mở kết nối đầu tiên (UCanAccess nạp file Access vào bộ nhớ) và tạo bảng,
+    // sau đó mở song song các kết nối còn lại tới MIN_IDLE; trả về số kết nối đang rảnh
+    public int warmUp() throws SQLException {
+        Connection connection = openConnection();
+        createTablesIfNotExists(connection);
+        idle.offerFirst(new PooledConnection(connection));
+        
+        List<CompletableFuture<Connection>> opening = new ArrayList<>();
+        for (int i = 1; i < MIN_IDLE; i++) {
+            opening.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return openConnection();
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Connection> future : opening) {
+            try {
+                idle.offerFirst(new PooledConnection(future.join()));
+            } catch (CompletionException e) {
+                // Pool vẫn dùng được với ít kết nối hơn, borrow() sẽ mở thêm khi cần
+                System.err.println("Database connection error: " + e.getCause().getMessage());
+            }
+        }
+        System.out.println("Connection pool ready (" + idle.size() + "/" + MAX_SIZE + " connections).");
+        return idle.size();
+    }
+    
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(DB_URL, "", "");
+        connection.setAutoCommit(false);
+        totalCount.incrementAndGet();
+        return connection;
+    }
+    
+    private void createTablesIfNotExists(Connection connection) {
+        // Bảng Accounts
+        String createAccountsSQL = """
+            CREATE TABLE IF NOT EXISTS Accounts (
+                username VARCHAR(50) PRIMARY KEY,
+                password VARCHAR(50) NOT NULL,
+                accountNumber VARCHAR(20) UNIQUE NOT NULL,
+                balance DOUBLE DEFAULT 0.0
+            )
+            """;
+        
+        // Bảng Transactions
+        String createTransactionsSQL = """
+            CREATE TABLE IF NOT EXISTS Transactions (
+                id COUNTER PRIMARY KEY,
+                accountNumber VARCHAR(20) NOT NULL,
+                operation VARCHAR(20) NOT NULL,
+                transactionDate DATETIME NOT NULL,
+                amount DOUBLE NOT NULL
+            )
+            """;
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createAccountsSQL);
+            stmt.execute(createTransactionsSQL);
+            connection.commit();
+        } catch (SQLException e) {
+            System.err.println("Error creating tables: " + e.getMessage());
+        }
+        
+        // Chỉ mục cho REPORT theo tài khoản + khoảng ngày (bỏ qua nếu đã có)
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX idx_transactions_account_date ON Transactions (accountNumber, transactionDate)");
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+        }
+    }
+    
+    private void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Rollback error: " + e.getMessage());
+        }
+    }
+    
+    // Mượn một kết nối; chờ tối đa BORROW_TIMEOUT_MS nếu pool đã hết
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            boolean acquired = permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection");
+        }
+        
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.connection;
+                }
+                discard(pooled.connection);
+            }
+            return openConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    // Trả kết nối về pool; giao dịch dang dở bị rollback
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (closed || connection.isClosed()) {
+                discard(connection);
+            } else {
+                connection.rollback();
+                idle.offerFirst(new PooledConnection(connection));
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_MS) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    private void discard(Connection connection) {
+        totalCount.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+    
+    // Đóng các kết nối rảnh quá lâu, giữ lại tối thiểu MIN_IDLE kết nối
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        PooledConnection oldest;
+        while (idle.size() > MIN_IDLE && (oldest = idle.peekLast()) != null
+                && now - oldest.lastUsed > IDLE_TIMEOUT_MS) {
+            if (idle.removeLastOccurrence(oldest)) {
+                discard(oldest.connection);
+            }
+        }
+    }
+    
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+    
+    public int getIdleCount() {
+        return idle.size();
+    }
+    
+    public int getActiveCount() {
+        return MAX_SIZE - permits.availablePermits();
+    }
+    
+    public int getMaxSize() {
+        return MAX_SIZE;
+    }
+    
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled.connection);
+        }
+        System.out.println("Database connection pool closed.");
+    }
+    
+    private static class PooledConnection {
+        private final Connection connection;
+        private final long lastUsed;
+        
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
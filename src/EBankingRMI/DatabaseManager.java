@@ -2,124 +2,140 @@ package EBankingRMI;
 
 /*
  * E-Banking System - Database Manager
- * Mỗi client có 1 kết nối độc lập xuống CSDL
+ * Giữ trạng thái đăng nhập của MỘT phiên RMI;
+ * kết nối vật lý được mượn từ ConnectionPool cho từng thao tác
  */
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class DatabaseManager {
-    private Connection connection;
-    private String currentUser;
+    private final ConnectionPool pool;
+    private final BalanceNotifier notifier;
+    // Tài khoản thuộc shard này (ShardMap); luôn true khi chạy một server
+    private final Predicate<String> ownsAccount;
+    // Log nhân bản sang server chỉ đọc; null khi tắt
+    private final ReplicationLog replicationLog;
+    // Các giao dịch đã ghi nhưng chưa commit, chuyển sang replicationLog sau commit
+    private final List<ReplicationBatch.Row> pending = new ArrayList<>();
+    // Đã qua USER nhưng chưa qua PASSWORD; chỉ currentUser được coi là đã đăng nhập
+    private volatile String pendingUser;
+    private volatile String currentUser;
     
-    // Database configuration
-    private static final String DB_URL = "jdbc:ucanaccess://./ebanking.accdb";
-    
-    public DatabaseManager() {
-        initializeDatabase();
+    public DatabaseManager(ConnectionPool pool, BalanceNotifier notifier) {
+        this(pool, notifier, accountNumber -> true);
     }
     
-    private void initializeDatabase() {
-        try {
-            // Load UCanAccess driver
-            Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
-            
-            // Tạo kết nối độc lập cho mỗi client
-            connection = DriverManager.getConnection(DB_URL, "", "");
-            connection.setAutoCommit(false);
-            
-            // Tạo bảng nếu chưa tồn tại
-            createTablesIfNotExists();
-            
-            System.out.println("Database connection established.");
-        } catch (ClassNotFoundException e) {
-            System.err.println("UCanAccess driver not found: " + e.getMessage());
-        } catch (SQLException e) {
-            System.err.println("Database connection error: " + e.getMessage());
-        }
+    public DatabaseManager(ConnectionPool pool, BalanceNotifier notifier, Predicate<String> ownsAccount) {
+        this(pool, notifier, ownsAccount, null);
     }
     
-    private void createTablesIfNotExists() {
-        // Bảng Accounts
-        String createAccountsSQL = """
-            CREATE TABLE IF NOT EXISTS Accounts (
-                username VARCHAR(50) PRIMARY KEY,
-                password VARCHAR(50) NOT NULL,
-                accountNumber VARCHAR(20) UNIQUE NOT NULL,
-                balance DOUBLE DEFAULT 0.0
-            )
-            """;
-        
-        // Bảng Transactions
-        String createTransactionsSQL = """
-            CREATE TABLE IF NOT EXISTS Transactions (
-                id AUTOEXEC PRIMARY KEY,
-                accountNumber VARCHAR(20) NOT NULL,
-                operation VARCHAR(20) NOT NULL,
-                transactionDate DATETIME NOT NULL,
-                amount DOUBLE NOT NULL
-            )
-            """;
-        
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createAccountsSQL);
-            stmt.execute(createTransactionsSQL);
-            connection.commit();
-        } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
-        }
+    public DatabaseManager(ConnectionPool pool, BalanceNotifier notifier, Predicate<String> ownsAccount,
+                           ReplicationLog replicationLog) {
+        this.pool = pool;
+        this.notifier = notifier;
+        this.ownsAccount = ownsAccount;
+        this.replicationLog = replicationLog;
     }
     
+    // Câu lệnh của phiên; StartupPipeline chuẩn bị trước (prepareStatements) khi server khởi động
+    private static final String CHECK_USERNAME_SQL = "SELECT accountNumber, balance FROM Accounts WHERE username = ?";
+    private static final String AUTHENTICATE_SQL =
+        "SELECT accountNumber, balance FROM Accounts WHERE username = ? AND password = ?";
+    private static final String LOAD_ACCOUNT_SQL = "SELECT * FROM Accounts WHERE username = ?";
+    private static final String DEPOSIT_SQL = "UPDATE Accounts SET balance = balance + ? WHERE username = ?";
+    private static final String WITHDRAW_SQL =
+        "UPDATE Accounts SET balance = balance - ? WHERE username = ? AND balance >= ?";
+    private static final String INSERT_TRANSACTION_SQL =
+        "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+    private static final String MAX_TRANSACTION_ID_SQL = "SELECT MAX(id) FROM Transactions WHERE accountNumber = ?";
+    private static final String TRANSACTION_LOG_SQL = """
+        SELECT * FROM Transactions 
+        WHERE accountNumber = ? 
+        ORDER BY transactionDate DESC
+        """;
+    private static final String TRANSACTION_PAGE_SQL = """
+        SELECT id, operation, transactionDate, amount FROM Transactions
+        WHERE accountNumber = ?
+          AND transactionDate >= ? AND transactionDate < ?
+          AND (transactionDate < ? OR (transactionDate = ? AND id < ?))
+        ORDER BY transactionDate DESC, id DESC
+        """;
+    private static final String TRANSACTIONS_SINCE_SQL = """
+        SELECT id, operation, transactionDate, amount FROM Transactions
+        WHERE accountNumber = ? AND id > ?
+        ORDER BY id
+        """;
+    
     // === Authentication Methods ===
     
     // Kiểm tra username tồn tại
     public String checkUsername(String username) {
-        String querySQL = "SELECT accountNumber, balance FROM Accounts WHERE username = ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, username);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    currentUser = username;
-                    return "+OK " + rs.getString("accountNumber") + " " + rs.getDouble("balance");
-                } else {
-                    return "-ERR User not found";
+        pendingUser = null;
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(CHECK_USERNAME_SQL)) {
+                pstmt.setString(1, username);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String accountNumber = rs.getString("accountNumber");
+                        if (!ownsAccount.test(accountNumber)) {
+                            // Tài khoản đã chuyển sang shard khác: bản cũ trong file này không được dùng
+                            return "-ERR Account " + accountNumber + " is not on this shard";
+                        }
+                        currentUser = null;
+                        pendingUser = username;
+                        return "+OK " + accountNumber + " " + rs.getDouble("balance");
+                    } else {
+                        return "-ERR User not found";
+                    }
                 }
             }
         } catch (SQLException e) {
             System.err.println("Error checking username: " + e.getMessage());
             return "-ERR Database error";
+        } finally {
+            pool.release(connection);
         }
     }
     
     // Xác thực password
     public String authenticatePassword(String password) {
-        if (currentUser == null) {
+        String username = pendingUser;
+        if (username == null) {
             return "-ERR Not in login phase";
         }
         
-        String querySQL = "SELECT accountNumber, balance FROM Accounts WHERE username = ? AND password = ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, currentUser);
-            pstmt.setString(2, password);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String accountNumber = rs.getString("accountNumber");
-                    double balance = rs.getDouble("balance");
-                    return "+OK " + accountNumber + " " + balance;
-                } else {
-                    currentUser = null;
-                    return "-ERR Invalid password";
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(AUTHENTICATE_SQL)) {
+                pstmt.setString(1, username);
+                pstmt.setString(2, password);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String accountNumber = rs.getString("accountNumber");
+                        double balance = rs.getDouble("balance");
+                        pendingUser = null;
+                        currentUser = username;
+                        return "+OK " + accountNumber + " " + balance;
+                    } else {
+                        pendingUser = null;
+                        return "-ERR Invalid password";
+                    }
                 }
             }
         } catch (SQLException e) {
             System.err.println("Error authenticating password: " + e.getMessage());
             return "-ERR Database error";
+        } finally {
+            pool.release(connection);
         }
     }
     
@@ -129,9 +145,20 @@ public class DatabaseManager {
             return null;
         }
         
-        String querySQL = "SELECT * FROM Accounts WHERE username = ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return loadAccount(connection);
+        } catch (SQLException e) {
+            System.err.println("Error getting account: " + e.getMessage());
+            return null;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    private Account loadAccount(Connection connection) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(LOAD_ACCOUNT_SQL)) {
             pstmt.setString(1, currentUser);
             
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -144,8 +171,6 @@ public class DatabaseManager {
                     );
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error getting account: " + e.getMessage());
         }
         return null;
     }
@@ -154,8 +179,7 @@ public class DatabaseManager {
     
     // Gửi tiền
     public synchronized String deposit(double amount) {
-        Account account = getCurrentAccount();
-        if (account == null) {
+        if (currentUser == null) {
             return "-ERR Not logged in";
         }
         
@@ -163,43 +187,31 @@ public class DatabaseManager {
             return "-ERR Invalid amount";
         }
         
-        String updateSQL = "UPDATE Accounts SET balance = balance + ? WHERE username = ?";
-        String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
-        
+        Connection connection = null;
         try {
-            // Cập nhật số dư
-            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
-                pstmt.setDouble(1, amount);
-                pstmt.setString(2, currentUser);
-                pstmt.executeUpdate();
-            }
-            
-            // Ghi nhật ký giao dịch
-            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-                pstmt.setString(1, account.getAccountNumber());
-                pstmt.setString(2, "DEPOSIT");
-                pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
-                pstmt.setDouble(4, amount);
-                pstmt.executeUpdate();
+            connection = pool.borrow();
+            Account account = loadAccount(connection);
+            if (account == null) {
+                return "-ERR Not logged in";
             }
             
+            String result = applyDeposit(connection, account.getAccountNumber(), amount);
             connection.commit();
-            return "+OK Deposit successful";
+            publishBalance(connection, account.getAccountNumber());
+            return result;
         } catch (SQLException e) {
+            // Giao dịch dang dở được rollback khi trả kết nối về pool
             System.err.println("Error depositing: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
-            }
             return "-ERR Transaction failed";
+        } finally {
+            pending.clear();
+            pool.release(connection);
         }
     }
     
     // Rút tiền
     public synchronized String withdraw(double amount) {
-        Account account = getCurrentAccount();
-        if (account == null) {
+        if (currentUser == null) {
             return "-ERR Not logged in";
         }
         
@@ -207,46 +219,123 @@ public class DatabaseManager {
             return "-ERR Invalid amount";
         }
         
-        if (account.getBalance() < amount) {
-            return "-ERR Insufficient balance";
-        }
-        
-        String updateSQL = "UPDATE Accounts SET balance = balance - ? WHERE username = ? AND balance >= ?";
-        String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
-        
+        Connection connection = null;
         try {
-            // Cập nhật số dư
-            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
-                pstmt.setDouble(1, amount);
-                pstmt.setString(2, currentUser);
-                pstmt.setDouble(3, amount);
-                int rows = pstmt.executeUpdate();
-                
-                if (rows == 0) {
-                    connection.rollback();
-                    return "-ERR Insufficient balance";
-                }
+            connection = pool.borrow();
+            Account account = loadAccount(connection);
+            if (account == null) {
+                return "-ERR Not logged in";
             }
             
-            // Ghi nhật ký giao dịch
-            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-                pstmt.setString(1, account.getAccountNumber());
-                pstmt.setString(2, "WITHDRAW");
-                pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
-                pstmt.setDouble(4, amount);
-                pstmt.executeUpdate();
+            if (account.getBalance() < amount) {
+                return "-ERR Insufficient balance";
             }
             
-            connection.commit();
-            return "+OK Withdraw successful";
-        } catch (SQLException e) {
-            System.err.println("Error withdrawing: " + e.getMessage());
-            try {
+            String result = applyWithdraw(connection, account.getAccountNumber(), amount);
+            if (result.startsWith("+OK")) {
+                connection.commit();
+                publishBalance(connection, account.getAccountNumber());
+            } else {
                 connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
             }
+            return result;
+        } catch (SQLException e) {
+            System.err.println("Error withdrawing: " + e.getMessage());
             return "-ERR Transaction failed";
+        } finally {
+            pending.clear();
+            pool.release(connection);
+        }
+    }
+    
+    // Cập nhật số dư và ghi nhật ký, chưa commit
+    private String applyDeposit(Connection connection, String accountNumber, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(DEPOSIT_SQL)) {
+            pstmt.setDouble(1, amount);
+            pstmt.setString(2, currentUser);
+            pstmt.executeUpdate();
+        }
+        insertTransaction(connection, accountNumber, "DEPOSIT", amount);
+        return "+OK Deposit successful";
+    }
+    
+    // Trừ số dư (chỉ khi đủ tiền) và ghi nhật ký, chưa commit
+    private String applyWithdraw(Connection connection, String accountNumber, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(WITHDRAW_SQL)) {
+            pstmt.setDouble(1, amount);
+            pstmt.setString(2, currentUser);
+            pstmt.setDouble(3, amount);
+            if (pstmt.executeUpdate() == 0) {
+                return "-ERR Insufficient balance";
+            }
+        }
+        insertTransaction(connection, accountNumber, "WITHDRAW", amount);
+        return "+OK Withdraw successful";
+    }
+    
+    // Chuyển các giao dịch vừa commit sang ReplicationLog và báo số dư mới cho các BalanceListener;
+    // chỉ gọi sau commit
+    private void publishBalance(Connection connection, String accountNumber) {
+        List<ReplicationBatch.Row> rows = new ArrayList<>(pending);
+        pending.clear();
+        boolean listeners = notifier != null && notifier.hasListeners(accountNumber);
+        if (replicationLog == null && !listeners) {
+            return;
+        }
+        try {
+            double[] balance = new double[1];
+            if (replicationLog != null) {
+                replicationLog.append(accountNumber, () -> balance[0] = readBalance(connection), rows);
+            } else {
+                balance[0] = readBalance(connection);
+            }
+            if (listeners) {
+                notifier.publish(accountNumber, balance[0]);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading balance after commit: " + e.getMessage());
+        }
+    }
+    
+    private double readBalance(Connection connection) throws SQLException {
+        Account account = loadAccount(connection);
+        if (account == null) {
+            throw new SQLException("Account not found");
+        }
+        return account.getBalance();
+    }
+    
+    private void insertTransaction(Connection connection, String accountNumber, String operation, double amount)
+            throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_TRANSACTION_SQL,
+                Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, accountNumber);
+            pstmt.setString(2, operation);
+            pstmt.setTimestamp(3, now);
+            pstmt.setDouble(4, amount);
+            pstmt.executeUpdate();
+            
+            if (replicationLog != null) {
+                pending.add(new ReplicationBatch.Row(generatedId(connection, pstmt, accountNumber), accountNumber,
+                        now.getTime(), operation, amount));
+            }
+        }
+    }
+    
+    // id (AutoNumber) của dòng vừa INSERT; các giao dịch cùng tài khoản chạy lần lượt nên MAX(id) là dòng vừa ghi
+    private long generatedId(Connection connection, PreparedStatement insert, String accountNumber)
+            throws SQLException {
+        try (ResultSet keys = insert.getGeneratedKeys()) {
+            if (keys != null && keys.next()) {
+                return keys.getLong(1);
+            }
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(MAX_TRANSACTION_ID_SQL)) {
+            pstmt.setString(1, accountNumber);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
         }
     }
     
@@ -258,21 +347,30 @@ public class DatabaseManager {
     
     // Lấy nhật ký giao dịch
     public List<Transaction> getTransactionLog() {
-        List<Transaction> transactions = new ArrayList<>();
-        Account account = getCurrentAccount();
-        
-        if (account == null) {
-            return transactions;
+        if (currentUser == null) {
+            return new ArrayList<>();
         }
         
-        String querySQL = """
-            SELECT * FROM Transactions 
-            WHERE accountNumber = ? 
-            ORDER BY transactionDate DESC
-            """;
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, account.getAccountNumber());
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            Account account = loadAccount(connection);
+            if (account == null) {
+                return new ArrayList<>();
+            }
+            return loadTransactions(connection, account.getAccountNumber());
+        } catch (SQLException e) {
+            System.err.println("Error getting transaction log: " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    private List<Transaction> loadTransactions(Connection connection, String accountNumber) throws SQLException {
+        List<Transaction> transactions = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(TRANSACTION_LOG_SQL)) {
+            pstmt.setString(1, accountNumber);
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -284,32 +382,243 @@ public class DatabaseManager {
                     ));
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error getting transaction log: " + e.getMessage());
         }
         return transactions;
     }
     
+    // Một trang nhật ký, mới nhất trước, bắt đầu sau vị trí (cursorMillis, cursorId) của trang trước
+    public TransactionPage loadTransactionPage(String accountNumber, Timestamp lower, Timestamp upper,
+                                               long cursorMillis, long cursorId, int pageSize) throws SQLException {
+        TransactionPage page = new TransactionPage(accountNumber, pageSize);
+        Timestamp cursor = new Timestamp(cursorMillis);
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(TRANSACTION_PAGE_SQL)) {
+                // Đọc thêm một dòng để biết còn trang sau hay không
+                pstmt.setMaxRows(pageSize + 1);
+                pstmt.setFetchSize(Math.min(pageSize + 1, 100));
+                pstmt.setString(1, accountNumber);
+                pstmt.setTimestamp(2, lower);
+                pstmt.setTimestamp(3, upper);
+                pstmt.setTimestamp(4, cursor);
+                pstmt.setTimestamp(5, cursor);
+                pstmt.setLong(6, cursorId);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (page.size() == pageSize) {
+                            return page;
+                        }
+                        page.add(rs.getLong("id"), rs.getTimestamp("transactionDate").getTime(),
+                                 rs.getString("operation"), rs.getDouble("amount"));
+                    }
+                }
+            }
+            page.setLast(true);
+            return page;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Các giao dịch có id > lastSeq, cũ nhất trước. UPDATE Accounts chạy trước INSERT trong mỗi giao dịch
+    // nên các giao dịch cùng tài khoản commit lần lượt và id (AutoNumber) tăng theo thứ tự commit
+    public TransactionDelta loadTransactionsSince(String accountNumber, long lastSeq, int maxRows) throws SQLException {
+        TransactionDelta delta = new TransactionDelta(accountNumber, lastSeq, maxRows);
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(TRANSACTIONS_SINCE_SQL)) {
+                // Đọc thêm một dòng để biết còn dòng mới hay không
+                pstmt.setMaxRows(maxRows + 1);
+                pstmt.setFetchSize(Math.min(maxRows + 1, 100));
+                pstmt.setString(1, accountNumber);
+                pstmt.setLong(2, lastSeq);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (delta.size() == maxRows) {
+                            return delta;
+                        }
+                        delta.add(rs.getLong("id"), rs.getTimestamp("transactionDate").getTime(),
+                                  rs.getString("operation"), rs.getDouble("amount"));
+                    }
+                }
+            }
+            
+            // Không có dòng mới: kiểm tra client có đang ở phía trước server không (CSDL đã tạo lại)
+            if (delta.size() == 0 && lastSeq > 0) {
+                try (PreparedStatement pstmt = connection.prepareStatement(MAX_TRANSACTION_ID_SQL)) {
+                    pstmt.setString(1, accountNumber);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        long maxSeq = rs.next() ? rs.getLong(1) : 0;
+                        if (maxSeq < lastSeq) {
+                            delta.setReset(true);
+                            return delta;
+                        }
+                    }
+                }
+            }
+            delta.setComplete(true);
+            return delta;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // === Batch ===
+    
+    // Chạy một chuỗi thao tác trên cùng một kết nối.
+    // atomic = true: tất cả trong một transaction, thao tác đầu tiên lỗi làm rollback cả batch;
+    // atomic = false: mỗi thao tác ghi được commit riêng, thao tác lỗi không ảnh hưởng các thao tác khác
+    public synchronized List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) {
+        List<BankResult> results = new ArrayList<>(operations.size());
+        if (currentUser == null) {
+            for (BankOperation operation : operations) {
+                results.add(operation.getType() == BankOperation.Type.IS_LOGGED_IN
+                        ? BankResult.ok("+OK", 0) : BankResult.error("-ERR Not logged in"));
+            }
+            return results;
+        }
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            Account account = loadAccount(connection);
+            if (account == null) {
+                return fill(results, operations.size(), "-ERR Not logged in");
+            }
+            String accountNumber = account.getAccountNumber();
+            
+            for (BankOperation operation : operations) {
+                BankResult result = execute(connection, accountNumber, operation);
+                if (!result.isOk() && atomic) {
+                    connection.rollback();
+                    pending.clear();
+                    // Thao tác lỗi giữ thông báo của nó, các thao tác khác báo bị huỷ theo batch
+                    List<BankResult> aborted = new ArrayList<>(operations.size());
+                    fill(aborted, results.size(), "-ERR Batch rolled back");
+                    aborted.add(result);
+                    return fill(aborted, operations.size(), "-ERR Batch rolled back");
+                }
+                if (!atomic && operation.isWrite()) {
+                    if (result.isOk()) {
+                        connection.commit();
+                        publishBalance(connection, accountNumber);
+                    } else {
+                        connection.rollback();
+                        pending.clear();
+                    }
+                }
+                results.add(result);
+            }
+            
+            if (atomic) {
+                connection.commit();
+                if (operations.stream().anyMatch(BankOperation::isWrite)) {
+                    publishBalance(connection, accountNumber);
+                }
+            }
+            return results;
+        } catch (SQLException e) {
+            System.err.println("Error executing batch: " + e.getMessage());
+            // Các thao tác đã commit (atomic = false) giữ kết quả, phần còn lại báo lỗi
+            return fill(atomic ? new ArrayList<>() : results, operations.size(), "-ERR Transaction failed");
+        } finally {
+            pending.clear();
+            pool.release(connection);
+        }
+    }
+    
+    private BankResult execute(Connection connection, String accountNumber, BankOperation operation)
+            throws SQLException {
+        switch (operation.getType()) {
+            case DEPOSIT:
+                if (operation.getAmount() <= 0) {
+                    return BankResult.error("-ERR Invalid amount");
+                }
+                return BankResult.of(applyDeposit(connection, accountNumber, operation.getAmount()));
+            case WITHDRAW:
+                if (operation.getAmount() <= 0) {
+                    return BankResult.error("-ERR Invalid amount");
+                }
+                return BankResult.of(applyWithdraw(connection, accountNumber, operation.getAmount()));
+            case BALANCE:
+                // Đọc trên cùng kết nối nên thấy các thao tác trước đó trong batch
+                Account account = loadAccount(connection);
+                return BankResult.ok("+OK", account != null ? account.getBalance() : 0.0);
+            case REPORT:
+                return BankResult.ok("+OK", loadTransactions(connection, accountNumber));
+            case IS_LOGGED_IN:
+                return BankResult.ok("+OK", 1);
+            default:
+                return BankResult.error("-ERR Unknown operation");
+        }
+    }
+    
+    private static List<BankResult> fill(List<BankResult> results, int size, String error) {
+        while (results.size() < size) {
+            results.add(BankResult.error(error));
+        }
+        return results;
+    }
+    
+    // === Warm-up (StartupPipeline) ===
+    
+    // Chuẩn bị mọi câu lệnh của phiên trên một kết nối: lần chuẩn bị đầu tiên của mỗi câu lệnh
+    // (dịch SQL Access, biên dịch trong HSQLDB, nạp lớp) không rơi vào lời gọi đầu tiên của client
+    static int prepareStatements(Connection connection) throws SQLException {
+        String[] statements = {
+            CHECK_USERNAME_SQL, AUTHENTICATE_SQL, LOAD_ACCOUNT_SQL, DEPOSIT_SQL, WITHDRAW_SQL,
+            INSERT_TRANSACTION_SQL, MAX_TRANSACTION_ID_SQL, TRANSACTION_LOG_SQL, TRANSACTION_PAGE_SQL,
+            TRANSACTIONS_SINCE_SQL
+        };
+        for (String sql : statements) {
+            connection.prepareStatement(sql).close();
+        }
+        return statements.length;
+    }
+    
+    // Chạy các truy vấn đọc của phiên cho maxAccounts tài khoản có nhiều giao dịch nhất
+    static int preloadHotAccounts(Connection connection, int maxAccounts) throws SQLException {
+        List<String> accountNumbers = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT accountNumber, COUNT(*) FROM Transactions GROUP BY accountNumber ORDER BY COUNT(*) DESC")) {
+            pstmt.setMaxRows(maxAccounts);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    accountNumbers.add(rs.getString(1));
+                }
+            }
+        }
+        for (String accountNumber : accountNumbers) {
+            try (PreparedStatement pstmt = connection.prepareStatement(TRANSACTION_LOG_SQL)) {
+                pstmt.setString(1, accountNumber);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getTimestamp("transactionDate");
+                    }
+                }
+            }
+        }
+        return accountNumbers.size();
+    }
+    
     // Đăng xuất
     public void logout() {
+        pendingUser = null;
         currentUser = null;
     }
     
+    public String getCurrentUser() {
+        return currentUser;
+    }
+    
     // Kiểm tra trạng thái đăng nhập
     public boolean isLoggedIn() {
         return currentUser != null;
     }
-    
-    // Đóng kết nối
-    public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Database connection closed.");
-            } catch (SQLException e) {
-                System.err.println("Error closing connection: " + e.getMessage());
-            }
-        }
-    }
 }
-
@@ -0,0 +1,116 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Instrumented Export
+ * Mọi đối tượng remote của server (BankLogin, phiên BankService, TransactionCursor, MetricsService)
+ * được export qua đây: đối tượng thật được bọc trong một dynamic proxy cùng remote interface,
+ * proxy đo từng lời gọi vào CallMetrics rồi chuyển tiếp nguyên exception cho client.
+ * Unreferenced được chuyển thẳng cho đối tượng thật. Tắt bằng -Debanking.rmi.metrics=false
+ * (export trực tiếp đối tượng thật).
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Instrumentation {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ebanking.rmi.metrics", "true"));
+    
+    // đối tượng thật -> đối tượng đã export (proxy); giữ proxy sống cho đến khi unexport
+    private static final Map<Remote, Remote> exported = new ConcurrentHashMap<>();
+    
+    private Instrumentation() {
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    // Returns: stub để trả cho client hoặc đăng ký vào Registry
+    public static <T extends Remote> T export(T impl, Class<T> remoteInterface) throws RemoteException {
+        Remote target = impl;
+        if (ENABLED) {
+            Class<?>[] interfaces = impl instanceof Unreferenced
+                    ? new Class<?>[] {remoteInterface, Unreferenced.class}
+                    : new Class<?>[] {remoteInterface};
+            target = (Remote) Proxy.newProxyInstance(remoteInterface.getClassLoader(), interfaces,
+                    new Handler(impl, remoteInterface.getSimpleName()));
+        }
+        exported.put(impl, target);
+        try {
+            return remoteInterface.cast(UnicastRemoteObject.exportObject(target, 0,
+                    BankLoginImpl.SOCKET_FACTORY, BankLoginImpl.SOCKET_FACTORY));
+        } catch (RemoteException e) {
+            exported.remove(impl);
+            throw e;
+        }
+    }
+    
+    // Gỡ export; lời gọi sau đó của client nhận NoSuchObjectException
+    public static void unexport(Remote impl) {
+        Remote target = exported.remove(impl);
+        if (target == null) {
+            return;
+        }
+        try {
+            UnicastRemoteObject.unexportObject(target, true);
+        } catch (NoSuchObjectException e) {
+            // đã gỡ export
+        }
+    }
+    
+    private static class Handler implements InvocationHandler {
+        private final Object target;
+        private final String prefix;
+        private final Map<Method, String> names = new ConcurrentHashMap<>();
+        
+        Handler(Object target, String prefix) {
+            this.target = target;
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Class<?> declaring = method.getDeclaringClass();
+            if (declaring == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return prefix + "@" + Integer.toHexString(System.identityHashCode(target));
+                }
+            }
+            if (declaring == Unreferenced.class) {
+                ((Unreferenced) target).unreferenced();
+                return null;
+            }
+            
+            CallMetrics.MethodMetrics metrics = CallMetrics.forMethod(
+                    names.computeIfAbsent(method, m -> prefix + "." + m.getName()));
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                metrics.recordError(System.nanoTime() - start, e.getCause());
+                throw e.getCause();
+            }
+            metrics.recordCall(System.nanoTime() - start);
+            
+            if (metrics.shouldSample()) {
+                metrics.recordSizes(args, result);
+            }
+            return result;
+        }
+    }
+}
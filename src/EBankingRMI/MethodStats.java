@@ -0,0 +1,106 @@
+package EBankingRMI;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * E-Banking System - Method Statistics
+ * Ảnh chụp số liệu của một phương thức remote (MetricsService.getMethodStats()):
+ * số lời gọi, số lỗi theo loại exception, độ trễ phía server,
+ * kích thước tham số/kết quả khi serialize (lấy mẫu) và thời gian serialize kết quả
+ */
+
+public class MethodStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final Map<String, Long> exceptions;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double maxMicros;
+    private final long sampled;
+    private final double argBytes;
+    private final double resultBytes;
+    private final double marshalMicros;
+    
+    MethodStats(String name, long calls, long errors, Map<String, Long> exceptions, LatencyHistogram latency,
+                long sampled, double argBytes, double resultBytes, LatencyHistogram marshal) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.exceptions = new TreeMap<>(exceptions);
+        this.meanMicros = latency.getMeanNanos() / 1000.0;
+        this.p50Micros = latency.getPercentileNanos(50) / 1000.0;
+        this.p99Micros = latency.getPercentileNanos(99) / 1000.0;
+        this.maxMicros = latency.getMaxNanos() / 1000.0;
+        this.sampled = sampled;
+        this.argBytes = argBytes;
+        this.resultBytes = resultBytes;
+        this.marshalMicros = marshal.getMeanNanos() / 1000.0;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getCalls() {
+        return calls;
+    }
+    
+    public long getErrors() {
+        return errors;
+    }
+    
+    // Tên lớp exception -> số lần
+    public Map<String, Long> getExceptions() {
+        return exceptions;
+    }
+    
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+    
+    public double getP50Micros() {
+        return p50Micros;
+    }
+    
+    public double getP99Micros() {
+        return p99Micros;
+    }
+    
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+    
+    // Số lời gọi đã đo kích thước
+    public long getSampled() {
+        return sampled;
+    }
+    
+    // Trung bình byte serialize của tham số (theo mẫu)
+    public double getArgBytes() {
+        return argBytes;
+    }
+    
+    // Trung bình byte serialize của kết quả (theo mẫu)
+    public double getResultBytes() {
+        return resultBytes;
+    }
+    
+    // Thời gian serialize kết quả trung bình: ước lượng chi phí marshalling so với thời gian xử lý
+    public double getMarshalMicros() {
+        return marshalMicros;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%-36s calls=%d errors=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus"
+                        + " args=%.0fB result=%.0fB marshal=%.1fus sampled=%d%s",
+                name, calls, errors, meanMicros, p50Micros, p99Micros, maxMicros,
+                argBytes, resultBytes, marshalMicros, sampled, exceptions.isEmpty() ? "" : " exceptions=" + exceptions);
+    }
+}
@@ -0,0 +1,28 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Metrics Client
+ * In báo cáo của MetricsService; tham số "reset" xoá số liệu sau khi in.
+ *   java EBankingRMI.MetricsClient [reset]
+ * Server khác (shard, ReplicaServer): -Debanking.rmi.metricsServer=localhost:1199
+ */
+
+import java.rmi.Naming;
+
+public class MetricsClient {
+    private static final String SERVICE_URL =
+            "rmi://" + System.getProperty("ebanking.rmi.metricsServer", "localhost:1099") + "/MetricsService";
+    
+    public static void main(String[] args) {
+        try {
+            MetricsService metrics = (MetricsService) Naming.lookup(SERVICE_URL);
+            System.out.print(metrics.getReport());
+            if (args.length > 0 && args[0].equalsIgnoreCase("reset")) {
+                metrics.reset();
+                System.out.println("+OK Metrics reset");
+            }
+        } catch (Exception e) {
+            System.err.println("Cannot read metrics: " + e.getMessage());
+        }
+    }
+}
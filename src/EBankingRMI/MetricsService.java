@@ -0,0 +1,25 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Remote Metrics Service
+ * Đăng ký riêng trong RMI Registry (tên "MetricsService"), tách khỏi BankLogin;
+ * xem nhanh bằng: java EBankingRMI.MetricsClient [reset]
+ */
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+public interface MetricsService extends Remote {
+    
+    // Báo cáo dạng văn bản: trạng thái server + một dòng cho mỗi phương thức remote
+    // Returns: cùng nội dung được ghi định kỳ vào file metrics
+    String getReport() throws RemoteException;
+    
+    // Số liệu từng phương thức, sắp theo tên
+    // Returns: danh sách MethodStats
+    List<MethodStats> getMethodStats() throws RemoteException;
+    
+    // Xoá số liệu phương thức (bắt đầu một lần đo mới)
+    void reset() throws RemoteException;
+}
@@ -0,0 +1,112 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Metrics Service Implementation
+ * Gộp số liệu phương thức (CallMetrics) với trạng thái server: số phiên, pool kết nối,
+ * BalanceNotifier, byte nén, độ trễ nhân bản (addStatus). Báo cáo được nối vào file ebanking.rmi.metricsFile
+ * mỗi ebanking.rmi.metricsIntervalSec giây (mặc định 60, 0 = tắt) và khi server dừng.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.rmi.RemoteException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class MetricsServiceImpl implements MetricsService {
+    private static final String METRICS_FILE = System.getProperty("ebanking.rmi.metricsFile", "./ebanking-rmi-metrics.log");
+    private static final long DUMP_INTERVAL_SECONDS = Long.getLong("ebanking.rmi.metricsIntervalSec", 60);
+    
+    private final BankLoginImpl bankLogin;
+    private final ConnectionPool pool;
+    private final long startedAt = System.currentTimeMillis();
+    private final List<Supplier<String>> statusLines = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService dumper;
+    
+    // bankLogin, pool có thể null (ReplicaServer không có CSDL)
+    public MetricsServiceImpl(BankLoginImpl bankLogin, ConnectionPool pool) {
+        this.bankLogin = bankLogin;
+        this.pool = pool;
+    }
+    
+    // Thêm một dòng trạng thái vào báo cáo, vd. "replication head=.. replicaSeq=.."
+    public void addStatus(Supplier<String> line) {
+        statusLines.add(line);
+    }
+    
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("time=").append(LocalDateTime.now())
+          .append(" uptimeSec=").append((System.currentTimeMillis() - startedAt) / 1000)
+          .append(" instrumented=").append(Instrumentation.isEnabled()).append('\n');
+        if (bankLogin != null) {
+            sb.append("sessions active=").append(bankLogin.getSessionCount()).append('\n');
+        }
+        if (pool != null) {
+            sb.append("pool active=").append(pool.getActiveCount())
+              .append(" idle=").append(pool.getIdleCount())
+              .append(" open=").append(pool.getTotalCount())
+              .append(" max=").append(pool.getMaxSize()).append('\n');
+        }
+        if (bankLogin != null) {
+            sb.append("notifier ").append(bankLogin.getNotifier().getStats()).append('\n');
+        }
+        for (Supplier<String> line : statusLines) {
+            sb.append(line.get()).append('\n');
+        }
+        if (BankLoginImpl.SOCKET_FACTORY != null) {
+            sb.append("compression raw=").append(CompressedSocketFactory.getRawBytes())
+              .append(" wire=").append(CompressedSocketFactory.getWireBytes()).append('\n');
+        }
+        for (MethodStats stats : CallMetrics.getStats()) {
+            sb.append(stats).append('\n');
+        }
+        return sb.toString();
+    }
+    
+    @Override
+    public List<MethodStats> getMethodStats() {
+        return CallMetrics.getStats();
+    }
+    
+    @Override
+    public void reset() {
+        CallMetrics.reset();
+    }
+    
+    public synchronized void startDumper() {
+        if (dumper != null || DUMP_INTERVAL_SECONDS <= 0) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dumper");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(this::dump, DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public synchronized void stopDumper() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+            dump();
+        }
+    }
+    
+    private void dump() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(METRICS_FILE, true))) {
+            out.print(getReport());
+            out.println();
+        } catch (IOException e) {
+            System.err.println("Error writing metrics file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Read Routing Bank Service
+ * BankService phía client (không export) ghép một phiên primary với một phiên ReplicaServer:
+ * - Đăng nhập trên cả hai; replica từ chối hoặc lỗi thì phiên này chỉ dùng primary
+ * - getBalance, getTransactionLog, getTransactionsSince đọc trên replica, lỗi hoặc replica quá cũ
+ *   thì đọc lại trên primary
+ * - Ghi, listener, cursor và batch luôn đi primary; trong ebanking.rmi.replica.maxStalenessMs
+ *   sau một lần ghi các lời đọc cũng đi primary để client thấy ngay thay đổi của mình
+ */
+
+import java.rmi.RemoteException;
+import java.time.LocalDate;
+import java.util.List;
+
+public class ReadRoutingBankService implements BankService {
+    private static final long MAX_STALENESS_MS = Long.getLong("ebanking.rmi.replica.maxStalenessMs", 5000);
+    
+    // Đọc một giá trị trên một phiên
+    private interface Read<T> {
+        T from(BankService service) throws RemoteException;
+    }
+    
+    private final BankService primary;
+    private final BankService replica;
+    private volatile boolean replicaUsable = false;
+    private volatile long lastWriteMillis = 0;
+    private volatile int replicaReads = 0;
+    private volatile int fallbacks = 0;
+    
+    public ReadRoutingBankService(BankService primary, BankService replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+    
+    // replicaReads=.. fallbacks=.. replica=on/off
+    public String getStats() {
+        return "replicaReads=" + replicaReads + " fallbacks=" + fallbacks + " replica=" + (replicaUsable ? "on" : "off");
+    }
+    
+    @Override
+    public String getBanner() throws RemoteException {
+        return primary.getBanner();
+    }
+    
+    @Override
+    public String authenticateUser(String username) throws RemoteException {
+        replicaUsable = false;
+        String response = primary.authenticateUser(username);
+        if (response.startsWith("+OK")) {
+            replicaUsable = replicaAccepts(service -> service.authenticateUser(username));
+        }
+        return response;
+    }
+    
+    @Override
+    public String authenticatePassword(String password) throws RemoteException {
+        String response = primary.authenticatePassword(password);
+        if (response.startsWith("+OK") && replicaUsable) {
+            replicaUsable = replicaAccepts(service -> service.authenticatePassword(password));
+        } else {
+            replicaUsable = false;
+        }
+        return response;
+    }
+    
+    // Replica có trả "+OK" không; lỗi mạng được xem như từ chối
+    private boolean replicaAccepts(Read<String> step) {
+        try {
+            return step.from(replica).startsWith("+OK");
+        } catch (RemoteException e) {
+            System.err.println("Replica unavailable, reading from primary: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public String deposit(double amount) throws RemoteException {
+        lastWriteMillis = System.currentTimeMillis();
+        return primary.deposit(amount);
+    }
+    
+    @Override
+    public String withdraw(double amount) throws RemoteException {
+        lastWriteMillis = System.currentTimeMillis();
+        return primary.withdraw(amount);
+    }
+    
+    @Override
+    public double getBalance() throws RemoteException {
+        return read(BankService::getBalance);
+    }
+    
+    @Override
+    public List<Transaction> getTransactionLog() throws RemoteException {
+        return read(BankService::getTransactionLog);
+    }
+    
+    @Override
+    public TransactionCursor openTransactionCursor(LocalDate from, LocalDate to) throws RemoteException {
+        return primary.openTransactionCursor(from, to);
+    }
+    
+    @Override
+    public TransactionDelta getTransactionsSince(long lastSeq) throws RemoteException {
+        return read(service -> service.getTransactionsSince(lastSeq));
+    }
+    
+    // Đọc trên replica khi được phép, ngược lại (hoặc khi replica lỗi) đọc trên primary
+    private <T> T read(Read<T> read) throws RemoteException {
+        if (replicaUsable && System.currentTimeMillis() - lastWriteMillis > MAX_STALENESS_MS) {
+            try {
+                T value = read.from(replica);
+                replicaReads++;
+                return value;
+            } catch (java.rmi.NoSuchObjectException e) {
+                // Phiên replica đã đóng (replica khởi động lại): bỏ replica cho tới lần đăng nhập sau
+                replicaUsable = false;
+                fallbacks++;
+            } catch (RemoteException e) {
+                fallbacks++;
+            }
+        }
+        return read.from(primary);
+    }
+    
+    @Override
+    public String addBalanceListener(BalanceListener listener) throws RemoteException {
+        return primary.addBalanceListener(listener);
+    }
+    
+    @Override
+    public String removeBalanceListener(BalanceListener listener) throws RemoteException {
+        return primary.removeBalanceListener(listener);
+    }
+    
+    @Override
+    public boolean isLoggedIn() throws RemoteException {
+        return primary.isLoggedIn();
+    }
+    
+    @Override
+    public List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) throws RemoteException {
+        lastWriteMillis = System.currentTimeMillis();
+        return primary.executeBatch(operations, atomic);
+    }
+    
+    @Override
+    public String logout() throws RemoteException {
+        if (replicaUsable) {
+            replicaUsable = false;
+            try {
+                replica.logout();
+            } catch (RemoteException e) {
+                // phiên replica sẽ được đóng khi hết lease
+            }
+        }
+        return primary.logout();
+    }
+    
+    @Override
+    public void close() throws RemoteException {
+        replicaUsable = false;
+        try {
+            replica.close();
+        } catch (RemoteException e) {
+            // phiên replica sẽ được đóng khi hết lease
+        }
+        primary.close();
+    }
+    
+    @Override
+    public String ping() throws RemoteException {
+        return primary.ping();
+    }
+}
@@ -0,0 +1,34 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Read-only Replica Login Factory
+ * Đăng ký trên ReplicaServer với cùng tên "BankLogin"; mỗi client nhận một ReplicaBankService
+ */
+
+import java.rmi.RemoteException;
+
+public class ReplicaBankLogin implements BankLogin {
+    
+    private final ReplicaStore store;
+    private final ReplicaBankService.PasswordCheck passwordCheck;
+    
+    public ReplicaBankLogin(ReplicaStore store, ReplicaBankService.PasswordCheck passwordCheck) {
+        this.store = store;
+        this.passwordCheck = passwordCheck;
+    }
+    
+    @Override
+    public String getBanner() throws RemoteException {
+        return "Welcome to NLU e-Bank (read-only replica)...";
+    }
+    
+    @Override
+    public BankService openSession() throws RemoteException {
+        return Instrumentation.export(new ReplicaBankService(store, passwordCheck), BankService.class);
+    }
+    
+    @Override
+    public String ping() throws RemoteException {
+        return "PONG";
+    }
+}
@@ -0,0 +1,201 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Read-only Replica Session
+ * Một phiên trên ReplicaServer: đăng nhập, getBalance, getTransactionLog và getTransactionsSince
+ * đọc từ ReplicaStore, không chạm CSDL của primary.
+ * - Khi bản sao cũ hơn ebanking.rmi.replica.maxStalenessMs (mặc định 5000) các lời đọc
+ *   ném RemoteException để client đọc lại trên primary
+ * - Thao tác ghi, listener và batch trả "-ERR Read-only replica"
+ * - Mật khẩu không được nhân bản: authenticatePassword hỏi primary qua PasswordCheck
+ */
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.Unreferenced;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplicaBankService implements BankService, Unreferenced {
+    
+    static final long MAX_STALENESS_MS = Long.getLong("ebanking.rmi.replica.maxStalenessMs", 5000);
+    private static final int MAX_DELTA_ROWS = 500;
+    private static final String READ_ONLY = "-ERR Read-only replica";
+    
+    // Kiểm tra username/password trên primary (ReplicationSource.verifyPassword)
+    interface PasswordCheck {
+        boolean verify(String username, String password) throws RemoteException;
+    }
+    
+    private final ReplicaStore store;
+    private final PasswordCheck passwordCheck;
+    private volatile String pendingUser;
+    private volatile String currentUser;
+    private volatile boolean closed = false;
+    
+    public ReplicaBankService(ReplicaStore store, PasswordCheck passwordCheck) {
+        this.store = store;
+        this.passwordCheck = passwordCheck;
+    }
+    
+    @Override
+    public String getBanner() throws RemoteException {
+        touch();
+        return "Welcome to NLU e-Bank (read-only replica)...";
+    }
+    
+    @Override
+    public String authenticateUser(String username) throws RemoteException {
+        touch();
+        if (username == null || username.trim().isEmpty()) {
+            return "-ERR Username cannot be empty";
+        }
+        if (!store.isReady()) {
+            return "-ERR Replica not ready";
+        }
+        Account account = store.findAccount(username.trim());
+        if (account == null) {
+            return "-ERR User not found";
+        }
+        pendingUser = account.getUsername();
+        return "+OK " + account.getAccountNumber() + " " + account.getBalance();
+    }
+    
+    @Override
+    public String authenticatePassword(String password) throws RemoteException {
+        touch();
+        if (password == null || password.isEmpty()) {
+            return "-ERR Password cannot be empty";
+        }
+        if (pendingUser == null) {
+            return "-ERR Not in login phase";
+        }
+        Account account = store.findAccount(pendingUser);
+        boolean valid;
+        try {
+            valid = account != null && passwordCheck.verify(pendingUser, password);
+        } catch (RemoteException e) {
+            System.err.println("Cannot verify password on primary: " + e.getMessage());
+            return "-ERR Replica cannot reach primary, try again later";
+        }
+        if (!valid) {
+            pendingUser = null;
+            return "-ERR Invalid password";
+        }
+        currentUser = pendingUser;
+        return "+OK " + account.getAccountNumber() + " " + account.getBalance();
+    }
+    
+    @Override
+    public String deposit(double amount) throws RemoteException {
+        touch();
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String withdraw(double amount) throws RemoteException {
+        touch();
+        return READ_ONLY;
+    }
+    
+    @Override
+    public double getBalance() throws RemoteException {
+        return currentAccount().getBalance();
+    }
+    
+    @Override
+    public List<Transaction> getTransactionLog() throws RemoteException {
+        return store.getTransactions(currentAccount().getAccountNumber());
+    }
+    
+    @Override
+    public TransactionCursor openTransactionCursor(LocalDate from, LocalDate to) throws RemoteException {
+        touch();
+        throw new RemoteException("Transaction cursor is not available on the read-only replica");
+    }
+    
+    @Override
+    public TransactionDelta getTransactionsSince(long lastSeq) throws RemoteException {
+        return store.getTransactionsSince(currentAccount().getAccountNumber(), Math.max(0, lastSeq), MAX_DELTA_ROWS);
+    }
+    
+    // Tài khoản đang đăng nhập, chỉ khi bản sao còn đủ mới
+    private Account currentAccount() throws RemoteException {
+        touch();
+        long staleness = store.getStalenessMillis();
+        if (staleness > MAX_STALENESS_MS) {
+            throw new RemoteException("Replica stale (" + (store.isReady() ? staleness + " ms" : "not loaded") + ")");
+        }
+        Account account = currentUser != null ? store.findAccount(currentUser) : null;
+        if (account == null) {
+            throw new RemoteException("Not logged in");
+        }
+        return account;
+    }
+    
+    @Override
+    public String addBalanceListener(BalanceListener listener) throws RemoteException {
+        touch();
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String removeBalanceListener(BalanceListener listener) throws RemoteException {
+        touch();
+        return "+OK Listener removed";
+    }
+    
+    @Override
+    public boolean isLoggedIn() throws RemoteException {
+        touch();
+        return currentUser != null;
+    }
+    
+    @Override
+    public List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) throws RemoteException {
+        touch();
+        List<BankResult> results = new ArrayList<>();
+        if (operations != null) {
+            for (int i = 0; i < operations.size(); i++) {
+                results.add(BankResult.error(READ_ONLY));
+            }
+        }
+        return results;
+    }
+    
+    @Override
+    public String logout() throws RemoteException {
+        touch();
+        pendingUser = null;
+        currentUser = null;
+        return "+OK Logged out successfully";
+    }
+    
+    @Override
+    public String ping() throws RemoteException {
+        touch();
+        return "PONG";
+    }
+    
+    @Override
+    public void unreferenced() {
+        close();
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        currentUser = null;
+        Instrumentation.unexport(this);
+    }
+    
+    private void touch() throws RemoteException {
+        if (closed) {
+            throw new NoSuchObjectException("Session closed");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Read-only Replica Server
+ * Tiến trình phụ phục vụ getBalance/getTransactionLog từ bản sao trong bộ nhớ,
+ * để báo cáo không tranh kết nối CSDL với gửi/rút tiền trên primary.
+ * Chạy: java -Debanking.rmi.primary=localhost:1099 -Debanking.rmi.port=1199
+ *        -Debanking.rmi.replication.secret=<khoá của primary> EBankingRMI.ReplicaServer
+ * - Khởi động: tải snapshot từ "Replication" trên primary, sau đó kéo các thay đổi (long-poll)
+ * - Primary khởi động lại hoặc bản sao tụt quá xa log: tự tải lại snapshot
+ * - Độ trễ nhân bản xem qua MetricsService của replica (dòng "replica ...")
+ * - Bản sao không giữ mật khẩu: PASS được kiểm tra trên primary qua ReplicationSource.verifyPassword
+ */
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+
+public class ReplicaServer {
+    private static final String SERVICE_NAME = "BankLogin";
+    private static final String METRICS_NAME = "MetricsService";
+    private static final String REPLICATION_NAME = "Replication";
+    private static final String HOST = "localhost";
+    private static final long SHUTDOWN_WAIT_MS = 10000;
+    private static final String PRIMARY = System.getProperty("ebanking.rmi.primary", "localhost:1099");
+    private static final int REGISTRY_PORT = Integer.getInteger("ebanking.rmi.port", 1199);
+    private static final String SECRET = System.getProperty("ebanking.rmi.replication.secret", "");
+    private static final int PULL_MAX_CHANGES = 1000;
+    private static final long PULL_WAIT_MS = 1000;
+    private static final long RETRY_MAX_MS = 5000;
+    
+    private volatile boolean running;
+    private final ReplicaStore store = new ReplicaStore();
+    private ReplicaBankLogin bankLogin;
+    private MetricsServiceImpl metrics;
+    private Thread replicator;
+    // Stub tới primary; null khi chưa tra được hoặc vừa lỗi mạng
+    private volatile ReplicationSource source;
+    
+    public void start() {
+        if (SECRET.isEmpty()) {
+            System.err.println("Cannot start replica: ebanking.rmi.replication.secret not set");
+            return;
+        }
+        try {
+            running = true;
+            
+            System.out.println("========================================");
+            System.out.println("NLU e-Bank Read-only Replica");
+            System.out.println("Primary: " + PRIMARY);
+            System.out.println("Registry Port: " + REGISTRY_PORT);
+            System.out.println("Max staleness: " + ReplicaBankService.MAX_STALENESS_MS + " ms");
+            System.out.println("========================================");
+            
+            LocateRegistry.createRegistry(REGISTRY_PORT);
+            
+            bankLogin = new ReplicaBankLogin(store, this::verifyPassword);
+            String serviceURL = "rmi://" + HOST + ":" + REGISTRY_PORT + "/" + SERVICE_NAME;
+            Naming.rebind(serviceURL, Instrumentation.export(bankLogin, BankLogin.class));
+            
+            metrics = new MetricsServiceImpl(null, null);
+            metrics.addStatus(() -> "replica primary=" + PRIMARY + " " + store.getStats());
+            String metricsURL = "rmi://" + HOST + ":" + REGISTRY_PORT + "/" + METRICS_NAME;
+            Naming.rebind(metricsURL, Instrumentation.export(metrics, MetricsService.class));
+            metrics.startDumper();
+            
+            System.out.println("Service URL: " + serviceURL);
+            System.out.println("Metrics URL: " + metricsURL);
+            System.out.println("========================================");
+            
+            replicator = new Thread(this::replicate, "replicator");
+            replicator.setDaemon(true);
+            replicator.start();
+            
+            while (running) {
+                Thread.sleep(1000);
+            }
+            
+        } catch (RemoteException e) {
+            System.err.println("RMI Registry error: " + e.getMessage());
+        } catch (java.net.MalformedURLException e) {
+            System.err.println("Invalid service URL: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.out.println("Replica interrupted.");
+        } finally {
+            shutdown();
+        }
+    }
+    
+    // Vòng nhân bản: snapshot khi cần, sau đó kéo liên tục; lỗi mạng thì chờ tăng dần rồi thử lại
+    private void replicate() {
+        long backoff = 200;
+        boolean needSnapshot = true;
+        
+        while (running) {
+            try {
+                if (source == null) {
+                    source = (ReplicationSource) Naming.lookup("rmi://" + PRIMARY + "/" + REPLICATION_NAME);
+                }
+                if (needSnapshot) {
+                    long requestedAt = System.currentTimeMillis();
+                    ReplicationSnapshot snapshot = source.snapshot(SECRET);
+                    store.load(snapshot, requestedAt);
+                    System.out.println("Replica loaded snapshot: " + snapshot.getAccounts().size() + " accounts, "
+                            + snapshot.getRows().size() + " transactions, seq " + snapshot.getSeq());
+                    needSnapshot = false;
+                }
+                
+                ReplicationBatch batch = source.pull(SECRET, store.getEpoch(), store.getAppliedSeq(),
+                        PULL_MAX_CHANGES, PULL_WAIT_MS);
+                if (batch.isResync()) {
+                    System.out.println("Primary requested resync (epoch " + batch.getEpoch() + ")");
+                    needSnapshot = true;
+                    continue;
+                }
+                store.apply(batch, System.currentTimeMillis());
+                backoff = 200;
+            } catch (Exception e) {
+                // Primary tắt hoặc khởi động lại: tra lại stub, bản sao cũ dần cho tới khi nối lại
+                System.err.println("Replication error: " + e.getMessage());
+                source = null;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, RETRY_MAX_MS);
+            }
+        }
+    }
+    
+    // Đăng nhập vào replica: mật khẩu chỉ có trên primary
+    private boolean verifyPassword(String username, String password) throws RemoteException {
+        ReplicationSource current = source;
+        if (current == null) {
+            throw new RemoteException("Primary not connected");
+        }
+        return current.verifyPassword(SECRET, username, password);
+    }
+    
+    public void stop() {
+        running = false;
+    }
+    
+    private void shutdown() {
+        System.out.println("Shutting down replica...");
+        if (replicator != null) {
+            replicator.interrupt();
+        }
+        if (metrics != null) {
+            metrics.stopDumper();
+            Instrumentation.unexport(metrics);
+        }
+        if (bankLogin != null) {
+            Instrumentation.unexport(bankLogin);
+        }
+        System.out.println("Replica shutdown complete.");
+    }
+    
+    public static void main(String[] args) {
+        if (System.getProperty("java.rmi.dgc.leaseValue") == null) {
+            System.setProperty("java.rmi.dgc.leaseValue", "60000");
+        }
+        
+        ReplicaServer server = new ReplicaServer();
+        // Đăng ký shutdown hook: JVM chỉ dừng sau khi main chạy xong shutdown() (dump metrics, đóng phiên, pool)
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                main.join(SHUTDOWN_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        server.start();
+    }
+}
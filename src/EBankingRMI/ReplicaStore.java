@@ -0,0 +1,191 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Replica Store
+ * Bản sao chỉ đọc trong bộ nhớ của ReplicaServer, nạp từ ReplicationSnapshot rồi áp dụng
+ * các ReplicationBatch theo thứ tự seq:
+ * - Giao dịch được bỏ trùng theo id gốc (snapshot có thể đã chứa thay đổi sau seq của nó)
+ * - Số dư được ghi đè bằng giá trị trong Change, Change sau cùng mang số dư mới nhất
+ * - Độ cũ (staleness) = thời gian từ lần cuối bản sao xác nhận đã theo kịp head của primary;
+ *   lời đọc bị từ chối khi vượt ebanking.rmi.replica.maxStalenessMs (ReplicaBankService)
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ReplicaStore {
+    private static final Comparator<ReplicationBatch.Row> NEWEST_FIRST =
+            Comparator.comparingLong(ReplicationBatch.Row::getMillis)
+                      .thenComparingLong(ReplicationBatch.Row::getId).reversed();
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Account> accountsByUsername = new HashMap<>();
+    private final Map<String, Account> accountsByNumber = new HashMap<>();
+    private final Map<String, TreeMap<Long, ReplicationBatch.Row>> rowsByAccount = new HashMap<>();
+    // Độ trễ commit trên primary -> áp dụng trên bản sao (cùng đồng hồ khi chạy cùng máy)
+    private final LatencyHistogram applyDelay = new LatencyHistogram();
+    private long epoch = -1;
+    private long appliedSeq = 0;
+    private volatile long headSeq = 0;
+    private volatile long lastCaughtUpMillis = 0;
+    private volatile boolean ready = false;
+    
+    // Thay toàn bộ dữ liệu bằng snapshot; requestedAt = lúc gửi yêu cầu snapshot
+    public void load(ReplicationSnapshot snapshot, long requestedAt) {
+        lock.writeLock().lock();
+        try {
+            accountsByUsername.clear();
+            accountsByNumber.clear();
+            rowsByAccount.clear();
+            for (Account account : snapshot.getAccounts()) {
+                accountsByUsername.put(account.getUsername(), account);
+                accountsByNumber.put(account.getAccountNumber(), account);
+            }
+            for (ReplicationBatch.Row row : snapshot.getRows()) {
+                addRow(row);
+            }
+            epoch = snapshot.getEpoch();
+            appliedSeq = snapshot.getSeq();
+            headSeq = snapshot.getSeq();
+            lastCaughtUpMillis = requestedAt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Áp dụng một batch đã kéo về; receivedAt = lúc nhận trả lời
+    public void apply(ReplicationBatch batch, long receivedAt) {
+        lock.writeLock().lock();
+        try {
+            for (ReplicationBatch.Change change : batch.getChanges()) {
+                if (change.getSeq() <= appliedSeq) {
+                    continue;
+                }
+                for (ReplicationBatch.Row row : change.getRows()) {
+                    addRow(row);
+                }
+                Account account = accountsByNumber.get(change.getAccountNumber());
+                if (account != null) {
+                    account.setBalance(change.getBalance());
+                }
+                appliedSeq = change.getSeq();
+                applyDelay.record(Math.max(0, receivedAt - change.getCommitMillis()) * 1_000_000L);
+            }
+            headSeq = batch.getHeadSeq();
+            // Primary không có gì mới hơn lúc trả lời: bản sao đúng tới thời điểm nhận
+            if (appliedSeq >= headSeq) {
+                lastCaughtUpMillis = receivedAt;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void addRow(ReplicationBatch.Row row) {
+        rowsByAccount.computeIfAbsent(row.getAccountNumber(), k -> new TreeMap<>()).put(row.getId(), row);
+    }
+    
+    // Bản sao của tài khoản (không trả đối tượng đang được cập nhật)
+    public Account findAccount(String username) {
+        lock.readLock().lock();
+        try {
+            Account account = accountsByUsername.get(username);
+            return account == null ? null : new Account(account.getUsername(), account.getPassword(),
+                    account.getAccountNumber(), account.getBalance());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Nhật ký giao dịch, mới nhất trước (cùng thứ tự với DatabaseManager.getTransactionLog)
+    public List<Transaction> getTransactions(String accountNumber) {
+        List<ReplicationBatch.Row> rows;
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, ReplicationBatch.Row> byId = rowsByAccount.get(accountNumber);
+            rows = byId == null ? new ArrayList<>() : new ArrayList<>(byId.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        rows.sort(NEWEST_FIRST);
+        List<Transaction> transactions = new ArrayList<>(rows.size());
+        for (ReplicationBatch.Row row : rows) {
+            transactions.add(row.toTransaction());
+        }
+        return transactions;
+    }
+    
+    // Các giao dịch có id > lastSeq, như DatabaseManager.loadTransactionsSince
+    public TransactionDelta getTransactionsSince(String accountNumber, long lastSeq, int maxRows) {
+        TransactionDelta delta = new TransactionDelta(accountNumber, lastSeq, maxRows);
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, ReplicationBatch.Row> byId = rowsByAccount.get(accountNumber);
+            if (byId == null || byId.isEmpty()) {
+                delta.setReset(lastSeq > 0);
+                delta.setComplete(lastSeq <= 0);
+                return delta;
+            }
+            for (ReplicationBatch.Row row : byId.tailMap(lastSeq, false).values()) {
+                if (delta.size() == maxRows) {
+                    return delta;
+                }
+                delta.add(row.getId(), row.getMillis(), row.getOperation(), row.getAmount());
+            }
+            if (delta.size() == 0 && byId.lastKey() < lastSeq) {
+                delta.setReset(true);
+                return delta;
+            }
+            delta.setComplete(true);
+            return delta;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public long getEpoch() {
+        lock.readLock().lock();
+        try {
+            return epoch;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long getAppliedSeq() {
+        lock.readLock().lock();
+        try {
+            return appliedSeq;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Số thay đổi primary đã commit mà bản sao chưa áp dụng (theo head thấy lần cuối)
+    public long getLagSeq() {
+        return Math.max(0, headSeq - getAppliedSeq());
+    }
+    
+    // Mili giây từ lần cuối bản sao chắc chắn đã theo kịp primary; Long.MAX_VALUE khi chưa nạp
+    public long getStalenessMillis() {
+        return ready ? System.currentTimeMillis() - lastCaughtUpMillis : Long.MAX_VALUE;
+    }
+    
+    // applied=.. head=.. lagSeq=.. stalenessMs=.. applyDelay count=.. mean=..us ...
+    public String getStats() {
+        return "applied=" + getAppliedSeq() + " head=" + headSeq + " lagSeq=" + getLagSeq()
+                + " stalenessMs=" + (ready ? getStalenessMillis() : -1)
+                + " applyDelay " + applyDelay.summary();
+    }
+}
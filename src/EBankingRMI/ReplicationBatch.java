@@ -0,0 +1,127 @@
+package EBankingRMI;
+
+import java.io.Serializable;
+import java.util.List;
+
+/*
+ * E-Banking System - Replication Batch
+ * Một lần kéo từ ReplicationSource.pull(...): các thay đổi đã commit trên primary theo thứ tự seq.
+ * Mỗi Change là một lần commit của một tài khoản: các giao dịch vừa ghi (kèm id gốc để bản sao
+ * bỏ trùng) và số dư sau commit.
+ * resync = true: bản sao phải tải lại snapshot (primary đã khởi động lại hoặc bản sao tụt quá xa log).
+ */
+
+public class ReplicationBatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final long epoch;
+    private final long headSeq;
+    private final boolean resync;
+    private final List<Change> changes;
+    
+    ReplicationBatch(long epoch, long headSeq, boolean resync, List<Change> changes) {
+        this.epoch = epoch;
+        this.headSeq = headSeq;
+        this.resync = resync;
+        this.changes = changes;
+    }
+    
+    // Định danh lần chạy của primary
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    // seq mới nhất trên primary lúc trả lời
+    public long getHeadSeq() {
+        return headSeq;
+    }
+    
+    public boolean isResync() {
+        return resync;
+    }
+    
+    public List<Change> getChanges() {
+        return changes;
+    }
+    
+    public static class Change implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final long seq;
+        private final long commitMillis;
+        private final String accountNumber;
+        private final double balance;
+        private final List<Row> rows;
+        
+        Change(long seq, long commitMillis, String accountNumber, double balance, List<Row> rows) {
+            this.seq = seq;
+            this.commitMillis = commitMillis;
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+            this.rows = rows;
+        }
+        
+        public long getSeq() {
+            return seq;
+        }
+        
+        public long getCommitMillis() {
+            return commitMillis;
+        }
+        
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+        
+        public double getBalance() {
+            return balance;
+        }
+        
+        public List<Row> getRows() {
+            return rows;
+        }
+    }
+    
+    // Một dòng của bảng Transactions
+    public static class Row implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final long id;
+        private final String accountNumber;
+        private final long millis;
+        private final String operation;
+        private final double amount;
+        
+        Row(long id, String accountNumber, long millis, String operation, double amount) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.millis = millis;
+            this.operation = operation;
+            this.amount = amount;
+        }
+        
+        public long getId() {
+            return id;
+        }
+        
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+        
+        public long getMillis() {
+            return millis;
+        }
+        
+        public String getOperation() {
+            return operation;
+        }
+        
+        public double getAmount() {
+            return amount;
+        }
+        
+        public Transaction toTransaction() {
+            return new Transaction(accountNumber, operation, new java.sql.Timestamp(millis).toLocalDateTime(), amount);
+        }
+    }
+}
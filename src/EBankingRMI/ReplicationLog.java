@@ -0,0 +1,108 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Replication Log
+ * Log thay đổi trong bộ nhớ của primary, ghi sau mỗi commit (DatabaseManager.publishBalance):
+ * - Mỗi commit của một tài khoản là một Change với seq tăng dần theo thứ tự ghi vào log
+ * - Số dư được đọc và ghi vào log trong cùng khoá của tài khoản, nên Change sau cùng của
+ *   một tài khoản luôn mang số dư mới nhất dù nhiều phiên commit xen kẽ
+ * - Giữ tối đa ebanking.rmi.replicationLogSize thay đổi (mặc định 100000); bản sao tụt xa hơn
+ *   hoặc thấy epoch khác (primary khởi động lại) phải tải lại snapshot
+ * - pull() chờ tối đa waitMillis khi chưa có thay đổi mới (long-poll), bản sao không phải hỏi liên tục
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicationLog {
+    private static final int CAPACITY = Integer.getInteger("ebanking.rmi.replicationLogSize", 100000);
+    private static final int LOCK_STRIPES = 64;
+    
+    // Đọc số dư sau commit (trên kết nối của phiên)
+    interface BalanceReader {
+        double read() throws SQLException;
+    }
+    
+    private final long epoch = System.currentTimeMillis();
+    private final Deque<ReplicationBatch.Change> changes = new ArrayDeque<>();
+    private final Object[] accountLocks = new Object[LOCK_STRIPES];
+    private final LongAdder pulls = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private long headSeq = 0;
+    private volatile long lastPullMillis = 0;
+    private volatile long lastPulledSeq = 0;
+    
+    public ReplicationLog() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            accountLocks[i] = new Object();
+        }
+    }
+    
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    public synchronized long getHeadSeq() {
+        return headSeq;
+    }
+    
+    // Gọi sau commit; rows là các giao dịch vừa commit của tài khoản
+    void append(String accountNumber, BalanceReader balance, List<ReplicationBatch.Row> rows) throws SQLException {
+        synchronized (accountLocks[Math.floorMod(accountNumber.hashCode(), LOCK_STRIPES)]) {
+            double current = balance.read();
+            synchronized (this) {
+                headSeq++;
+                changes.addLast(new ReplicationBatch.Change(headSeq, System.currentTimeMillis(),
+                        accountNumber, current, rows));
+                if (changes.size() > CAPACITY) {
+                    changes.removeFirst();
+                }
+                notifyAll();
+            }
+        }
+    }
+    
+    // Các thay đổi sau afterSeq, tối đa maxChanges
+    public synchronized ReplicationBatch pull(long expectedEpoch, long afterSeq, int maxChanges, long waitMillis)
+            throws InterruptedException {
+        pulls.increment();
+        lastPullMillis = System.currentTimeMillis();
+        long oldest = changes.isEmpty() ? headSeq + 1 : changes.peekFirst().getSeq();
+        if (expectedEpoch != epoch || afterSeq > headSeq || afterSeq + 1 < oldest) {
+            resyncs.increment();
+            return new ReplicationBatch(epoch, headSeq, true, new ArrayList<>());
+        }
+        
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (headSeq == afterSeq) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        
+        List<ReplicationBatch.Change> batch = new ArrayList<>();
+        for (ReplicationBatch.Change change : changes) {
+            if (change.getSeq() > afterSeq) {
+                batch.add(change);
+                if (batch.size() == maxChanges) {
+                    break;
+                }
+            }
+        }
+        lastPulledSeq = batch.isEmpty() ? afterSeq : batch.get(batch.size() - 1).getSeq();
+        return new ReplicationBatch(epoch, headSeq, false, batch);
+    }
+    
+    // head=.. retained=.. pulls=.. resyncs=.. replicaSeq=.. lastPullAgoMs=..
+    public synchronized String getStats() {
+        return "head=" + headSeq + " retained=" + changes.size() + " pulls=" + pulls.sum()
+                + " resyncs=" + resyncs.sum() + " replicaSeq=" + lastPulledSeq
+                + " lastPullAgoMs=" + (lastPullMillis == 0 ? -1 : System.currentTimeMillis() - lastPullMillis);
+    }
+}
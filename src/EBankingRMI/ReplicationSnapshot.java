@@ -0,0 +1,43 @@
+package EBankingRMI;
+
+import java.io.Serializable;
+import java.util.List;
+
+/*
+ * E-Banking System - Replication Snapshot
+ * Toàn bộ Accounts và Transactions của primary, dùng để khởi tạo bản sao.
+ * seq là vị trí log TRƯỚC khi đọc: bản sao kéo tiếp từ seq, các thay đổi đã nằm trong snapshot
+ * được bỏ trùng theo id giao dịch, số dư được ghi đè bằng giá trị mới hơn.
+ */
+
+public class ReplicationSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final long epoch;
+    private final long seq;
+    private final List<Account> accounts;
+    private final List<ReplicationBatch.Row> rows;
+    
+    ReplicationSnapshot(long epoch, long seq, List<Account> accounts, List<ReplicationBatch.Row> rows) {
+        this.epoch = epoch;
+        this.seq = seq;
+        this.accounts = accounts;
+        this.rows = rows;
+    }
+    
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+    
+    public List<ReplicationBatch.Row> getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,25 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Remote Replication Source
+ * Đăng ký trên primary với tên "Replication"; ReplicaServer kéo luồng thay đổi đã commit từ đây.
+ * Mọi lời gọi mang khoá chung (ebanking.rmi.replication.secret), sai khoá thì ném RemoteException
+ */
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface ReplicationSource extends Remote {
+    
+    // Toàn bộ dữ liệu hiện tại kèm vị trí log để kéo tiếp (không kèm mật khẩu)
+    // Returns: ReplicationSnapshot
+    ReplicationSnapshot snapshot(String secret) throws RemoteException;
+    
+    // Các thay đổi sau afterSeq (chờ tối đa waitMillis nếu chưa có)
+    // Returns: ReplicationBatch; isResync() = true khi phải tải lại snapshot
+    ReplicationBatch pull(String secret, long epoch, long afterSeq, int maxChanges, long waitMillis) throws RemoteException;
+    
+    // Kiểm tra mật khẩu trên primary cho lần đăng nhập vào replica
+    // Returns: true nếu đúng username/password
+    boolean verifyPassword(String secret, String username, String password) throws RemoteException;
+}
@@ -0,0 +1,118 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Replication Source Implementation
+ * Snapshot đọc trên một kết nối mượn từ pool; pull đọc từ ReplicationLog trong bộ nhớ
+ * nên không chạm CSDL của primary
+ * Snapshot không chứa mật khẩu: replica gửi lần kiểm tra mật khẩu về verifyPassword
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplicationSourceImpl implements ReplicationSource {
+    private static final long MAX_WAIT_MS = 10000;
+    private static final String VERIFY_PASSWORD_SQL =
+        "SELECT COUNT(*) FROM Accounts WHERE username = ? AND password = ?";
+    
+    private final ReplicationLog log;
+    private final ConnectionPool pool;
+    private final byte[] secret;
+    
+    public ReplicationSourceImpl(ReplicationLog log, ConnectionPool pool, String secret) {
+        this.log = log;
+        this.pool = pool;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public ReplicationSnapshot snapshot(String secret) throws RemoteException {
+        checkSecret(secret);
+        // Lấy vị trí log trước khi đọc: mọi thay đổi sau đó đều được kéo lại
+        long seq = log.getHeadSeq();
+        List<Account> accounts = new ArrayList<>();
+        List<ReplicationBatch.Row> rows = new ArrayList<>();
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (Statement stmt = connection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT username, accountNumber, balance FROM Accounts")) {
+                    while (rs.next()) {
+                        accounts.add(new Account(rs.getString("username"), null,
+                                rs.getString("accountNumber"), rs.getDouble("balance")));
+                    }
+                }
+                stmt.setFetchSize(500);
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT id, accountNumber, operation, transactionDate, amount FROM Transactions ORDER BY id")) {
+                    while (rs.next()) {
+                        rows.add(new ReplicationBatch.Row(rs.getLong("id"), rs.getString("accountNumber"),
+                                rs.getTimestamp("transactionDate").getTime(), rs.getString("operation"),
+                                rs.getDouble("amount")));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading replication snapshot: " + e.getMessage());
+            throw new RemoteException("Database error");
+        } finally {
+            pool.release(connection);
+        }
+        System.out.println("Replication snapshot: " + accounts.size() + " accounts, " + rows.size()
+                + " transactions at seq " + seq);
+        return new ReplicationSnapshot(log.getEpoch(), seq, accounts, rows);
+    }
+    
+    @Override
+    public ReplicationBatch pull(String secret, long epoch, long afterSeq, int maxChanges, long waitMillis)
+            throws RemoteException {
+        checkSecret(secret);
+        try {
+            return log.pull(epoch, afterSeq, Math.max(1, Math.min(maxChanges, 10000)),
+                    Math.max(0, Math.min(waitMillis, MAX_WAIT_MS)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted");
+        }
+    }
+    
+    @Override
+    public boolean verifyPassword(String secret, String username, String password) throws RemoteException {
+        checkSecret(secret);
+        if (username == null || password == null) {
+            return false;
+        }
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(VERIFY_PASSWORD_SQL)) {
+                pstmt.setString(1, username);
+                pstmt.setString(2, password);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() && rs.getInt(1) > 0;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error verifying replica login: " + e.getMessage());
+            throw new RemoteException("Database error");
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // So sánh thời gian hằng để không lộ khoá qua thời gian trả lời
+    private void checkSecret(String secret) throws RemoteException {
+        if (secret == null || !MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8))) {
+            throw new RemoteException("Replication access denied");
+        }
+    }
+}
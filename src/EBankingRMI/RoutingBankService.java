@@ -0,0 +1,230 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Routing Bank Service
+ * BankService phía client (không export) dùng khi dữ liệu chia cho nhiều server (ShardMap):
+ * - authenticateUser hỏi song song mọi shard (client chỉ biết username, chưa biết số tài khoản);
+ *   shard trả "+OK <số tài khoản> ..." là shard sở hữu tài khoản, phiên trên các shard khác được đóng ngay
+ * - Sau đó mọi lời gọi đi thẳng tới phiên trên shard đó, không qua trung gian
+ */
+
+import java.rmi.RemoteException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RoutingBankService implements BankService {
+    private static final String USER_NOT_FOUND = "-ERR User not found";
+    
+    private static final ExecutorService fanOut = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "shard-fan-out");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final ShardRouter router;
+    private volatile BankService session;
+    private volatile ShardMap.Shard shard;
+    
+    public RoutingBankService(ShardRouter router) {
+        this.router = router;
+    }
+    
+    // Shard đang phục vụ người dùng, null khi chưa qua USER
+    public ShardMap.Shard getShard() {
+        return shard;
+    }
+    
+    @Override
+    public String getBanner() throws RemoteException {
+        if (session != null) {
+            return session.getBanner();
+        }
+        return anyShard().getBanner();
+    }
+    
+    @Override
+    public String authenticateUser(String username) throws RemoteException {
+        release();
+        
+        Map<ShardMap.Shard, Future<BankService>> sessions = new LinkedHashMap<>();
+        Map<ShardMap.Shard, Future<String>> responses = new LinkedHashMap<>();
+        for (ShardMap.Shard candidate : router.getShards()) {
+            Future<BankService> opened = fanOut.submit(() -> router.openSession(candidate));
+            sessions.put(candidate, opened);
+            responses.put(candidate, fanOut.submit(() -> opened.get().authenticateUser(username)));
+        }
+        
+        String result = USER_NOT_FOUND;
+        List<Future<BankService>> others = new ArrayList<>();
+        for (Map.Entry<ShardMap.Shard, Future<String>> entry : responses.entrySet()) {
+            ShardMap.Shard candidate = entry.getKey();
+            String response;
+            try {
+                response = entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while contacting shards");
+            } catch (ExecutionException e) {
+                if (result.equals(USER_NOT_FOUND)) {
+                    result = "-ERR Shard " + candidate.getName() + " unavailable, try again later";
+                }
+                // Phiên có thể đã mở trước khi authenticateUser lỗi
+                others.add(sessions.get(candidate));
+                continue;
+            }
+            
+            if (response.startsWith("+OK") && session == null) {
+                session = getQuietly(sessions.get(candidate));
+                shard = candidate;
+                result = response;
+            } else {
+                if (!response.equals(USER_NOT_FOUND) && session == null) {
+                    result = response;
+                }
+                others.add(sessions.get(candidate));
+            }
+        }
+        
+        for (Future<BankService> other : others) {
+            closeQuietly(getQuietly(other));
+        }
+        return result;
+    }
+    
+    @Override
+    public String authenticatePassword(String password) throws RemoteException {
+        if (session == null) {
+            return "-ERR Not in login phase";
+        }
+        return session.authenticatePassword(password);
+    }
+    
+    @Override
+    public String deposit(double amount) throws RemoteException {
+        return session().deposit(amount);
+    }
+    
+    @Override
+    public String withdraw(double amount) throws RemoteException {
+        return session().withdraw(amount);
+    }
+    
+    @Override
+    public double getBalance() throws RemoteException {
+        return session().getBalance();
+    }
+    
+    @Override
+    public List<Transaction> getTransactionLog() throws RemoteException {
+        return session().getTransactionLog();
+    }
+    
+    @Override
+    public TransactionCursor openTransactionCursor(LocalDate from, LocalDate to) throws RemoteException {
+        return session().openTransactionCursor(from, to);
+    }
+    
+    @Override
+    public TransactionDelta getTransactionsSince(long lastSeq) throws RemoteException {
+        return session().getTransactionsSince(lastSeq);
+    }
+    
+    @Override
+    public String addBalanceListener(BalanceListener listener) throws RemoteException {
+        return session().addBalanceListener(listener);
+    }
+    
+    @Override
+    public String removeBalanceListener(BalanceListener listener) throws RemoteException {
+        return session().removeBalanceListener(listener);
+    }
+    
+    @Override
+    public boolean isLoggedIn() throws RemoteException {
+        return session != null && session.isLoggedIn();
+    }
+    
+    @Override
+    public List<BankResult> executeBatch(List<BankOperation> operations, boolean atomic) throws RemoteException {
+        return session().executeBatch(operations, atomic);
+    }
+    
+    @Override
+    public String logout() throws RemoteException {
+        if (session == null) {
+            return "+OK Logged out successfully";
+        }
+        return session.logout();
+    }
+    
+    @Override
+    public void close() throws RemoteException {
+        release();
+    }
+    
+    @Override
+    public String ping() throws RemoteException {
+        if (session != null) {
+            return session.ping();
+        }
+        return anyShard().ping();
+    }
+    
+    private BankService session() throws RemoteException {
+        BankService current = session;
+        if (current == null) {
+            throw new RemoteException("Not logged in");
+        }
+        return current;
+    }
+    
+    // Shard đầu tiên còn trả lời, cho các lời gọi trước khi biết tài khoản
+    private BankLogin anyShard() throws RemoteException {
+        RemoteException last = null;
+        for (ShardMap.Shard candidate : router.getShards()) {
+            try {
+                BankLogin login = router.login(candidate);
+                login.ping();
+                return login;
+            } catch (RemoteException e) {
+                router.invalidate(candidate);
+                last = e;
+            }
+        }
+        throw last != null ? last : new RemoteException("No shards configured");
+    }
+    
+    // Bỏ phiên của lần USER trước (sai tên, đổi người dùng)
+    private void release() {
+        BankService previous = session;
+        session = null;
+        shard = null;
+        closeQuietly(previous);
+    }
+    
+    private static BankService getQuietly(Future<BankService> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+    
+    private static void closeQuietly(BankService other) {
+        if (other == null) {
+            return;
+        }
+        try {
+            other.close();
+        } catch (RemoteException e) {
+            // phiên sẽ được server đóng khi hết lease
+        }
+    }
+}
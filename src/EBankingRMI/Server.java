@@ -2,18 +2,50 @@ package EBankingRMI;
 
 /*
  * E-Banking System - RMI Server
+ * Chạy một shard: -Debanking.rmi.shard=s2 [-Debanking.rmi.shards=./shards.conf]
+ * (cổng Registry, file CSDL và khoảng tài khoản lấy từ ShardMap)
+ * Nhân bản (tuỳ chọn): -Debanking.rmi.replication=true -Debanking.rmi.replication.secret=<khoá>
+ * đẩy các thay đổi đã commit vào ReplicationLog, đăng ký tên "Replication" cho ReplicaServer kéo về
+ * Khởi động: Registry, BankLogin và MetricsService được đăng ký ngay; mở CSDL, chuẩn bị câu lệnh,
+ * dữ liệu mẫu và (tuỳ chọn) preload chạy nền trong StartupPipeline, tới lúc đó client nhận
+ * ServerNotReadyException
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.Naming;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class Server {
-    private static final String SERVICE_NAME = "BankService";
-    private static final int REGISTRY_PORT = 1099;
+    private static final String SERVICE_NAME = "BankLogin";
+    private static final String METRICS_NAME = "MetricsService";
+    private static final String REPLICATION_NAME = "Replication";
+    private static final boolean REPLICATION_ENABLED =
+            Boolean.parseBoolean(System.getProperty("ebanking.rmi.replication", "false"));
+    // Khoá chung với ReplicaServer; thiếu khoá thì không bật nhân bản
+    private static final String REPLICATION_SECRET = System.getProperty("ebanking.rmi.replication.secret", "");
+    // Số tài khoản nhiều giao dịch nhất được đọc trước khi nhận client (0 = tắt)
+    private static final int PRELOAD_ACCOUNTS = Integer.getInteger("ebanking.rmi.preloadAccounts", 0);
+    private static final long DB_RETRY_MS = 5000;
     private static final String HOST = "localhost";
+    private static final long SHUTDOWN_WAIT_MS = 10000;
+    private static final String SHARDS_FILE = System.getProperty("ebanking.rmi.shards", "./shards.conf");
+    private static final String SHARD_NAME = System.getProperty("ebanking.rmi.shard");
     
     private volatile boolean running;
+    private ConnectionPool pool;
+    private BankLoginImpl bankLogin;
+    private MetricsServiceImpl metrics;
+    private ReplicationLog replicationLog;
+    private ReplicationSourceImpl replicationSource;
+    private final StartupPipeline startup = new StartupPipeline();
+    private int registryPort = Integer.getInteger("ebanking.rmi.port", 1099);
+    private ShardMap shardMap;
     
     public Server() {
         this.running = false;
@@ -23,41 +55,71 @@ public class Server {
         try {
             running = true;
             
+            if (SHARD_NAME != null && !loadShard()) {
+                return;
+            }
+            
             System.out.println("========================================");
             System.out.println("NLU e-Bank Server");
-            System.out.println("Registry Port: " + REGISTRY_PORT);
+            if (shardMap != null) {
+                System.out.println("Shard: " + shardMap.get(SHARD_NAME));
+            }
+            System.out.println("Registry Port: " + registryPort);
             System.out.println("Service Name: " + SERVICE_NAME);
+            System.out.println("Compression: " + (BankLoginImpl.SOCKET_FACTORY != null ? "DEFLATE" : "off"));
+            System.out.println("Call metrics: " + (Instrumentation.isEnabled() ? "on" : "off"));
+            System.out.println("Replication: " + (REPLICATION_ENABLED ? (REPLICATION_SECRET.isEmpty()
+                    ? "off (ebanking.rmi.replication.secret not set)" : "on") : "off"));
             System.out.println("========================================");
             System.out.println("Starting RMI Registry...");
             
             // Tạo RMI Registry trên port 1099
-            LocateRegistry.createRegistry(REGISTRY_PORT);
+            if (!startup.run("registry", () -> LocateRegistry.createRegistry(registryPort))) {
+                return;
+            }
+            
+            // Pool kết nối dùng chung (chưa mở kết nối); mỗi client mở phiên riêng qua BankLogin
+            pool = ConnectionPool.getInstance();
+            System.out.println("Creating BankLogin factory...");
+            replicationLog = REPLICATION_ENABLED && !REPLICATION_SECRET.isEmpty() ? new ReplicationLog() : null;
+            bankLogin = shardMap != null
+                    ? new BankLoginImpl(pool, accountNumber -> shardMap.owns(SHARD_NAME, accountNumber), replicationLog)
+                    : new BankLoginImpl(pool, accountNumber -> true, replicationLog);
+            bankLogin.setStartup(startup);
             
-            // Tạo service instance
-            System.out.println("Creating BankService implementation...");
-            BankService bankService = new BankServiceImpl();
+            // Số liệu lời gọi: đăng ký riêng để công cụ đo không cần mở phiên ngân hàng
+            metrics = new MetricsServiceImpl(bankLogin, pool);
+            metrics.addStatus(() -> "startup " + startup.getStats());
+            if (replicationLog != null) {
+                metrics.addStatus(() -> "replication " + replicationLog.getStats());
+            }
             
-            // Đăng ký service với RMI Registry
-            String serviceURL = "rmi://" + HOST + ":" + REGISTRY_PORT + "/" + SERVICE_NAME;
-            Naming.rebind(serviceURL, bankService);
+            // Đăng ký factory với RMI Registry; client nhận ServerNotReadyException tới khi khởi động xong
+            String serviceURL = "rmi://" + HOST + ":" + registryPort + "/" + SERVICE_NAME;
+            String metricsURL = "rmi://" + HOST + ":" + registryPort + "/" + METRICS_NAME;
+            if (!startup.run("bind", () -> {
+                Naming.rebind(serviceURL, Instrumentation.export(bankLogin, BankLogin.class));
+                Naming.rebind(metricsURL, Instrumentation.export(metrics, MetricsService.class));
+            })) {
+                return;
+            }
+            metrics.startDumper();
             
             System.out.println("Service bound successfully!");
             System.out.println("Service URL: " + serviceURL);
+            System.out.println("Metrics URL: " + metricsURL);
             System.out.println("========================================");
-            System.out.println("Server started. Waiting for clients...");
+            System.out.println("Warming up in background: " + startup.getStats());
             
-            // Thêm dữ liệu mẫu
-            initializeSampleData();
+            Thread warmUp = new Thread(this::warmUp, "startup");
+            warmUp.setDaemon(true);
+            warmUp.start();
             
             // Server chạy vô hạn
             while (running) {
                 Thread.sleep(1000);
             }
             
-        } catch (RemoteException e) {
-            System.err.println("RMI Registry error: " + e.getMessage());
-        } catch (java.net.MalformedURLException e) {
-            System.err.println("Invalid service URL: " + e.getMessage());
         } catch (InterruptedException e) {
             System.out.println("Server interrupted.");
         } catch (Exception e) {
@@ -67,12 +129,105 @@ public class Server {
         }
     }
     
+    // Các pha chạy nền: mở CSDL (thử lại tới khi được), sau đó chuẩn bị câu lệnh song song với
+    // dữ liệu mẫu + preload; cuối cùng đăng ký nguồn nhân bản và cho phép mở phiên
+    private void warmUp() {
+        while (running && !startup.run("database", pool::warmUp)) {
+            try {
+                Thread.sleep(DB_RETRY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        
+        CompletableFuture<Void> prepare = CompletableFuture.runAsync(
+                () -> startup.run("prepare", this::prepareStatements));
+        CompletableFuture<Void> data = CompletableFuture.runAsync(() -> {
+            startup.run("sampleData", this::initializeSampleData);
+            if (PRELOAD_ACCOUNTS > 0) {
+                startup.run("preload", this::preloadHotAccounts);
+            }
+        });
+        CompletableFuture.allOf(prepare, data).join();
+        
+        // Nguồn nhân bản cho ReplicaServer: snapshot cần bảng đã được tạo
+        if (replicationLog != null) {
+            String replicationURL = "rmi://" + HOST + ":" + registryPort + "/" + REPLICATION_NAME;
+            startup.run("replication", () -> {
+                replicationSource = new ReplicationSourceImpl(replicationLog, pool, REPLICATION_SECRET);
+                Naming.rebind(replicationURL, Instrumentation.export(replicationSource, ReplicationSource.class));
+            });
+            System.out.println("Replication URL: " + replicationURL);
+        }
+        
+        startup.markReady();
+        System.out.println("Server ready: " + startup.getStats());
+        System.out.println("Waiting for clients...");
+    }
+    
+    // Chuẩn bị câu lệnh của phiên trên mọi kết nối đang rảnh, mỗi kết nối một thread
+    private void prepareStatements() throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = pool.getIdleCount(); i > 0; i--) {
+                connections.add(pool.borrow());
+            }
+            List<CompletableFuture<Integer>> prepared = new ArrayList<>();
+            for (Connection connection : connections) {
+                prepared.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return DatabaseManager.prepareStatements(connection);
+                    } catch (SQLException e) {
+                        throw new java.util.concurrent.CompletionException(e);
+                    }
+                }));
+            }
+            int statements = 0;
+            for (CompletableFuture<Integer> future : prepared) {
+                statements += future.join();
+            }
+            System.out.println("Prepared " + statements + " statements on " + connections.size() + " connections.");
+        } finally {
+            for (Connection connection : connections) {
+                pool.release(connection);
+            }
+        }
+    }
+    
+    private void preloadHotAccounts() throws SQLException {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            int accounts = DatabaseManager.preloadHotAccounts(connection, PRELOAD_ACCOUNTS);
+            System.out.println("Preloaded " + accounts + " hot accounts.");
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Cổng và file CSDL của shard; phải chạy trước khi tạo ConnectionPool
+    private boolean loadShard() {
+        try {
+            shardMap = new ShardMap(new File(SHARDS_FILE));
+        } catch (IOException e) {
+            System.err.println("Cannot load shard map " + SHARDS_FILE + ": " + e.getMessage());
+            return false;
+        }
+        ShardMap.Shard shard = shardMap.get(SHARD_NAME);
+        if (shard == null) {
+            System.err.println("Shard " + SHARD_NAME + " not found in " + SHARDS_FILE);
+            return false;
+        }
+        registryPort = shard.getPort();
+        if (shard.getDbFile() != null && System.getProperty("ebanking.db.file") == null) {
+            System.setProperty("ebanking.db.file", shard.getDbFile());
+        }
+        return true;
+    }
+    
     private void initializeSampleData() {
         System.out.println("Initializing sample data...");
         
-        // Sử dụng DatabaseManager trực tiếp để thêm dữ liệu mẫu
-        DatabaseManager db = new DatabaseManager();
-        
         // Kiểm tra và thêm tài khoản mẫu
         try {
             // Các tài khoản mẫu
@@ -83,10 +238,13 @@ public class Server {
             };
             
             for (String[] acc : sampleAccounts) {
-                db.checkUsername(acc[0]); // Initialize connection
+                // Mỗi shard chỉ tạo tài khoản mẫu thuộc khoảng của mình
+                if (shardMap != null && !shardMap.owns(SHARD_NAME, acc[2])) {
+                    continue;
+                }
+                java.sql.Connection conn = null;
                 try {
-                    java.sql.Connection conn = java.sql.DriverManager.getConnection(
-                        "jdbc:ucanaccess://./ebanking.accdb", "", "");
+                    conn = pool.borrow();
                     
                     String checkSQL = "SELECT COUNT(*) FROM Accounts WHERE username = ?";
                     try (java.sql.PreparedStatement pstmt = conn.prepareStatement(checkSQL)) {
@@ -102,18 +260,18 @@ public class Server {
                                 ipstmt.setDouble(4, Double.parseDouble(acc[3]));
                                 ipstmt.executeUpdate();
                             }
+                            conn.commit();
                         }
                     }
-                    conn.close();
                 } catch (Exception e) {
                     // Có thể tài khoản đã tồn tại
+                } finally {
+                    pool.release(conn);
                 }
             }
         } catch (Exception e) {
             System.out.println("Sample data initialization skipped (DB may not exist yet)");
         }
-        
-        System.out.println("Server ready.");
     }
     
     public void stop() {
@@ -122,15 +280,43 @@ public class Server {
     
     private void shutdown() {
         System.out.println("Shutting down server...");
+        if (metrics != null) {
+            metrics.stopDumper();
+            Instrumentation.unexport(metrics);
+        }
+        if (replicationSource != null) {
+            Instrumentation.unexport(replicationSource);
+        }
+        if (bankLogin != null) {
+            bankLogin.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
         System.out.println("Server shutdown complete.");
     }
     
     public static void main(String[] args) {
+        // Lease DGC ngắn hơn mặc định (10 phút) để phiên của client đã thoát được đóng sớm (Unreferenced)
+        if (System.getProperty("java.rmi.dgc.leaseValue") == null) {
+            System.setProperty("java.rmi.dgc.leaseValue", "60000");
+        }
+        // Callback BalanceListener tới client treo không giữ thread gửi quá 5 giây
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", "5000");
+        }
+        
         Server server = new Server();
         
-        // Đăng ký shutdown hook
+        // Đăng ký shutdown hook: JVM chỉ dừng sau khi main chạy xong shutdown() (dump metrics, đóng phiên, pool)
+        Thread main = Thread.currentThread();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             server.stop();
+            try {
+                main.join(SHUTDOWN_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }));
         
         server.start();
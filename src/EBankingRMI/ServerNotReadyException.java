@@ -0,0 +1,18 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Server Not Ready
+ * BankLogin.openSession() ném ra khi server đã đăng ký Registry nhưng chưa khởi động xong
+ * (CSDL đang mở, câu lệnh đang được chuẩn bị); client nhận nó trong ServerException.detail
+ * (RMI bọc mọi RemoteException ném từ server) và chờ một chút rồi thử lại
+ */
+
+import java.rmi.RemoteException;
+
+public class ServerNotReadyException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+    
+    public ServerNotReadyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,67 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Shard Launcher
+ * Chạy mỗi shard trong ShardMap thành một tiến trình Server riêng trên máy này (cổng Registry riêng),
+ * log của từng shard ghi vào shard-<tên>.log. Ctrl+C dừng tất cả.
+ *   java EBankingRMI.ShardLauncher [shards.conf] [tên shard ...]
+ * Các tuỳ chọn -Debanking.* của launcher được truyền cho từng shard.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ShardLauncher {
+    
+    public static void main(String[] args) throws Exception {
+        String shardsFile = args.length > 0 ? args[0] : "./shards.conf";
+        List<String> only = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of();
+        ShardMap shardMap = new ShardMap(new File(shardsFile));
+        
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }));
+        
+        for (ShardMap.Shard shard : shardMap.getShards()) {
+            if (!only.isEmpty() && !only.contains(shard.getName())) {
+                continue;
+            }
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            // Trừ tên shard và file CSDL: mỗi shard lấy từ ShardMap
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("ebanking.") && !name.equals("ebanking.rmi.shard")
+                        && !name.equals("ebanking.db.file")) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            command.add("-Debanking.rmi.shards=" + shardsFile);
+            command.add("-Debanking.rmi.shard=" + shard.getName());
+            command.add(Server.class.getName());
+            
+            File log = new File("shard-" + shard.getName() + ".log");
+            try {
+                processes.add(new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                        .start());
+                System.out.println("Started shard " + shard + " (log: " + log + ")");
+            } catch (IOException e) {
+                System.err.println("Cannot start shard " + shard.getName() + ": " + e.getMessage());
+            }
+        }
+        
+        for (Process process : processes) {
+            process.waitFor();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Shard Map
+ * Bảng định tuyến số tài khoản -> server, dùng chung cho server (biết mình sở hữu khoảng nào,
+ * cổng Registry và file CSDL nào) và client (ShardRouter). Mỗi dòng của file (mặc định ./shards.conf):
+ *   # tên  host:port       tài khoản đầu  tài khoản cuối  file CSDL
+ *   s1     localhost:1099  10000000       10000001        ./shard1.accdb
+ *   s2     localhost:1100  10000002       19999999        ./shard2.accdb
+ * Khoảng tài khoản là đoạn liên tục [đầu, cuối], không được chồng nhau.
+ * File được đọc lại khi thay đổi (kiểm tra tối đa mỗi ebanking.rmi.shardsReloadMs, mặc định 2000 ms);
+ * file mới bị lỗi thì giữ bảng cũ.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class ShardMap {
+    private static final long RELOAD_CHECK_MS = Long.getLong("ebanking.rmi.shardsReloadMs", 2000);
+    
+    private final File file;
+    private volatile List<Shard> shards = Collections.emptyList();
+    private long loadedModified = -1;
+    private long lastCheck = 0;
+    
+    public ShardMap(File file) throws IOException {
+        this.file = file;
+        shards = parse(file);
+        loadedModified = file.lastModified();
+        lastCheck = System.currentTimeMillis();
+    }
+    
+    // Shard sở hữu số tài khoản, null nếu không shard nào
+    public Shard resolve(String accountNumber) {
+        long account = parseAccount(accountNumber);
+        for (Shard shard : getShards()) {
+            if (account >= shard.firstAccount && account <= shard.lastAccount) {
+                return shard;
+            }
+        }
+        return null;
+    }
+    
+    public boolean owns(String shardName, String accountNumber) {
+        Shard shard = resolve(accountNumber);
+        return shard != null && shard.name.equals(shardName);
+    }
+    
+    public Shard get(String name) {
+        for (Shard shard : getShards()) {
+            if (shard.name.equals(name)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+    
+    // Sắp theo tài khoản đầu
+    public List<Shard> getShards() {
+        refresh();
+        return shards;
+    }
+    
+    // Đọc lại file nếu đã thay đổi kể từ lần nạp trước
+    public synchronized boolean refresh() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < RELOAD_CHECK_MS) {
+            return false;
+        }
+        lastCheck = now;
+        long modified = file.lastModified();
+        if (modified == loadedModified) {
+            return false;
+        }
+        try {
+            shards = parse(file);
+            loadedModified = modified;
+            System.out.println("Shard map reloaded: " + shards);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Keeping previous shard map, cannot load " + file + ": " + e.getMessage());
+            loadedModified = modified;
+            return false;
+        }
+    }
+    
+    private static List<Shard> parse(File file) throws IOException {
+        List<Shard> parsed = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int colon = parts.length >= 4 ? parts[1].lastIndexOf(':') : -1;
+                if (colon <= 0) {
+                    throw new IOException("Line " + lineNumber + ": expected 'name host:port first last [dbFile]'");
+                }
+                try {
+                    parsed.add(new Shard(parts[0], parts[1].substring(0, colon),
+                            Integer.parseInt(parts[1].substring(colon + 1)),
+                            Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                            parts.length > 4 ? parts[4] : null));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        parsed.sort(Comparator.comparingLong(s -> s.firstAccount));
+        for (int i = 0; i < parsed.size(); i++) {
+            Shard shard = parsed.get(i);
+            if (shard.firstAccount > shard.lastAccount) {
+                throw new IOException("Empty account range for shard " + shard.name);
+            }
+            if (i > 0 && parsed.get(i - 1).lastAccount >= shard.firstAccount) {
+                throw new IOException("Overlapping account ranges: " + parsed.get(i - 1).name + ", " + shard.name);
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IOException("No shards defined");
+        }
+        return Collections.unmodifiableList(parsed);
+    }
+    
+    private static long parseAccount(String accountNumber) {
+        try {
+            return Long.parseLong(accountNumber.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            return -1;
+        }
+    }
+    
+    public static class Shard {
+        private final String name;
+        private final String host;
+        private final int port;
+        private final long firstAccount;
+        private final long lastAccount;
+        private final String dbFile;
+        
+        Shard(String name, String host, int port, long firstAccount, long lastAccount, String dbFile) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.firstAccount = firstAccount;
+            this.lastAccount = lastAccount;
+            this.dbFile = dbFile;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getHost() {
+            return host;
+        }
+        
+        public int getPort() {
+            return port;
+        }
+        
+        // File CSDL của shard, null = mặc định của server
+        public String getDbFile() {
+            return dbFile;
+        }
+        
+        // host:port, dùng làm khoá cache stub phía client
+        public String getAddress() {
+            return host + ":" + port;
+        }
+        
+        @Override
+        public String toString() {
+            return name + "@" + getAddress() + "[" + firstAccount + ".." + lastAccount + "]";
+        }
+    }
+}
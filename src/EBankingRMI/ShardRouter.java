@@ -0,0 +1,64 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Shard Router
+ * Phía client: tìm Registry/BankLogin của từng shard trong ShardMap.
+ * Stub BankLogin được giữ theo host:port; bảng định tuyến đọc lại khi file thay đổi
+ * nên client không cần khởi động lại khi chuyển/thêm shard.
+ */
+
+import java.net.MalformedURLException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ShardRouter {
+    private static final String SERVICE_NAME = "BankLogin";
+    
+    private final ShardMap shardMap;
+    private final Map<String, BankLogin> stubs = new ConcurrentHashMap<>();
+    
+    public ShardRouter(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+    
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+    
+    public List<ShardMap.Shard> getShards() {
+        return shardMap.getShards();
+    }
+    
+    public BankLogin login(ShardMap.Shard shard) throws RemoteException {
+        BankLogin stub = stubs.get(shard.getAddress());
+        if (stub != null) {
+            return stub;
+        }
+        try {
+            stub = (BankLogin) Naming.lookup("rmi://" + shard.getAddress() + "/" + SERVICE_NAME);
+        } catch (NotBoundException | MalformedURLException e) {
+            throw new RemoteException("Shard " + shard.getName() + " unavailable: " + e.getMessage());
+        }
+        stubs.put(shard.getAddress(), stub);
+        return stub;
+    }
+    
+    // Mở phiên trên shard; stub cũ (shard đã khởi động lại) được lookup lại một lần
+    public BankService openSession(ShardMap.Shard shard) throws RemoteException {
+        try {
+            return login(shard).openSession();
+        } catch (java.rmi.NoSuchObjectException | java.rmi.ConnectException e) {
+            invalidate(shard);
+            return login(shard).openSession();
+        }
+    }
+    
+    // Bỏ stub đã lưu; lần sau lookup lại từ Registry của shard
+    public void invalidate(ShardMap.Shard shard) {
+        stubs.remove(shard.getAddress());
+    }
+}
@@ -0,0 +1,78 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Startup Pipeline
+ * Trạng thái và thời gian từng pha khởi động của Server:
+ * - registry, bind: chạy ngay trên thread chính, client đã tìm thấy BankLogin sau các pha này
+ * - database, prepare, sampleData, preload: chạy nền; tới khi markReady() openSession()
+ *   ném ServerNotReadyException với pha đang chạy
+ * Thời gian các pha được in khi sẵn sàng và có trong báo cáo MetricsService (dòng "startup ...").
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StartupPipeline {
+    
+    // Một pha khởi động
+    interface Step {
+        void run() throws Exception;
+    }
+    
+    private final long startedAt = System.nanoTime();
+    private final Map<String, String> phases = new LinkedHashMap<>();
+    private volatile String currentPhase = "registry";
+    private volatile String lastError;
+    private volatile long readyMillis = -1;
+    
+    // Chạy một pha và ghi thời gian; lỗi được ghi lại và trả về false
+    public boolean run(String phase, Step step) {
+        currentPhase = phase;
+        long start = System.nanoTime();
+        try {
+            step.run();
+            record(phase, millisSince(start) + "ms");
+            return true;
+        } catch (Exception e) {
+            lastError = phase + ": " + e.getMessage();
+            record(phase, "failed after " + millisSince(start) + "ms");
+            System.err.println("Startup phase " + phase + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private synchronized void record(String phase, String result) {
+        phases.put(phase, result);
+    }
+    
+    public void markReady() {
+        readyMillis = millisSince(startedAt);
+        lastError = null;
+        currentPhase = null;
+    }
+    
+    public boolean isReady() {
+        return readyMillis >= 0;
+    }
+    
+    // Mô tả cho client khi chưa sẵn sàng, vd. "Server starting (database, 1834 ms; last error: ...)"
+    public String describe() {
+        String error = lastError;
+        return "Server starting (" + currentPhase + ", " + millisSince(startedAt) + " ms"
+                + (error != null ? "; last error: " + error : "") + ")";
+    }
+    
+    // state=READY readyMs=.. registry=..ms bind=..ms database=..ms ...
+    public synchronized String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("state=").append(isReady() ? "READY readyMs=" + readyMillis : "STARTING phase=" + currentPhase);
+        for (Map.Entry<String, String> entry : phases.entrySet()) {
+            sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+    
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
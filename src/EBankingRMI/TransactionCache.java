@@ -0,0 +1,163 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Client Transaction Cache
+ * Nhật ký giao dịch đã tải được lưu trên đĩa phía client (ebanking.rmi.cacheDir, mặc định ./ebanking-cache),
+ * một file cho mỗi người dùng. Mỗi lần xem nhật ký chỉ tải các giao dịch mới qua
+ * getTransactionsSince(lastSeq) rồi ghi nối vào cuối file, nên số byte tải về tỉ lệ với số giao dịch mới.
+ *
+ * File: [magic 4 byte][số tài khoản UTF] rồi các bản ghi [seq long][millis long][thao tác UTF][số tiền double].
+ * Bản ghi cuối bị cắt dở (client tắt giữa chừng) được bỏ đi khi đọc; file hỏng bị xoá và tải lại từ đầu.
+ */
+
+import java.io.*;
+import java.rmi.RemoteException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionCache {
+    private static final int MAGIC = 0x54584331; // "TXC1"
+    private static final File CACHE_DIR = new File(System.getProperty("ebanking.rmi.cacheDir", "./ebanking-cache"));
+    
+    private final File file;
+    private String accountNumber;
+    private long lastSeq = 0;
+    // Cũ nhất trước, đúng thứ tự seq
+    private final List<Transaction> transactions = new ArrayList<>();
+    private boolean persistent = true;
+    
+    public TransactionCache(String username) {
+        this.file = new File(CACHE_DIR, username.replaceAll("[^A-Za-z0-9_-]", "_") + ".txc");
+        load();
+    }
+    
+    // Tải các giao dịch mới từ server
+    // Returns: số giao dịch mới
+    public int sync(BankService service) throws RemoteException {
+        int added = 0;
+        while (true) {
+            TransactionDelta delta = service.getTransactionsSince(lastSeq);
+            if (delta.isReset() || (accountNumber != null && !accountNumber.equals(delta.getAccountNumber()))) {
+                // Cache của tài khoản khác hoặc CSDL đã được tạo lại
+                clear();
+                added = 0;
+                continue;
+            }
+            append(delta);
+            added += delta.size();
+            if (delta.isComplete()) {
+                return added;
+            }
+        }
+    }
+    
+    // Giao dịch trong khoảng [from, to] (null = không giới hạn), mới nhất trước
+    public List<Transaction> getTransactions(LocalDate from, LocalDate to) {
+        List<Transaction> result = new ArrayList<>();
+        for (int i = transactions.size() - 1; i >= 0; i--) {
+            Transaction transaction = transactions.get(i);
+            LocalDate date = transaction.getTransactionDate().toLocalDate();
+            if ((from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+                result.add(transaction);
+            }
+        }
+        return result;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public int size() {
+        return transactions.size();
+    }
+    
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a transaction cache file");
+            }
+            accountNumber = in.readUTF();
+            validLength = 4 + 2 + accountNumber.getBytes("UTF-8").length;
+            while (true) {
+                long seq;
+                try {
+                    seq = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                long millis = in.readLong();
+                String operation = in.readUTF();
+                double amount = in.readDouble();
+                transactions.add(new Transaction(accountNumber, operation,
+                        new java.sql.Timestamp(millis).toLocalDateTime(), amount));
+                lastSeq = seq;
+                validLength += 8 + 8 + 2 + operation.getBytes("UTF-8").length + 8;
+            }
+        } catch (EOFException e) {
+            // Bản ghi cuối bị cắt dở: giữ phần đã đọc được, cắt bỏ phần dư để ghi nối tiếp đúng chỗ
+            truncate(validLength);
+        } catch (IOException e) {
+            System.err.println("Discarding transaction cache " + file + ": " + e.getMessage());
+            clear();
+        }
+    }
+    
+    private void truncate(long length) {
+        if (accountNumber == null) {
+            clear();
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            System.err.println("Cannot repair transaction cache: " + e.getMessage());
+            persistent = false;
+        }
+    }
+    
+    private void clear() {
+        accountNumber = null;
+        lastSeq = 0;
+        transactions.clear();
+        if (file.exists() && !file.delete()) {
+            persistent = false;
+        }
+    }
+    
+    private void append(TransactionDelta delta) {
+        boolean newFile = accountNumber == null;
+        accountNumber = delta.getAccountNumber();
+        for (int i = 0; i < delta.size(); i++) {
+            transactions.add(delta.get(i));
+        }
+        lastSeq = delta.getLastSeq();
+        
+        if (!persistent || (delta.size() == 0 && !newFile)) {
+            return;
+        }
+        CACHE_DIR.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, !newFile)))) {
+            if (newFile) {
+                out.writeInt(MAGIC);
+                out.writeUTF(accountNumber);
+            }
+            for (int i = 0; i < delta.size(); i++) {
+                out.writeLong(delta.getSeq(i));
+                out.writeLong(delta.getMillis(i));
+                out.writeUTF(delta.getOperation(i));
+                out.writeDouble(delta.getAmount(i));
+            }
+        } catch (IOException e) {
+            // Vẫn dùng cache trong bộ nhớ cho phiên này
+            System.err.println("Cannot write transaction cache: " + e.getMessage());
+            persistent = false;
+        }
+    }
+}
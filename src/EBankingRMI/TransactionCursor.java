@@ -0,0 +1,20 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Remote Transaction Cursor
+ * Đọc nhật ký giao dịch theo từng trang, mới nhất trước;
+ * nhận từ BankService.openTransactionCursor(from, to)
+ */
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface TransactionCursor extends Remote {
+    
+    // Lấy tối đa n giao dịch tiếp theo
+    // Returns: TransactionPage; isLast() = true khi đã hết (cursor tự đóng)
+    TransactionPage nextPage(int n) throws RemoteException;
+    
+    // Đóng cursor khi không đọc tiếp
+    void close() throws RemoteException;
+}
@@ -0,0 +1,84 @@
+package EBankingRMI;
+
+/*
+ * E-Banking System - Transaction Cursor Implementation
+ * Phân trang theo keyset (transactionDate, id): giữa hai trang không giữ kết nối hay ResultSet nào,
+ * chỉ nhớ vị trí dòng cuối cùng đã trả về.
+ * Cursor tự đóng khi trả trang cuối, khi client gọi close() hoặc không còn tham chiếu (Unreferenced).
+ */
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.Unreferenced;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public class TransactionCursorImpl implements TransactionCursor, Unreferenced {
+    
+    private static final int MAX_PAGE_SIZE = 500;
+    
+    private final DatabaseManager dbManager;
+    private final BankServiceImpl session;
+    private final String accountNumber;
+    private final Timestamp lower;
+    private final Timestamp upper;
+    private long cursorMillis;
+    private long cursorId = Long.MAX_VALUE;
+    private boolean closed = false;
+    
+    public TransactionCursorImpl(DatabaseManager dbManager, BankServiceImpl session, String accountNumber,
+                                 Timestamp lower, Timestamp upper) {
+        this.dbManager = dbManager;
+        this.session = session;
+        this.accountNumber = accountNumber;
+        this.lower = lower;
+        this.upper = upper;
+        this.cursorMillis = upper.getTime();
+    }
+    
+    @Override
+    public synchronized TransactionPage nextPage(int n) throws RemoteException {
+        if (closed) {
+            throw new NoSuchObjectException("Cursor closed");
+        }
+        session.touch();
+        if (!dbManager.isLoggedIn()) {
+            close();
+            throw new NoSuchObjectException("Cursor closed: not logged in");
+        }
+        
+        int pageSize = Math.max(1, Math.min(n, MAX_PAGE_SIZE));
+        TransactionPage page;
+        try {
+            page = dbManager.loadTransactionPage(accountNumber, lower, upper, cursorMillis, cursorId, pageSize);
+        } catch (SQLException e) {
+            System.err.println("Error reading transaction page: " + e.getMessage());
+            // Không gửi SQLException của driver sang client (client không có lớp của driver)
+            throw new RemoteException("Database error");
+        }
+        
+        if (page.size() > 0) {
+            cursorMillis = page.getLastMillis();
+            cursorId = page.getLastId();
+        }
+        if (page.isLast()) {
+            close();
+        }
+        return page;
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        session.cursorClosed(this);
+        Instrumentation.unexport(this);
+    }
+    
+    @Override
+    public void unreferenced() {
+        close();
+    }
+}
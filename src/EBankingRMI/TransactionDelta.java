@@ -0,0 +1,173 @@
+package EBankingRMI;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * E-Banking System - Transaction Delta
+ * Các giao dịch mới hơn số thứ tự lastSeq, trả về từ BankService.getTransactionsSince(lastSeq).
+ * Số thứ tự (seq) là cột id AutoNumber của bảng Transactions, tăng dần theo thứ tự commit
+ * trong cùng một tài khoản. Các dòng xếp cũ nhất trước, mã hoá theo cột như TransactionPage:
+ * seq ghi độ lệch (varint), thời gian ghi độ lệch có dấu (zigzag varint), thao tác là mã 1 byte.
+ * - isComplete() = false: còn giao dịch mới, gọi lại với getLastSeq()
+ * - isReset() = true: lastSeq của client lớn hơn mọi seq trên server (CSDL đã được tạo lại),
+ *   client phải xoá cache và đồng bộ lại từ 0
+ */
+
+public class TransactionDelta implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    
+    private String accountNumber;
+    private long lastSeq;
+    private boolean complete;
+    private boolean reset;
+    private List<String> operations = new ArrayList<>();
+    private long[] seqs;
+    private long[] millis;
+    private byte[] opCodes;
+    private double[] amounts;
+    private int size;
+    
+    // Bắt buộc cho Externalizable
+    public TransactionDelta() {
+    }
+    
+    TransactionDelta(String accountNumber, long sinceSeq, int capacity) {
+        this.accountNumber = accountNumber;
+        this.lastSeq = sinceSeq;
+        this.seqs = new long[capacity];
+        this.millis = new long[capacity];
+        this.opCodes = new byte[capacity];
+        this.amounts = new double[capacity];
+    }
+    
+    void add(long seq, long transactionMillis, String operation, double amount) {
+        int code = operations.indexOf(operation);
+        if (code < 0) {
+            code = operations.size();
+            operations.add(operation);
+        }
+        seqs[size] = seq;
+        millis[size] = transactionMillis;
+        opCodes[size] = (byte) code;
+        amounts[size] = amount;
+        size++;
+        lastSeq = seq;
+    }
+    
+    void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+    
+    void setReset(boolean reset) {
+        this.reset = reset;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+    
+    // seq lớn nhất đã gửi (hoặc lastSeq của yêu cầu nếu không có dòng mới)
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    public boolean isReset() {
+        return reset;
+    }
+    
+    public long getSeq(int i) {
+        return seqs[i];
+    }
+    
+    public long getMillis(int i) {
+        return millis[i];
+    }
+    
+    public String getOperation(int i) {
+        return operations.get(opCodes[i]);
+    }
+    
+    public double getAmount(int i) {
+        return amounts[i];
+    }
+    
+    public Transaction get(int i) {
+        LocalDateTime date = new java.sql.Timestamp(millis[i]).toLocalDateTime();
+        return new Transaction(accountNumber, getOperation(i), date, amounts[i]);
+    }
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeUTF(accountNumber);
+        out.writeLong(lastSeq);
+        out.writeBoolean(complete);
+        out.writeBoolean(reset);
+        out.writeByte(operations.size());
+        for (String operation : operations) {
+            out.writeUTF(operation);
+        }
+        
+        out.writeInt(size);
+        if (size == 0) {
+            return;
+        }
+        out.writeLong(seqs[0]);
+        out.writeLong(millis[0]);
+        for (int i = 1; i < size; i++) {
+            TransactionPage.writeVarLong(out, seqs[i] - seqs[i - 1]);
+            long diff = millis[i] - millis[i - 1];
+            TransactionPage.writeVarLong(out, (diff << 1) ^ (diff >> 63));
+        }
+        out.write(opCodes, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(amounts[i]);
+        }
+    }
+    
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        accountNumber = in.readUTF();
+        lastSeq = in.readLong();
+        complete = in.readBoolean();
+        reset = in.readBoolean();
+        int operationCount = in.readUnsignedByte();
+        operations = new ArrayList<>(operationCount);
+        for (int i = 0; i < operationCount; i++) {
+            operations.add(in.readUTF());
+        }
+        
+        size = in.readInt();
+        seqs = new long[size];
+        millis = new long[size];
+        opCodes = new byte[size];
+        amounts = new double[size];
+        if (size == 0) {
+            return;
+        }
+        seqs[0] = in.readLong();
+        millis[0] = in.readLong();
+        for (int i = 1; i < size; i++) {
+            seqs[i] = seqs[i - 1] + TransactionPage.readVarLong(in);
+            long zigzag = TransactionPage.readVarLong(in);
+            millis[i] = millis[i - 1] + ((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+        in.readFully(opCodes);
+        for (int i = 0; i < size; i++) {
+            amounts[i] = in.readDouble();
+        }
+    }
+}
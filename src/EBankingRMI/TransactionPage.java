@@ -0,0 +1,172 @@
+package EBankingRMI;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * E-Banking System - Transaction Page
+ * Một trang nhật ký giao dịch trả về từ TransactionCursor.nextPage(n), mã hoá theo cột:
+ * - Số tài khoản ghi một lần cho cả trang (mọi dòng cùng một tài khoản)
+ * - Thời gian: epoch-millis, dòng đầu ghi đủ, các dòng sau ghi độ lệch (varint) so với dòng trước
+ * - Thao tác: mã 1 byte trỏ vào bảng tên thao tác của trang
+ * - Số tiền: mảng double
+ * Không có đồ thị LocalDateTime/Transaction nào đi qua mạng; get(i) dựng Transaction ở phía client.
+ */
+
+public class TransactionPage implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    
+    private String accountNumber;
+    private List<String> operations = new ArrayList<>();
+    private long[] millis;
+    private byte[] opCodes;
+    private double[] amounts;
+    private int size;
+    private boolean last;
+    
+    // Chỉ dùng phía server để tạo cursor cho trang tiếp theo
+    private transient long lastId;
+    
+    // Bắt buộc cho Externalizable
+    public TransactionPage() {
+    }
+    
+    TransactionPage(String accountNumber, int capacity) {
+        this.accountNumber = accountNumber;
+        this.millis = new long[capacity];
+        this.opCodes = new byte[capacity];
+        this.amounts = new double[capacity];
+    }
+    
+    void add(long id, long transactionMillis, String operation, double amount) {
+        int code = operations.indexOf(operation);
+        if (code < 0) {
+            code = operations.size();
+            operations.add(operation);
+        }
+        millis[size] = transactionMillis;
+        opCodes[size] = (byte) code;
+        amounts[size] = amount;
+        size++;
+        lastId = id;
+    }
+    
+    void setLast(boolean last) {
+        this.last = last;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // true nếu không còn trang nào sau trang này
+    public boolean isLast() {
+        return last;
+    }
+    
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+    
+    public long getMillis(int i) {
+        return millis[i];
+    }
+    
+    public String getOperation(int i) {
+        return operations.get(opCodes[i]);
+    }
+    
+    public double getAmount(int i) {
+        return amounts[i];
+    }
+    
+    public Transaction get(int i) {
+        LocalDateTime date = new java.sql.Timestamp(millis[i]).toLocalDateTime();
+        return new Transaction(accountNumber, getOperation(i), date, amounts[i]);
+    }
+    
+    long getLastMillis() {
+        return millis[size - 1];
+    }
+    
+    long getLastId() {
+        return lastId;
+    }
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeUTF(accountNumber);
+        out.writeBoolean(last);
+        out.writeByte(operations.size());
+        for (String operation : operations) {
+            out.writeUTF(operation);
+        }
+        
+        out.writeInt(size);
+        if (size == 0) {
+            return;
+        }
+        // Trang sắp xếp mới nhất trước nên độ lệch luôn >= 0
+        out.writeLong(millis[0]);
+        for (int i = 1; i < size; i++) {
+            writeVarLong(out, millis[i - 1] - millis[i]);
+        }
+        out.write(opCodes, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(amounts[i]);
+        }
+    }
+    
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        accountNumber = in.readUTF();
+        last = in.readBoolean();
+        int operationCount = in.readUnsignedByte();
+        operations = new ArrayList<>(operationCount);
+        for (int i = 0; i < operationCount; i++) {
+            operations.add(in.readUTF());
+        }
+        
+        size = in.readInt();
+        millis = new long[size];
+        opCodes = new byte[size];
+        amounts = new double[size];
+        if (size == 0) {
+            return;
+        }
+        millis[0] = in.readLong();
+        for (int i = 1; i < size; i++) {
+            millis[i] = millis[i - 1] - readVarLong(in);
+        }
+        in.readFully(opCodes);
+        for (int i = 0; i < size; i++) {
+            amounts[i] = in.readDouble();
+        }
+    }
+    
+    // 7 bit mỗi byte, bit cao = còn byte tiếp theo (dùng chung với TransactionDelta)
+    static void writeVarLong(ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    static long readVarLong(ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in transaction page");
+    }
+}
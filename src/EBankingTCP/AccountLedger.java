@@ -0,0 +1,415 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Account Ledger
+ * Chế độ sổ cái trong bộ nhớ (bật bằng -Debanking.ledger=true):
+ * - Số dư của Accounts được giữ trong bộ nhớ, mỗi tài khoản được bảo vệ bởi một khoá stripe
+ * - Mỗi giao dịch được ghi vào LedgerJournal trước khi trả lời client
+ * - Một thread nền ghi dồn (write-behind) xuống bảng Accounts/Transactions
+ * - Khi khởi động lại, các bản ghi journal chưa được lưu sẽ được phát lại
+ *
+ * Seq cuối cùng đã lưu nằm trong bảng LedgerCheckpoint, commit cùng giao dịch CSDL,
+ * nên phát lại không bao giờ cộng trùng một bản ghi.
+ *
+ * Batch lỗi được ghi lại từng bản ghi (chuyển khoản: cả hai vế); bản ghi lỗi MAX_ENTRY_ATTEMPTS lần
+ * trong khi CSDL vẫn truy cập được bị chuyển vào file dead-letter để không chặn các bản ghi sau.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class AccountLedger {
+    private static final boolean ENABLED = Boolean.getBoolean("ebanking.ledger");
+    private static final String JOURNAL_PATH = System.getProperty("ebanking.ledger.journal", "./ebanking.journal");
+    private static final int JOURNAL_SIZE = Integer.getInteger("ebanking.ledger.journalSize", 64 * 1024 * 1024);
+    private static final boolean FORCE_ON_APPEND = Boolean.getBoolean("ebanking.ledger.fsync");
+    private static final int STRIPES = 256;
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_ENTRY_ATTEMPTS = 3;
+    private static final Path DEAD_LETTER_PATH = Paths.get(
+            System.getProperty("ebanking.ledger.deadLetter", "./ebanking.journal.dead"));
+    
+    private static AccountLedger instance;
+    
+    private final ConnectionPool pool;
+    private final LedgerJournal journal;
+    private final StripedLocks locks = new StripedLocks(STRIPES);
+    private final Map<String, double[]> balances = new ConcurrentHashMap<>();
+    private final BlockingQueue<LedgerJournal.Entry> persistQueue = new LinkedBlockingQueue<>();
+    private final Thread persister;
+    private volatile boolean running = true;
+    
+    private AccountLedger(ConnectionPool pool) throws IOException, SQLException {
+        this.pool = pool;
+        this.journal = new LedgerJournal(Paths.get(JOURNAL_PATH), JOURNAL_SIZE, FORCE_ON_APPEND);
+        
+        long checkpoint = loadBalancesAndCheckpoint();
+        List<LedgerJournal.Entry> unpersisted = journal.recover(checkpoint);
+        int replayed = 0;
+        for (int i = 0; i < unpersisted.size(); i++) {
+            LedgerJournal.Entry entry = unpersisted.get(i);
+            // TRANSFER_OUT không có TRANSFER_IN ngay sau: server dừng giữa hai lần ghi, bỏ cả chuyển khoản
+            if (entry.getOperation().equals("TRANSFER_OUT")
+                    && (i + 1 == unpersisted.size() || !unpersisted.get(i + 1).getOperation().equals("TRANSFER_IN"))) {
+                continue;
+            }
+            double[] balance = balances.get(entry.getAccountNumber());
+            if (balance != null) {
+                balance[0] += entry.getDelta();
+            }
+            persistQueue.add(entry);
+            replayed++;
+        }
+        System.out.println("Ledger loaded " + balances.size() + " accounts, replayed "
+                + replayed + " journal entries.");
+        
+        persister = new Thread(this::persistLoop, "ledger-persister");
+        persister.setDaemon(true);
+        persister.start();
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static synchronized AccountLedger getInstance() {
+        if (instance == null) {
+            try {
+                instance = new AccountLedger(ConnectionPool.getInstance());
+            } catch (IOException | SQLException e) {
+                throw new IllegalStateException("Cannot start ledger: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+    
+    private long loadBalancesAndCheckpoint() throws SQLException {
+        Connection connection = pool.borrow();
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS LedgerCheckpoint (id INTEGER PRIMARY KEY, lastSeq BIGINT NOT NULL)");
+                connection.commit();
+            }
+            
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT accountNumber, balance FROM Accounts")) {
+                while (rs.next()) {
+                    balances.put(rs.getString("accountNumber"), new double[] { rs.getDouble("balance") });
+                }
+            }
+            
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT lastSeq FROM LedgerCheckpoint WHERE id = 1")) {
+                return rs.next() ? rs.getLong("lastSeq") : 0;
+            }
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // === Thao tác trên sổ cái ===
+    
+    public String deposit(String accountNumber, double amount) {
+        if (amount <= 0) {
+            return "-ERR Invalid amount";
+        }
+        locks.lock(accountNumber);
+        try {
+            double[] balance = accountBalance(accountNumber);
+            if (balance == null) {
+                return "-ERR Account not found";
+            }
+            record(accountNumber, "DEPOSIT", amount);
+            balance[0] += amount;
+            return "+OK Deposit successful";
+        } finally {
+            locks.unlock(accountNumber);
+        }
+    }
+    
+    public String withdraw(String accountNumber, double amount) {
+        if (amount <= 0) {
+            return "-ERR Invalid amount";
+        }
+        locks.lock(accountNumber);
+        try {
+            double[] balance = accountBalance(accountNumber);
+            if (balance == null) {
+                return "-ERR Account not found";
+            }
+            if (balance[0] < amount) {
+                return "-ERR Insufficient balance";
+            }
+            record(accountNumber, "WITHDRAW", -amount);
+            balance[0] -= amount;
+            return "+OK Withdraw successful";
+        } finally {
+            locks.unlock(accountNumber);
+        }
+    }
+    
+    // Chuyển khoản: khoá cả hai tài khoản theo thứ tự stripe, ghi hai vế vào journal liền nhau
+    public String transfer(String fromAccount, String toAccount, double amount) {
+        if (amount <= 0) {
+            return "-ERR Invalid amount";
+        }
+        locks.lockBoth(fromAccount, toAccount);
+        try {
+            double[] to = accountBalance(toAccount);
+            if (to == null) {
+                return "-ERR Account not found";
+            }
+            double[] from = accountBalance(fromAccount);
+            if (from == null) {
+                return "-ERR Account not found";
+            }
+            if (from[0] < amount) {
+                return "-ERR Insufficient balance";
+            }
+            long now = System.currentTimeMillis();
+            synchronized (journal) {
+                long seq = journal.appendTransfer(fromAccount, toAccount, amount, now);
+                persistQueue.add(new LedgerJournal.Entry(seq, fromAccount, "TRANSFER_OUT", -amount, now));
+                persistQueue.add(new LedgerJournal.Entry(seq + 1, toAccount, "TRANSFER_IN", amount, now));
+            }
+            from[0] -= amount;
+            to[0] += amount;
+            return "+OK Transfer successful";
+        } finally {
+            locks.unlockBoth(fromAccount, toAccount);
+        }
+    }
+    
+    public double getBalance(String accountNumber) {
+        locks.lock(accountNumber);
+        try {
+            double[] balance = accountBalance(accountNumber);
+            return balance != null ? balance[0] : 0.0;
+        } finally {
+            locks.unlock(accountNumber);
+        }
+    }
+    
+    // Ghi journal rồi xếp hàng chờ lưu CSDL; gọi khi đang giữ khoá của tài khoản
+    private void record(String accountNumber, String operation, double delta) {
+        long now = System.currentTimeMillis();
+        // Cấp seq và xếp hàng cùng lúc để hàng đợi luôn theo thứ tự seq
+        synchronized (journal) {
+            long seq = journal.append(accountNumber, operation, delta, now);
+            persistQueue.add(new LedgerJournal.Entry(seq, accountNumber, operation, delta, now));
+        }
+    }
+    
+    // Tài khoản tạo sau khi ledger khởi động được nạp khi dùng lần đầu
+    private double[] accountBalance(String accountNumber) {
+        double[] balance = balances.get(accountNumber);
+        if (balance != null) {
+            return balance;
+        }
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT balance FROM Accounts WHERE accountNumber = ?")) {
+                pstmt.setString(1, accountNumber);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        balance = new double[] { rs.getDouble("balance") };
+                        balances.put(accountNumber, balance);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading account into ledger: " + e.getMessage());
+        } finally {
+            pool.release(connection);
+        }
+        return balance;
+    }
+    
+    // === Ghi dồn xuống CSDL ===
+    
+    private void persistLoop() {
+        List<LedgerJournal.Entry> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        while (running || !persistQueue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    LedgerJournal.Entry first = persistQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    persistQueue.drainTo(batch, FLUSH_BATCH_SIZE - 1);
+                    // Hai vế của một chuyển khoản luôn nằm trong cùng một commit
+                    if (batch.get(batch.size() - 1).getOperation().equals("TRANSFER_OUT")) {
+                        batch.add(persistQueue.take());
+                    }
+                }
+                persist(batch);
+                journal.markPersisted(batch.get(batch.size() - 1).getSeq());
+                batch.clear();
+            } catch (SQLException e) {
+                // Journal vẫn còn bản ghi nên không mất giao dịch; tìm bản ghi gây lỗi bằng cách ghi từng cái
+                System.err.println("Ledger persist error, retrying entry by entry: " + e.getMessage());
+                persistOneByOne(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+    
+    // Mỗi đơn vị (một bản ghi, hoặc hai vế của chuyển khoản) một commit. Khi CSDL không truy cập được
+    // thì chờ và thử lại mãi; khi CSDL vẫn chạy mà đơn vị vẫn lỗi thì chuyển nó vào dead-letter
+    private void persistOneByOne(List<LedgerJournal.Entry> batch) {
+        for (int i = 0; i < batch.size(); ) {
+            int end = batch.get(i).getOperation().equals("TRANSFER_OUT") && i + 1 < batch.size() ? i + 2 : i + 1;
+            List<LedgerJournal.Entry> unit = batch.subList(i, end);
+            long lastSeq = unit.get(unit.size() - 1).getSeq();
+            int attempts = 0;
+            while (true) {
+                try {
+                    persist(unit);
+                    break;
+                } catch (SQLException e) {
+                    if (databaseReachable() && ++attempts >= MAX_ENTRY_ATTEMPTS) {
+                        deadLetter(unit, e);
+                        break;
+                    }
+                    System.err.println("Ledger persist error (will retry): " + e.getMessage());
+                    sleepQuietly(RETRY_DELAY_MS);
+                }
+            }
+            journal.markPersisted(lastSeq);
+            i = end;
+        }
+    }
+    
+    private boolean databaseReachable() {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeQuery("SELECT lastSeq FROM LedgerCheckpoint WHERE id = 1").close();
+                return true;
+            }
+        } catch (SQLException e) {
+            return false;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Bỏ qua đơn vị lỗi: ghi ra file để xử lý tay và đưa checkpoint qua seq của nó để không phát lại.
+    // Số dư trong bộ nhớ đã gồm bản ghi này nên sẽ lệch với Accounts tới khi được sửa
+    private void deadLetter(List<LedgerJournal.Entry> unit, SQLException cause) {
+        StringBuilder lines = new StringBuilder();
+        for (LedgerJournal.Entry entry : unit) {
+            lines.append(String.format("%d\t%s\t%s\t%.2f\t%d\t%s%n", entry.getSeq(), entry.getAccountNumber(),
+                    entry.getOperation(), entry.getDelta(), entry.getTimestamp(), cause.getMessage()));
+        }
+        System.err.print("Ledger entry moved to " + DEAD_LETTER_PATH + ": " + lines);
+        try {
+            Files.write(DEAD_LETTER_PATH, lines.toString().getBytes(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Cannot write ledger dead-letter file: " + e.getMessage());
+        }
+        
+        long lastSeq = unit.get(unit.size() - 1).getSeq();
+        while (true) {
+            Connection connection = null;
+            try {
+                connection = pool.borrow();
+                saveCheckpoint(connection, lastSeq);
+                connection.commit();
+                return;
+            } catch (SQLException e) {
+                System.err.println("Ledger checkpoint error (will retry): " + e.getMessage());
+                sleepQuietly(RETRY_DELAY_MS);
+            } finally {
+                pool.release(connection);
+            }
+        }
+    }
+    
+    private void persist(List<LedgerJournal.Entry> batch) throws SQLException {
+        String updateSQL = "UPDATE Accounts SET balance = balance + ? WHERE accountNumber = ?";
+        String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+        long lastSeq = batch.get(batch.size() - 1).getSeq();
+        
+        Connection connection = pool.borrow();
+        try (PreparedStatement update = connection.prepareStatement(updateSQL);
+             PreparedStatement insert = connection.prepareStatement(insertSQL)) {
+            for (LedgerJournal.Entry entry : batch) {
+                update.setDouble(1, entry.getDelta());
+                update.setString(2, entry.getAccountNumber());
+                update.addBatch();
+                
+                insert.setString(1, entry.getAccountNumber());
+                insert.setString(2, entry.getOperation());
+                insert.setTimestamp(3, new Timestamp(entry.getTimestamp()));
+                insert.setDouble(4, entry.getAmount());
+                insert.addBatch();
+            }
+            update.executeBatch();
+            insert.executeBatch();
+            saveCheckpoint(connection, lastSeq);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    private static void saveCheckpoint(Connection connection, long lastSeq) throws SQLException {
+        try (PreparedStatement checkpoint = connection.prepareStatement(
+                "UPDATE LedgerCheckpoint SET lastSeq = ? WHERE id = 1")) {
+            checkpoint.setLong(1, lastSeq);
+            if (checkpoint.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement first = connection.prepareStatement(
+                "INSERT INTO LedgerCheckpoint (id, lastSeq) VALUES (1, ?)")) {
+            first.setLong(1, lastSeq);
+            first.executeUpdate();
+        }
+    }
+    
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public int getPendingCount() {
+        return persistQueue.size();
+    }
+    
+    // Dừng nhận giao dịch mới, chờ ghi hết hàng đợi rồi đóng journal
+    public void close() {
+        running = false;
+        try {
+            persister.join(30000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        System.out.println("Ledger closed (" + persistQueue.size() + " entries left in journal).");
+    }
+}
@@ -2,6 +2,10 @@ package EBankingTCP;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /*
@@ -18,6 +22,7 @@ public class Client {
     private PrintWriter out;
     private Scanner scanner;
     private boolean connected = false;
+    private String resumeToken;
     
     public Client() {
         scanner = new Scanner(System.in);
@@ -35,7 +40,7 @@ public class Client {
             String banner = in.readLine();
             System.out.println("\n" + banner);
             System.out.println("==========================================");
-            
+        
         } catch (UnknownHostException e) {
             System.err.println("Unknown host: " + SERVER_HOST);
         } catch (IOException e) {
@@ -49,45 +54,60 @@ public class Client {
             System.err.println("Not connected to server.");
             return;
         }
-
+        
         String input;
         while (true) {
             System.out.print("\nNHAP LENH> ");
             input = scanner.nextLine().trim();
-
+            
             if (input.isEmpty()) {
                 continue;
             }
-
+            
             // Gửi lệnh lên server
             out.println(input);
-
+            
             // Nhận và hiển thị phản hồi
             String response;
             try {
                 response = in.readLine();
-
+            } catch (IOException e) {
+                System.err.println("Error reading from server: " + e.getMessage());
+                response = null;
+            }
+            
+            try {
+                // Mất kết nối khi đã có token: kết nối lại và khôi phục phiên
+                if (response == null && resumeToken != null && !input.split("\\s+")[0].equalsIgnoreCase("QUIT")) {
+                    response = reconnectAndResume(input);
+                }
+                
                 if (response == null) {
                     System.out.println("Server disconnected.");
                     break;
                 }
-
+                
                 // Hiển thị phản hồi
                 System.out.println(response);
-
-                // Xử lý phản hồi đặc biệt (multi-line response)
-                while (in.ready()) {
-                    String extraLine = in.readLine();
-                    if (extraLine == null || extraLine.startsWith("+OK ") || extraLine.startsWith("-ERR")) {
-                        break;
+                
+                // Token khôi phục phiên nằm cuối phản hồi PASSWORD: "+OK ... TOKEN <token>"
+                int tokenAt = response.indexOf(" TOKEN ");
+                if (response.startsWith("+OK") && tokenAt >= 0) {
+                    resumeToken = response.substring(tokenAt + 7).trim();
+                }
+                
+                // Phản hồi nhiều dòng (REPORT, STATS) kết thúc bằng dòng "."
+                if (isMultiLine(input, response)) {
+                    String extraLine;
+                    while ((extraLine = in.readLine()) != null && !extraLine.equals(".")) {
+                        System.out.println(extraLine);
                     }
-                    System.out.println(extraLine);
                 }
             } catch (IOException e) {
                 System.err.println("Error reading from server: " + e.getMessage());
                 break;
             }
-
+            
             // Kiểm tra nếu client yêu cầu kết thúc
             String[] parts = input.split("\\s+");
             if (parts[0].equalsIgnoreCase("QUIT")) {
@@ -95,10 +115,132 @@ public class Client {
                 break;
             }
         }
-
+        
         close();
     }
     
+    // Gửi RESUME và lệnh đang chờ liền nhau (pipelining): chỉ một vòng mạng trước khi có kết quả lệnh.
+    // Chỉ gửi lại lệnh chỉ đọc; lệnh ghi có thể đã được server commit trước khi mất phản hồi.
+    private String reconnectAndResume(String pendingCommand) throws IOException {
+        System.out.println("Connection lost, reconnecting...");
+        // Chỉ đóng socket cũ, giữ scanner đọc bàn phím
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // socket đã hỏng
+        }
+        connected = false;
+        connect();
+        if (!connected) {
+            return null;
+        }
+        
+        boolean replay = isReadOnly(pendingCommand);
+        out.println("RESUME " + resumeToken);
+        if (replay) {
+            out.println(pendingCommand);
+        }
+        
+        String resumed = in.readLine();
+        if (resumed == null) {
+            return null;
+        }
+        if (resumed.startsWith("+OK")) {
+            System.out.println("(" + resumed.substring(4) + ")");
+        } else {
+            System.out.println(resumed);
+            resumeToken = null;
+        }
+        if (!replay) {
+            return "-ERR Connection lost before reply, outcome of '" + pendingCommand
+                    + "' is unknown. Check BALANCE/REPORT before retrying";
+        }
+        return in.readLine();
+    }
+    
+    static boolean isReadOnly(String command) {
+        String cmd = command.split("\\s+")[0];
+        return cmd.equalsIgnoreCase("BALANCE") || cmd.equalsIgnoreCase("REPORT") || cmd.equalsIgnoreCase("STATS");
+    }
+    
+    // Chế độ script: gửi liên tiếp mọi lệnh trong file (pipelining) rồi đọc phản hồi theo thứ tự
+    public void runScript(String scriptFile) {
+        if (!connected) {
+            System.err.println("Not connected to server.");
+            return;
+        }
+        
+        List<String> commands = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(scriptFile))) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    commands.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read script: " + e.getMessage());
+            close();
+            return;
+        }
+        
+        long start = System.nanoTime();
+        
+        // Thread gửi: ghi tất cả lệnh vào buffer, flush một lần
+        Thread sender = new Thread(() -> {
+            try {
+                PrintWriter pipelined = new PrintWriter(new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream())));
+                for (String command : commands) {
+                    pipelined.println(command);
+                }
+                pipelined.flush();
+            } catch (IOException e) {
+                System.err.println("Error sending script: " + e.getMessage());
+            }
+        }, "script-sender");
+        sender.start();
+        
+        // Thread chính: đọc phản hồi tương ứng với từng lệnh
+        int answered = 0;
+        try {
+            for (String command : commands) {
+                String response = in.readLine();
+                if (response == null) {
+                    System.out.println("Server disconnected.");
+                    break;
+                }
+                System.out.println("> " + command);
+                System.out.println(response);
+                if (isMultiLine(command, response)) {
+                    String extraLine;
+                    while ((extraLine = in.readLine()) != null && !extraLine.equals(".")) {
+                        System.out.println(extraLine);
+                    }
+                }
+                answered++;
+                if (command.split("\\s+")[0].equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+            }
+            sender.join();
+        } catch (IOException e) {
+            System.err.println("Error reading from server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n%d/%d commands in %.3f s (%.0f commands/s)%n",
+                answered, commands.size(), seconds, answered / Math.max(seconds, 1e-9));
+        close();
+    }
+    
+    static boolean isMultiLine(String command, String firstLine) {
+        String cmd = command.split("\\s+")[0];
+        return (cmd.equalsIgnoreCase("REPORT") || cmd.equalsIgnoreCase("STATS")) && firstLine.startsWith("+OK");
+    }
+    
     public void close() {
         try {
             if (scanner != null) scanner.close();
@@ -111,24 +253,39 @@ public class Client {
         }
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        // java EBankingTCP.Client load key=value ...: tạo tải không giao diện
+        if (args.length > 0 && args[0].equals("load")) {
+            new LoadGenerator(LoadGenerator.parseOptions(args, 1)).run();
+            return;
+        }
+        
         System.out.println("==========================================");
         System.out.println("       NLU E-BANKING CLIENT SYSTEM        ");
         System.out.println("==========================================");
         System.out.println("\nHuong dan su dung:");
         System.out.println("  - Dang nhap: USER <username>");
         System.out.println("              PASSWORD <password>");
+        System.out.println("              RESUME <token> (khoi phuc phien bang token nhan duoc sau PASSWORD)");
         System.out.println("              QUIT (huy dang nhap)");
         System.out.println("  - Giao dich: DEPOSIT <so tien>  (gui tien)");
         System.out.println("               WITHDRAW <so tien> (rut tien)");
+        System.out.println("               TRANSFER <so tai khoan> <so tien> (chuyen khoan)");
         System.out.println("               BALANCE            (kiem tra so du)");
-        System.out.println("               REPORT             (xem nhat ky)");
+        System.out.println("               REPORT [tu ngay] [den ngay] [so dong] [cursor]");
+        System.out.println("                                  (xem nhat ky, ngay dang yyyy-MM-dd hoac *)");
         System.out.println("               QUIT               (ket thuc)");
         System.out.println("==========================================\n");
         
         Client client = new Client();
         client.connect();
-        client.run();
+        
+        // java EBankingTCP.Client <script-file>: chạy file lệnh theo chế độ pipelining
+        if (args.length > 0) {
+            client.runScript(args[0]);
+        } else {
+            client.run();
+        }
     }
 }
 
@@ -0,0 +1,271 @@
+package EBankingTCP;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/*
+ * E-Banking System - Command Processor
+ * Xử lý giao thức dòng lệnh USER/PASSWORD/DEPOSIT/WITHDRAW/TRANSFER/BALANCE/REPORT cho một phiên
+ * Dùng chung cho Server (blocking) và NioServer (selector)
+ */
+
+public class CommandProcessor {
+    private static final int DEFAULT_REPORT_LIMIT = 50;
+    private static final int MAX_REPORT_LIMIT = 500;
+    
+    private DatabaseManager dbManager;
+    private boolean isLoggedIn = false;
+    private boolean isInLoginPhase = false;
+    private String resumeToken;
+    
+    public CommandProcessor(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        Metrics.sessionOpened();
+    }
+    
+    // Trả về toàn bộ phản hồi dưới dạng chuỗi (không có xuống dòng cuối)
+    public String processCommand(String command) {
+        StringWriter buffer = new StringWriter();
+        processCommand(command, new PrintWriter(buffer));
+        String response = buffer.toString();
+        return response.endsWith(System.lineSeparator())
+                ? response.substring(0, response.length() - System.lineSeparator().length())
+                : response;
+    }
+    
+    // Ghi phản hồi trực tiếp ra out; REPORT được ghi từng dòng ngay khi đọc từ CSDL
+    public void processCommand(String command, PrintWriter out) {
+        String[] parts = command.split("\\s+");
+        String cmd = parts[0].toUpperCase();
+        
+        long start = System.nanoTime();
+        boolean ok;
+        if (isLoggedIn && cmd.equals("REPORT")) {
+            ok = writeTransactionReport(parts, out);
+        } else if (isLoggedIn && cmd.equals("STATS")) {
+            ok = writeStats(out);
+        } else {
+            String response = execute(parts, cmd);
+            ok = !response.startsWith("-ERR");
+            out.println(response);
+        }
+        Metrics.recordCommand(cmd, System.nanoTime() - start, !ok);
+    }
+    
+    private String execute(String[] parts, String cmd) {
+        // === GIAI ĐOẠN ĐĂNG NHẬP (POP3-like) ===
+        if (!isLoggedIn) {
+            switch (cmd) {
+                case "USER":
+                    if (parts.length < 2) {
+                        return "-ERR Missing username";
+                    }
+                    isInLoginPhase = true;
+                    return dbManager.checkUsername(parts[1]);
+                
+                case "PASSWORD":
+                    if (!isInLoginPhase) {
+                        return "-ERR Not in login phase (use USER first)";
+                    }
+                    if (parts.length < 2) {
+                        return "-ERR Missing password";
+                    }
+                    String authResult = dbManager.authenticatePassword(parts[1]);
+                    if (authResult.startsWith("+OK")) {
+                        isLoggedIn = true;
+                        isInLoginPhase = false;
+                        resumeToken = SessionTokens.getInstance().issue(
+                                dbManager.getCurrentUser(), dbManager.getCurrentAccountNumber());
+                        return authResult + " TOKEN " + resumeToken;
+                    }
+                    return authResult;
+                
+                // Khôi phục phiên bằng token, không truy vấn CSDL
+                case "RESUME":
+                    if (parts.length < 2) {
+                        return "-ERR Missing token";
+                    }
+                    SessionTokens.Session session = SessionTokens.getInstance().resume(parts[1]);
+                    if (session == null) {
+                        return "-ERR Invalid or expired token";
+                    }
+                    dbManager.restoreSession(session.getUsername(), session.getAccountNumber());
+                    isLoggedIn = true;
+                    isInLoginPhase = false;
+                    resumeToken = parts[1];
+                    return "+OK " + session.getAccountNumber() + " Session resumed";
+                
+                case "QUIT":
+                    return "+OK Goodbye";
+                
+                default:
+                    return "-ERR Command not available. Please login first (USER, PASSWORD, RESUME, QUIT)";
+            }
+        }
+        
+        // === GIAI ĐOẠN GIAO DỊCH (Sau khi đăng nhập thành công) ===
+        switch (cmd) {
+            case "DEPOSIT":
+                if (parts.length < 2) {
+                    return "-ERR Missing amount (usage: DEPOSIT <amount>)";
+                }
+                try {
+                    double amount = Double.parseDouble(parts[1]);
+                    String result = dbManager.deposit(amount);
+                    if (result.startsWith("+OK")) {
+                        return result + " | So du hien tai: " + dbManager.getBalance();
+                    }
+                    return result;
+                } catch (NumberFormatException e) {
+                    return "-ERR Invalid amount";
+                }
+            
+            case "WITHDRAW":
+                if (parts.length < 2) {
+                    return "-ERR Missing amount (usage: WITHDRAW <amount>)";
+                }
+                try {
+                    double amount = Double.parseDouble(parts[1]);
+                    String result = dbManager.withdraw(amount);
+                    if (result.startsWith("+OK")) {
+                        return result + " | So du hien tai: " + dbManager.getBalance();
+                    }
+                    return result;
+                } catch (NumberFormatException e) {
+                    return "-ERR Invalid amount";
+                }
+            
+            case "TRANSFER":
+                if (parts.length < 3) {
+                    return "-ERR Missing arguments (usage: TRANSFER <toAccount> <amount>)";
+                }
+                try {
+                    double amount = Double.parseDouble(parts[2]);
+                    String result = dbManager.transfer(parts[1], amount);
+                    if (result.startsWith("+OK")) {
+                        return result + " | So du hien tai: " + dbManager.getBalance();
+                    }
+                    return result;
+                } catch (NumberFormatException e) {
+                    return "-ERR Invalid amount";
+                }
+            
+            case "BALANCE":
+                double balance = dbManager.getBalance();
+                return "+OK So du tai khoan: " + balance;
+            
+            case "QUIT":
+                SessionTokens.getInstance().revoke(resumeToken);
+                resumeToken = null;
+                dbManager.logout();
+                isLoggedIn = false;
+                return "+OK Goodbye";
+            
+            default:
+                return "-ERR Unknown command. Available: DEPOSIT, WITHDRAW, TRANSFER, BALANCE, REPORT, QUIT";
+        }
+    }
+    
+    // REPORT [from] [to] [limit] [cursor]
+    // Phản hồi +OK nhiều dòng kết thúc bằng dòng "."; có dòng "NEXT <cursor>" nếu còn trang sau
+    private boolean writeTransactionReport(String[] parts, PrintWriter out) {
+        LocalDate from;
+        LocalDate to;
+        int limit;
+        long cursorMillis = Long.MAX_VALUE;
+        long cursorId = Long.MAX_VALUE;
+        try {
+            from = parts.length > 1 ? parseDate(parts[1]) : null;
+            to = parts.length > 2 ? parseDate(parts[2]) : null;
+            limit = parts.length > 3 ? Integer.parseInt(parts[3]) : DEFAULT_REPORT_LIMIT;
+            if (parts.length > 4) {
+                String[] cursor = parts[4].split("-");
+                cursorMillis = Long.parseLong(cursor[0]);
+                cursorId = Long.parseLong(cursor[1]);
+            }
+        } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.println("-ERR Invalid arguments (usage: REPORT [from yyyy-MM-dd|*] [to yyyy-MM-dd|*] [limit] [cursor])");
+            return false;
+        }
+        if (limit <= 0 || limit > MAX_REPORT_LIMIT) {
+            out.println("-ERR Invalid limit (1-" + MAX_REPORT_LIMIT + ")");
+            return false;
+        }
+        
+        // "+OK" và tiêu đề chỉ được gửi khi có dòng đầu tiên hoặc truy vấn đã xong,
+        // nên lỗi CSDL trước đó là phản hồi "-ERR" một dòng như các lệnh khác.
+        // Đọc limit + 1 dòng: dòng thừa chỉ để biết còn trang sau
+        int pageSize = limit;
+        long[] last = new long[2];
+        int[] count = new int[1];
+        boolean[] started = new boolean[1];
+        boolean ok = dbManager.streamTransactionLog(from, to, cursorMillis, cursorId, limit + 1, (id, t) -> {
+            if (count[0]++ < pageSize) {
+                if (!started[0]) {
+                    writeReportHeader(out);
+                    started[0] = true;
+                }
+                out.println(t.toDisplayFormat());
+                last[0] = Timestamp.valueOf(t.getTransactionDate()).getTime();
+                last[1] = id;
+            }
+        });
+        
+        if (!ok) {
+            out.println("-ERR Database error");
+            if (started[0]) {
+                // Lỗi giữa chừng khi các dòng đã được gửi: dòng "-ERR" ngay trước "." báo báo cáo không đầy đủ
+                out.println(".");
+            }
+            return false;
+        }
+        if (!started[0]) {
+            writeReportHeader(out);
+        }
+        if (count[0] == 0) {
+            out.println("No transactions found");
+        }
+        out.println("------------------------------------------------------------");
+        out.println("So du tai khoan: " + dbManager.getBalance());
+        if (count[0] > limit) {
+            out.println("NEXT " + last[0] + "-" + last[1]);
+        }
+        out.println(".");
+        return true;
+    }
+    
+    private static void writeReportHeader(PrintWriter out) {
+        out.println("+OK ");
+        out.println("So tai khoan\t|| Ngay thang\t|| Thao tac\t|| Gia tri");
+        out.println("------------------------------------------------------------");
+    }
+    
+    // STATS: chỉ tài khoản admin (ebanking.admins); phản hồi nhiều dòng kết thúc bằng "."
+    private boolean writeStats(PrintWriter out) {
+        if (!Metrics.isAdmin(dbManager.getCurrentUser())) {
+            out.println("-ERR Permission denied");
+            return false;
+        }
+        out.println("+OK Server statistics");
+        out.print(Metrics.snapshot());
+        out.println(".");
+        return true;
+    }
+    
+    // "*" nghĩa là không giới hạn
+    private static LocalDate parseDate(String value) {
+        return value.equals("*") ? null : LocalDate.parse(value);
+    }
+    
+    // Giải phóng tài nguyên CSDL của phiên
+    public void close() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+            dbManager = null;
+            Metrics.sessionClosed();
+        }
+    }
+}
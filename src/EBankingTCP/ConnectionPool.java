@@ -0,0 +1,249 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Connection Pool
+ * Pool kết nối JDBC dùng chung cho mọi phiên:
+ * - Giới hạn số kết nối tối đa, mở sẵn MIN_IDLE kết nối khi khởi động
+ * - Kiểm tra kết nối (isValid) trước khi cho mượn nếu đã rảnh lâu
+ * - Đóng bớt kết nối rảnh quá IDLE_TIMEOUT
+ * Tạo bảng chỉ chạy một lần khi khởi tạo pool.
+ */
+
+import java.sql.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPool {
+    private static final String DB_URL = "jdbc:ucanaccess://./ebanking.accdb";
+    
+    private static final int MAX_SIZE = Integer.getInteger("ebanking.pool.maxSize", 10);
+    private static final int MIN_IDLE = Integer.getInteger("ebanking.pool.minIdle", 2);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("ebanking.pool.borrowTimeoutMs", 5000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("ebanking.pool.idleTimeoutMs", 300000);
+    private static final long VALIDATE_AFTER_MS = 30000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    
+    private static ConnectionPool instance;
+    
+    // LIFO: kết nối vừa trả được dùng lại trước, kết nối cũ nằm cuối để bị đóng
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    
+    private ConnectionPool() {
+        try {
+            Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
+        } catch (ClassNotFoundException e) {
+            System.err.println("UCanAccess driver not found: " + e.getMessage());
+        }
+        
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        prewarm();
+        evictor.scheduleWithFixedDelay(this::evictIdle, 30, 30, TimeUnit.SECONDS);
+    }
+    
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool();
+        }
+        return instance;
+    }
+    
+    private void prewarm() {
+        try {
+            Connection connection = openConnection();
+            createTablesIfNotExists(connection);
+            idle.offerFirst(new PooledConnection(connection));
+            
+            for (int i = 1; i < MIN_IDLE; i++) {
+                idle.offerFirst(new PooledConnection(openConnection()));
+            }
+            System.out.println("Connection pool ready (" + idle.size() + "/" + MAX_SIZE + " connections).");
+        } catch (SQLException e) {
+            System.err.println("Database connection error: " + e.getMessage());
+        }
+    }
+    
+    private Connection openConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = DriverManager.getConnection(DB_URL, "", "");
+        connection.setAutoCommit(false);
+        totalCount.incrementAndGet();
+        Metrics.record("db.connect", System.nanoTime() - start);
+        return connection;
+    }
+    
+    private void createTablesIfNotExists(Connection connection) {
+        // Bảng Accounts
+        String createAccountsSQL = """
+            CREATE TABLE IF NOT EXISTS Accounts (
+                username VARCHAR(50) PRIMARY KEY,
+                password VARCHAR(50) NOT NULL,
+                accountNumber VARCHAR(20) UNIQUE NOT NULL,
+                balance DOUBLE DEFAULT 0.0
+            )
+            """;
+        
+        // Bảng Transactions
+        String createTransactionsSQL = """
+            CREATE TABLE IF NOT EXISTS Transactions (
+                id COUNTER PRIMARY KEY,
+                accountNumber VARCHAR(20) NOT NULL,
+                operation VARCHAR(20) NOT NULL,
+                transactionDate DATETIME NOT NULL,
+                amount DOUBLE NOT NULL
+            )
+            """;
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createAccountsSQL);
+            stmt.execute(createTransactionsSQL);
+            connection.commit();
+        } catch (SQLException e) {
+            System.err.println("Error creating tables: " + e.getMessage());
+        }
+        
+        // Chỉ mục cho REPORT theo tài khoản + khoảng ngày (bỏ qua nếu đã có)
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX idx_transactions_account_date ON Transactions (accountNumber, transactionDate)");
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+        }
+    }
+    
+    private void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Rollback error: " + e.getMessage());
+        }
+    }
+    
+    // Mượn một kết nối; chờ tối đa BORROW_TIMEOUT_MS nếu pool đã hết
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            Metrics.record("pool.borrow", System.nanoTime() - start);
+            if (!acquired) {
+                Metrics.recordError("pool.borrow");
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection");
+        }
+        
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.connection;
+                }
+                discard(pooled.connection);
+            }
+            return openConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    // Trả kết nối về pool; giao dịch dang dở bị rollback
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (closed || connection.isClosed()) {
+                discard(connection);
+            } else {
+                connection.rollback();
+                idle.offerFirst(new PooledConnection(connection));
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_MS) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    private void discard(Connection connection) {
+        totalCount.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+    
+    // Đóng các kết nối rảnh quá lâu, giữ lại tối thiểu MIN_IDLE kết nối
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        PooledConnection oldest;
+        while (idle.size() > MIN_IDLE && (oldest = idle.peekLast()) != null
+                && now - oldest.lastUsed > IDLE_TIMEOUT_MS) {
+            if (idle.removeLastOccurrence(oldest)) {
+                discard(oldest.connection);
+            }
+        }
+    }
+    
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+    
+    public int getIdleCount() {
+        return idle.size();
+    }
+    
+    public int getActiveCount() {
+        return MAX_SIZE - permits.availablePermits();
+    }
+    
+    public int getMaxSize() {
+        return MAX_SIZE;
+    }
+    
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled.connection);
+        }
+        System.out.println("Database connection pool closed.");
+    }
+    
+    private static class PooledConnection {
+        private final Connection connection;
+        private final long lastUsed;
+        
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -2,125 +2,107 @@ package EBankingTCP;
 
 /*
  * E-Banking System - Database Manager
- * Mỗi client có 1 kết nối độc lập xuống CSDL
+ * Giữ trạng thái phiên (currentUser, currentAccountNumber);
+ * kết nối vật lý được mượn từ ConnectionPool cho từng thao tác
  */
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class DatabaseManager {
-    private Connection connection;
+    // Khoá chuyển khoản dùng chung cho mọi phiên trong JVM
+    private static final StripedLocks TRANSFER_LOCKS = new StripedLocks(1024);
+    
+    private final ConnectionPool pool;
+    private final AccountLedger ledger;
+    private final GroupCommitter groupCommitter;
+    private final HotAccounts hotAccounts;
     private String currentUser;
     private String currentAccountNumber;
     
-    // Database configuration
-    private static final String DB_URL = "jdbc:ucanaccess://./ebanking.accdb";
-    
     public DatabaseManager() {
-        initializeDatabase();
-    }
-    
-    private void initializeDatabase() {
-        try {
-            Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
-            
-            connection = DriverManager.getConnection(DB_URL, "", "");
-            connection.setAutoCommit(false);
-            
-            createTablesIfNotExists();
-            
-            System.out.println("Database connection established.");
-        } catch (ClassNotFoundException e) {
-            System.err.println("UCanAccess driver not found: " + e.getMessage());
-        } catch (SQLException e) {
-            System.err.println("Database connection error: " + e.getMessage());
-        }
+        this(ConnectionPool.getInstance());
     }
     
-    private void createTablesIfNotExists() {
-        // Bảng Accounts
-        String createAccountsSQL = """
-            CREATE TABLE IF NOT EXISTS Accounts (
-                username VARCHAR(50) PRIMARY KEY,
-                password VARCHAR(50) NOT NULL,
-                accountNumber VARCHAR(20) UNIQUE NOT NULL,
-                balance DOUBLE DEFAULT 0.0
-            )
-            """;
-        
-        // Bảng Transactions
-        String createTransactionsSQL = """
-            CREATE TABLE IF NOT EXISTS Transactions (
-                id AUTOEXEC PRIMARY KEY,
-                accountNumber VARCHAR(20) NOT NULL,
-                operation VARCHAR(20) NOT NULL,
-                transactionDate DATETIME NOT NULL,
-                amount DOUBLE NOT NULL
-            )
-            """;
-        
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createAccountsSQL);
-            stmt.execute(createTransactionsSQL);
-            connection.commit();
-        } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
-        }
+    public DatabaseManager(ConnectionPool pool) {
+        this.pool = pool;
+        this.ledger = AccountLedger.isEnabled() ? AccountLedger.getInstance() : null;
+        this.groupCommitter = GroupCommitter.isEnabled() ? GroupCommitter.getInstance() : null;
+        this.hotAccounts = HotAccounts.isEnabled() ? HotAccounts.getInstance() : null;
     }
     
     // === Authentication Methods ===
     
     // Kiểm tra username tồn tại
     public String checkUsername(String username) {
+        long start = System.nanoTime();
         String querySQL = "SELECT accountNumber, balance FROM Accounts WHERE username = ?";
         
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, username);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    currentUser = username;
-                    currentAccountNumber = rs.getString("accountNumber");
-                    return "+OK " + currentAccountNumber + " " + rs.getDouble("balance");
-                } else {
-                    return "-ERR User not found";
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setString(1, username);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        currentUser = username;
+                        currentAccountNumber = rs.getString("accountNumber");
+                        return "+OK " + currentAccountNumber + " " + rs.getDouble("balance");
+                    } else {
+                        return "-ERR User not found";
+                    }
                 }
             }
         } catch (SQLException e) {
             System.err.println("Error checking username: " + e.getMessage());
             return "-ERR Database error";
+        } finally {
+            pool.release(connection);
+            Metrics.record("db.checkUsername", System.nanoTime() - start);
         }
     }
     
     // Xác thực password
     public String authenticatePassword(String password) {
+        long start = System.nanoTime();
         if (currentUser == null) {
             return "-ERR Not in login phase";
         }
         
         String querySQL = "SELECT accountNumber, balance FROM Accounts WHERE username = ? AND password = ?";
         
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, currentUser);
-            pstmt.setString(2, password);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String accountNumber = rs.getString("accountNumber");
-                    double balance = rs.getDouble("balance");
-                    currentAccountNumber = accountNumber;
-                    return "+OK " + accountNumber + " " + balance;
-                } else {
-                    currentUser = null;
-                    currentAccountNumber = null;
-                    return "-ERR Invalid password";
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setString(1, currentUser);
+                pstmt.setString(2, password);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String accountNumber = rs.getString("accountNumber");
+                        double balance = rs.getDouble("balance");
+                        currentAccountNumber = accountNumber;
+                        return "+OK " + accountNumber + " " + balance;
+                    } else {
+                        currentUser = null;
+                        currentAccountNumber = null;
+                        return "-ERR Invalid password";
+                    }
                 }
             }
         } catch (SQLException e) {
             System.err.println("Error authenticating password: " + e.getMessage());
             return "-ERR Database error";
+        } finally {
+            pool.release(connection);
+            Metrics.record("db.authenticatePassword", System.nanoTime() - start);
         }
     }
     
@@ -130,8 +112,22 @@ public class DatabaseManager {
             return null;
         }
         
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return getCurrentAccount(connection);
+        } catch (SQLException e) {
+            System.err.println("Error getting account: " + e.getMessage());
+            return null;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    private Account getCurrentAccount(Connection connection) throws SQLException {
         String querySQL = "SELECT * FROM Accounts WHERE username = ?";
         
+        long start = System.nanoTime();
         try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
             pstmt.setString(1, currentUser);
             
@@ -145,8 +141,8 @@ public class DatabaseManager {
                     );
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error getting account: " + e.getMessage());
+        } finally {
+            Metrics.record("db.getCurrentAccount", System.nanoTime() - start);
         }
         return null;
     }
@@ -155,6 +151,15 @@ public class DatabaseManager {
     
     // Gửi tiền
     public synchronized String deposit(double amount) {
+        long start = System.nanoTime();
+        try {
+            return doDeposit(amount);
+        } finally {
+            Metrics.record("db.deposit", System.nanoTime() - start);
+        }
+    }
+    
+    private String doDeposit(double amount) {
         if (currentAccountNumber == null) {
             return "-ERR Not logged in";
         }
@@ -163,10 +168,23 @@ public class DatabaseManager {
             return "-ERR Invalid amount";
         }
         
+        if (ledger != null) {
+            return ledger.deposit(currentAccountNumber, amount);
+        }
+        if (isHot(currentAccountNumber)) {
+            return hotAccounts.deposit(currentAccountNumber, amount);
+        }
+        if (groupCommitter != null) {
+            return groupCommitter.deposit(currentUser, currentAccountNumber, amount);
+        }
+        
         String updateSQL = "UPDATE Accounts SET balance = balance + ? WHERE username = ?";
         String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
         
+        Connection connection = null;
         try {
+            connection = pool.borrow();
+            
             try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
                 pstmt.setDouble(1, amount);
                 pstmt.setString(2, currentUser);
@@ -181,21 +199,28 @@ public class DatabaseManager {
                 pstmt.executeUpdate();
             }
             
-            connection.commit();
+            commit(connection);
             return "+OK Deposit successful";
         } catch (SQLException e) {
             System.err.println("Error depositing: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
-            }
+            rollback(connection);
             return "-ERR Transaction failed";
+        } finally {
+            pool.release(connection);
         }
     }
     
     // Rút tiền
     public synchronized String withdraw(double amount) {
+        long start = System.nanoTime();
+        try {
+            return doWithdraw(amount);
+        } finally {
+            Metrics.record("db.withdraw", System.nanoTime() - start);
+        }
+    }
+    
+    private String doWithdraw(double amount) {
         if (currentAccountNumber == null) {
             return "-ERR Not logged in";
         }
@@ -204,15 +229,28 @@ public class DatabaseManager {
             return "-ERR Invalid amount";
         }
         
-        Account account = getCurrentAccount();
-        if (account == null || account.getBalance() < amount) {
-            return "-ERR Insufficient balance";
+        if (ledger != null) {
+            return ledger.withdraw(currentAccountNumber, amount);
+        }
+        if (isHot(currentAccountNumber)) {
+            return hotAccounts.withdraw(currentAccountNumber, amount);
+        }
+        if (groupCommitter != null) {
+            return groupCommitter.withdraw(currentUser, currentAccountNumber, amount);
         }
         
         String updateSQL = "UPDATE Accounts SET balance = balance - ? WHERE username = ? AND balance >= ?";
         String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
         
+        Connection connection = null;
         try {
+            connection = pool.borrow();
+            
+            Account account = getCurrentAccount(connection);
+            if (account == null || account.getBalance() < amount) {
+                return "-ERR Insufficient balance";
+            }
+            
             try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
                 pstmt.setDouble(1, amount);
                 pstmt.setString(2, currentUser);
@@ -233,56 +271,269 @@ public class DatabaseManager {
                 pstmt.executeUpdate();
             }
             
-            connection.commit();
+            commit(connection);
             return "+OK Withdraw successful";
         } catch (SQLException e) {
             System.err.println("Error withdrawing: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
+            rollback(connection);
+            return "-ERR Transaction failed";
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Chuyển khoản từ tài khoản đang đăng nhập
+    public synchronized String transfer(String toAccount, double amount) {
+        long start = System.nanoTime();
+        try {
+            if (currentAccountNumber == null) {
+                return "-ERR Not logged in";
+            }
+            return transfer(currentAccountNumber, toAccount, amount);
+        } finally {
+            Metrics.record("db.transfer", System.nanoTime() - start);
+        }
+    }
+    
+    // Ghi nợ fromAccount, ghi có toAccount và ghi hai dòng Transactions trong cùng một giao dịch CSDL
+    String transfer(String fromAccount, String toAccount, double amount) {
+        if (amount <= 0) {
+            return "-ERR Invalid amount";
+        }
+        if (fromAccount.equals(toAccount)) {
+            return "-ERR Cannot transfer to the same account";
+        }
+        
+        if (ledger != null) {
+            return ledger.transfer(fromAccount, toAccount, amount);
+        }
+        
+        // Các chuyển khoản cùng chạm một tài khoản xếp hàng ở đây thay vì tranh khoá dòng trong CSDL
+        TRANSFER_LOCKS.lockBoth(fromAccount, toAccount);
+        boolean hotSource = isHot(fromAccount);
+        if (hotSource) {
+            hotAccounts.lock(fromAccount);
+        }
+        try {
+            return doTransfer(fromAccount, toAccount, amount, hotSource);
+        } finally {
+            if (hotSource) {
+                hotAccounts.unlock(fromAccount);
+            }
+            TRANSFER_LOCKS.unlockBoth(fromAccount, toAccount);
+        }
+    }
+    
+    private String doTransfer(String fromAccount, String toAccount, double amount, boolean hotSource) {
+        String debitSQL = "UPDATE Accounts SET balance = balance - ? WHERE accountNumber = ? AND balance >= ?";
+        String creditSQL = "UPDATE Accounts SET balance = balance + ? WHERE accountNumber = ?";
+        String insertSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+        
+        // Cập nhật theo thứ tự số tài khoản tăng dần để khoá dòng trong CSDL cũng theo một thứ tự toàn cục
+        String[] order = fromAccount.compareTo(toAccount) < 0
+                ? new String[] { fromAccount, toAccount }
+                : new String[] { toAccount, fromAccount };
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            
+            try (PreparedStatement debit = connection.prepareStatement(debitSQL);
+                 PreparedStatement credit = connection.prepareStatement(creditSQL)) {
+                for (String accountNumber : order) {
+                    if (accountNumber.equals(toAccount)) {
+                        credit.setDouble(1, amount);
+                        credit.setString(2, toAccount);
+                        if (credit.executeUpdate() == 0) {
+                            connection.rollback();
+                            return "-ERR Account not found";
+                        }
+                        continue;
+                    }
+                    // Tài khoản nóng: kiểm tra với số dư thật (gồm các slot)
+                    boolean debited;
+                    if (hotSource) {
+                        debited = hotAccounts.debit(connection, fromAccount, amount);
+                    } else {
+                        debit.setDouble(1, amount);
+                        debit.setString(2, fromAccount);
+                        debit.setDouble(3, amount);
+                        debited = debit.executeUpdate() > 0;
+                    }
+                    if (!debited) {
+                        connection.rollback();
+                        return "-ERR Insufficient balance";
+                    }
+                }
+            }
+            
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
+                pstmt.setString(1, fromAccount);
+                pstmt.setString(2, "TRANSFER_OUT");
+                pstmt.setTimestamp(3, now);
+                pstmt.setDouble(4, amount);
+                pstmt.addBatch();
+                
+                pstmt.setString(1, toAccount);
+                pstmt.setString(2, "TRANSFER_IN");
+                pstmt.setTimestamp(3, now);
+                pstmt.setDouble(4, amount);
+                pstmt.addBatch();
+                pstmt.executeBatch();
             }
+            
+            commit(connection);
+            return "+OK Transfer successful";
+        } catch (SQLException e) {
+            System.err.println("Error transferring: " + e.getMessage());
+            rollback(connection);
             return "-ERR Transaction failed";
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Chế độ sổ cái đã giữ số dư trong bộ nhớ nên không cần chia slot
+    private boolean isHot(String accountNumber) {
+        return hotAccounts != null && ledger == null && accountNumber != null && hotAccounts.isHot(accountNumber);
+    }
+    
+    private void commit(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            connection.commit();
+        } finally {
+            Metrics.record("db.commit", System.nanoTime() - start);
+        }
+    }
+    
+    private void rollback(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            System.err.println("Rollback error: " + ex.getMessage());
         }
     }
     
     // Lấy số dư
     public double getBalance() {
-        Account account = getCurrentAccount();
-        return account != null ? account.getBalance() : 0.0;
+        long start = System.nanoTime();
+        try {
+            if (ledger != null && currentAccountNumber != null) {
+                return ledger.getBalance(currentAccountNumber);
+            }
+            if (isHot(currentAccountNumber)) {
+                return hotAccounts.getBalance(currentAccountNumber);
+            }
+            Account account = getCurrentAccount();
+            return account != null ? account.getBalance() : 0.0;
+        } finally {
+            Metrics.record("db.getBalance", System.nanoTime() - start);
+        }
     }
     
-    // Lấy nhật ký giao dịch
-    public List<Transaction> getTransactionLog() {
-        List<Transaction> transactions = new ArrayList<>();
-        
+    // Duyệt nhật ký giao dịch theo trang, mới nhất trước, không giữ cả danh sách trong bộ nhớ.
+    // Trang tiếp theo bắt đầu sau (cursorMillis, cursorId) của dòng cuối trang trước.
+    public boolean streamTransactionLog(LocalDate from, LocalDate to, long cursorMillis, long cursorId,
+                                        int maxRows, TransactionHandler handler) {
+        long start = System.nanoTime();
         if (currentAccountNumber == null) {
-            return transactions;
+            return true;
         }
         
+        Timestamp lower = from != null ? Timestamp.valueOf(from.atStartOfDay()) : new Timestamp(0);
+        Timestamp upper = to != null ? Timestamp.valueOf(to.plusDays(1).atStartOfDay())
+                                     : Timestamp.valueOf(LocalDateTime.of(9999, 12, 31, 0, 0));
+        Timestamp cursor = cursorMillis == Long.MAX_VALUE ? upper : new Timestamp(cursorMillis);
+        
+        try {
+            TransactionArchive archive = TransactionArchive.getInstance();
+            if (!archive.covers(lower.getTime())) {
+                return queryTransactionLog(lower, upper, cursor, cursorId, maxRows, handler);
+            }
+            
+            // Khoảng thời gian chạm vào phần đã lưu trữ: đọc trang từ bảng trước (tối đa maxRows dòng)
+            List<TransactionArchive.ArchivedTransaction> merged = new ArrayList<>();
+            boolean ok = queryTransactionLog(lower, upper, cursor, cursorId, maxRows, (id, transaction) ->
+                    merged.add(new TransactionArchive.ArchivedTransaction(id,
+                            Timestamp.valueOf(transaction.getTransactionDate()).getTime(), transaction)));
+            if (!ok) {
+                return false;
+            }
+            // Chỉ mở archive khi trang chưa đầy dòng từ mốc lưu trữ trở về sau; gộp và loại trùng theo id
+            // vì job lưu trữ bị ngắt có thể để lại giao dịch ở cả hai nơi. Bảng và archive (đã loại trùng bên trong)
+            // mỗi bên trả tối đa maxRows id khác nhau, nên phần gộp vẫn đủ maxRows dòng khi còn trang sau
+            if (merged.size() < maxRows || archive.covers(merged.get(merged.size() - 1).getMillis())) {
+                merged.addAll(archive.read(currentAccountNumber, lower.getTime(), upper.getTime(),
+                                           cursor.getTime(), cursorId, maxRows));
+                merged.sort(TransactionArchive.NEWEST_FIRST);
+            }
+            
+            Set<Long> emitted = new HashSet<>();
+            for (TransactionArchive.ArchivedTransaction archived : merged) {
+                if (emitted.size() == maxRows) {
+                    break;
+                }
+                if (emitted.add(archived.getId())) {
+                    handler.onTransaction(archived.getId(), archived.getTransaction());
+                }
+            }
+            return true;
+        } finally {
+            Metrics.record("db.streamTransactionLog", System.nanoTime() - start);
+        }
+    }
+    
+    private boolean queryTransactionLog(Timestamp lower, Timestamp upper, Timestamp cursor, long cursorId,
+                                        int maxRows, TransactionHandler handler) {
+        // Dùng chỉ mục (accountNumber, transactionDate)
         String querySQL = """
-            SELECT * FROM Transactions 
-            WHERE accountNumber = ? 
-            ORDER BY transactionDate DESC
+            SELECT id, accountNumber, operation, transactionDate, amount FROM Transactions
+            WHERE accountNumber = ?
+              AND transactionDate >= ? AND transactionDate < ?
+              AND (transactionDate < ? OR (transactionDate = ? AND id < ?))
+            ORDER BY transactionDate DESC, id DESC
             """;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, currentAccountNumber);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(new Transaction(
-                        rs.getString("accountNumber"),
-                        rs.getString("operation"),
-                        rs.getTimestamp("transactionDate").toLocalDateTime(),
-                        rs.getDouble("amount")
-                    ));
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setMaxRows(maxRows);
+                pstmt.setFetchSize(Math.min(maxRows, 100));
+                pstmt.setString(1, currentAccountNumber);
+                pstmt.setTimestamp(2, lower);
+                pstmt.setTimestamp(3, upper);
+                pstmt.setTimestamp(4, cursor);
+                pstmt.setTimestamp(5, cursor);
+                pstmt.setLong(6, cursorId);
+                
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.onTransaction(rs.getLong("id"), new Transaction(
+                            rs.getString("accountNumber"),
+                            rs.getString("operation"),
+                            rs.getTimestamp("transactionDate").toLocalDateTime(),
+                            rs.getDouble("amount")
+                        ));
+                    }
                 }
             }
+            return true;
         } catch (SQLException e) {
-            System.err.println("Error getting transaction log: " + e.getMessage());
+            System.err.println("Error streaming transaction log: " + e.getMessage());
+            return false;
+        } finally {
+            pool.release(connection);
         }
-        return transactions;
+    }
+    
+    public interface TransactionHandler {
+        void onTransaction(long id, Transaction transaction);
     }
     
     // Đăng xuất
@@ -291,21 +542,27 @@ public class DatabaseManager {
         currentAccountNumber = null;
     }
     
+    public String getCurrentUser() {
+        return currentUser;
+    }
+    
+    public String getCurrentAccountNumber() {
+        return currentAccountNumber;
+    }
+    
+    // Khôi phục trạng thái đăng nhập từ SessionTokens (RESUME), không truy vấn CSDL
+    public void restoreSession(String username, String accountNumber) {
+        currentUser = username;
+        currentAccountNumber = accountNumber;
+    }
+    
     // Kiểm tra trạng thái đăng nhập
     public boolean isLoggedIn() {
         return currentUser != null;
     }
     
-    // Đóng kết nối
+    // Kết thúc phiên; kết nối vật lý vẫn thuộc về pool
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Database connection closed.");
-            } catch (SQLException e) {
-                System.err.println("Error closing connection: " + e.getMessage());
-            }
-        }
+        logout();
     }
 }
-
@@ -2,24 +2,56 @@ package EBankingTCP;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
  * E-Banking System - Database Setup
  * Tạo cơ sở dữ liệu mẫu để test hệ thống
+ *
+ * java EBankingTCP.DatabaseSetup                              : 3 tài khoản mẫu
+ * java EBankingTCP.DatabaseSetup scale <accounts> <txPerAccount> [threads]
+ *                                                             : thêm dữ liệu cỡ production để benchmark
  */
 
 public class DatabaseSetup {
     private static final String DB_URL = "jdbc:ucanaccess://./ebanking.accdb";
     
+    // Tài khoản sinh ở chế độ scale: u0000001 / password / S00000001
+    static final String SEED_USERNAME_FORMAT = "u%07d";
+    static final String SEED_ACCOUNT_FORMAT = "S%08d";
+    static final String SEED_PASSWORD = "password";
+    
+    private static final int BATCH_SIZE = Integer.getInteger("ebanking.seed.batchSize", 1000);
+    private static final int COMMIT_EVERY = Integer.getInteger("ebanking.seed.commitEvery", 20000);
+    private static final int HISTORY_DAYS = 365;
+    
+    private static final String INSERT_ACCOUNT_SQL = "INSERT INTO Accounts (username, password, accountNumber, balance) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_TRANSACTION_SQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+    
     public static void main(String[] args) {
         System.out.println("Setting up E-Banking Database...\n");
         
+        boolean scale = args.length > 0 && args[0].equals("scale");
+        
         try {
             Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
             
             try (Connection connection = DriverManager.getConnection(DB_URL, "", "")) {
-                createTables(connection);
+                // Chế độ scale: tạo chỉ mục sau khi nạp xong, nhanh hơn cập nhật chỉ mục từng dòng
+                createTables(connection, !scale);
                 insertSampleData(connection);
+                if (scale) {
+                    int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+                    int txPerAccount = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+                    int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+                    seed(accounts, txPerAccount, threads);
+                    createIndex(connection);
+                }
                 System.out.println("\nDatabase setup completed successfully!");
                 System.out.println("\nSample accounts:");
                 System.out.println("  Account 1: user1 / password123 / 100000");
@@ -33,7 +65,7 @@ public class DatabaseSetup {
         }
     }
     
-    private static void createTables(Connection connection) throws SQLException {
+    private static void createTables(Connection connection, boolean withIndex) throws SQLException {
         // Xóa bảng cũ nếu tồn tại
         String dropTransactionsSQL = "DROP TABLE IF EXISTS Transactions";
         String dropAccountsSQL = "DROP TABLE IF EXISTS Accounts";
@@ -46,7 +78,7 @@ public class DatabaseSetup {
                 accountNumber VARCHAR(20) UNIQUE NOT NULL,
                 balance DOUBLE DEFAULT 0.0
             )
-            "";
+            """;
         
         // Tạo bảng Transactions
         String createTransactionsSQL = """
@@ -67,13 +99,23 @@ public class DatabaseSetup {
             connection.commit();
             System.out.println("Tables created successfully.");
         }
+        if (withIndex) {
+            createIndex(connection);
+        }
+    }
+    
+    private static void createIndex(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX idx_transactions_account_date ON Transactions (accountNumber, transactionDate)");
+            connection.commit();
+        }
+        System.out.printf("Index created in %.1fs.%n", (System.nanoTime() - start) / 1e9);
     }
     
     private static void insertSampleData(Connection connection) throws SQLException {
         // Thêm tài khoản mẫu
-        String insertAccountSQL = "INSERT INTO Accounts (username, password, accountNumber, balance) VALUES (?, ?, ?, ?)";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(insertAccountSQL)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_ACCOUNT_SQL)) {
             // Account 1
             pstmt.setString(1, "user1");
             pstmt.setString(2, "password123");
@@ -97,9 +139,7 @@ public class DatabaseSetup {
         }
         
         // Thêm giao dịch mẫu
-        String insertTransactionSQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(insertTransactionSQL)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_TRANSACTION_SQL)) {
             // Giao dịch cho user1
             pstmt.setString(1, "ACC001");
             pstmt.setString(2, "DEPOSIT");
@@ -124,5 +164,146 @@ public class DatabaseSetup {
         connection.commit();
         System.out.println("Sample data inserted successfully.");
     }
+    
+    // === Chế độ scale ===
+    
+    // Chia [1, accounts] thành các khoảng liên tiếp, mỗi thread ghi một khoảng bằng kết nối riêng
+    private static void seed(int accounts, int txPerAccount, int threads) throws SQLException {
+        System.out.printf("Seeding %d accounts x ~%d transactions with %d writer threads...%n",
+                accounts, txPerAccount, threads);
+        
+        LongAdder accountRows = new LongAdder();
+        LongAdder transactionRows = new LongAdder();
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        progress.scheduleAtFixedRate(() -> printProgress(start, accountRows, transactionRows), 5, 5, TimeUnit.SECONDS);
+        
+        List<Future<?>> futures = new ArrayList<>();
+        int perThread = (accounts + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * perThread + 1;
+            int to = Math.min(accounts, from + perThread - 1);
+            if (from > to) {
+                break;
+            }
+            long randomSeed = t;
+            futures.add(writers.submit(() -> {
+                seedRange(from, to, txPerAccount, new Random(randomSeed), accountRows, transactionRows);
+                return null;
+            }));
+        }
+        
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Seeding interrupted");
+        } catch (ExecutionException e) {
+            throw new SQLException("Seeding failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            writers.shutdownNow();
+            progress.shutdownNow();
+        }
+        
+        printProgress(start, accountRows, transactionRows);
+        System.out.println("Seeded accounts login as " + String.format(SEED_USERNAME_FORMAT, 1)
+                + " .. " + String.format(SEED_USERNAME_FORMAT, accounts) + " / " + SEED_PASSWORD);
+    }
+    
+    private static void printProgress(long start, LongAdder accountRows, LongAdder transactionRows) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long rows = accountRows.sum() + transactionRows.sum();
+        System.out.printf("  accounts=%d transactions=%d elapsed=%.0fs rows/s=%.0f%n",
+                accountRows.sum(), transactionRows.sum(), seconds, rows / Math.max(seconds, 1e-9));
+    }
+    
+    private static void seedRange(int from, int to, int txPerAccount, Random random,
+                                  LongAdder accountRows, LongAdder transactionRows) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(DB_URL, "", "");
+             PreparedStatement account = connection.prepareStatement(INSERT_ACCOUNT_SQL);
+             PreparedStatement transaction = connection.prepareStatement(INSERT_TRANSACTION_SQL)) {
+            connection.setAutoCommit(false);
+            
+            long nowMillis = System.currentTimeMillis();
+            int pendingAccounts = 0;
+            int pendingTransactions = 0;
+            int uncommitted = 0;
+            
+            for (int i = from; i <= to; i++) {
+                String accountNumber = String.format(SEED_ACCOUNT_FORMAT, i);
+                
+                // Số giao dịch mỗi tài khoản lệch (phân phối mũ): đa số ít, một số tài khoản rất nhiều
+                int count = (int) Math.min(txPerAccount * 20L, Math.round(-Math.log(1 - random.nextDouble()) * txPerAccount));
+                long[] dates = new long[count];
+                for (int j = 0; j < count; j++) {
+                    dates[j] = randomDate(random, nowMillis);
+                }
+                Arrays.sort(dates);
+                
+                // Phát lại theo thứ tự thời gian để số dư cuối khớp với lịch sử giao dịch
+                double balance = roundAmount(Math.exp(13 + random.nextGaussian()));
+                for (long date : dates) {
+                    double amount = roundAmount(Math.exp(12 + 1.2 * random.nextGaussian()));
+                    boolean deposit = random.nextDouble() < 0.55 || amount > balance;
+                    balance += deposit ? amount : -amount;
+                    
+                    transaction.setString(1, accountNumber);
+                    transaction.setString(2, deposit ? "DEPOSIT" : "WITHDRAW");
+                    transaction.setTimestamp(3, new Timestamp(date));
+                    transaction.setDouble(4, amount);
+                    transaction.addBatch();
+                    if (++pendingTransactions == BATCH_SIZE) {
+                        transaction.executeBatch();
+                        transactionRows.add(pendingTransactions);
+                        uncommitted += pendingTransactions;
+                        pendingTransactions = 0;
+                    }
+                }
+                
+                account.setString(1, String.format(SEED_USERNAME_FORMAT, i));
+                account.setString(2, SEED_PASSWORD);
+                account.setString(3, accountNumber);
+                account.setDouble(4, balance);
+                account.addBatch();
+                if (++pendingAccounts == BATCH_SIZE) {
+                    account.executeBatch();
+                    accountRows.add(pendingAccounts);
+                    uncommitted += pendingAccounts;
+                    pendingAccounts = 0;
+                }
+                
+                if (uncommitted >= COMMIT_EVERY) {
+                    connection.commit();
+                    uncommitted = 0;
+                }
+            }
+            
+            if (pendingTransactions > 0) {
+                transaction.executeBatch();
+                transactionRows.add(pendingTransactions);
+            }
+            if (pendingAccounts > 0) {
+                account.executeBatch();
+                accountRows.add(pendingAccounts);
+            }
+            connection.commit();
+        }
+    }
+    
+    // Trong HISTORY_DAYS ngày gần nhất, nghiêng về gần đây, trong giờ làm việc 8h-20h
+    private static long randomDate(Random random, long nowMillis) {
+        double daysAgo = Math.min(HISTORY_DAYS - 1, -Math.log(1 - random.nextDouble()) * HISTORY_DAYS / 4);
+        long day = nowMillis - (long) daysAgo * 86_400_000L;
+        long dayStart = day - Math.floorMod(day, 86_400_000L);
+        long time = dayStart + 8 * 3_600_000L + (long) (random.nextDouble() * 12 * 3_600_000L);
+        return Math.min(time, nowMillis);
+    }
+    
+    // Làm tròn tới 1.000
+    private static double roundAmount(double amount) {
+        return Math.max(1000, Math.round(amount / 1000) * 1000.0);
+    }
 }
-
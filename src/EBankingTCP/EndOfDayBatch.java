@@ -0,0 +1,379 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - End-of-Day Batch
+ * Tính lãi ngày (INTEREST) và phí duy trì (FEE) cho mọi tài khoản, mỗi khoản ghi một dòng Transactions.
+ *
+ * - Accounts được chia thành các khoảng khoá (accountNumber) liên tiếp, xử lý song song trên ForkJoinPool
+ * - Mỗi khoảng đọc tài khoản theo từng đoạn CHUNK_SIZE (keyset), ghi bằng JDBC batch và commit
+ *   cùng với checkpoint của khoảng đó trong bảng BatchCheckpoints
+ * - Chạy lại cùng ngày sẽ tiếp tục từ checkpoint: tài khoản đã commit không bị tính hai lần
+ * - Trước khi tính, các slot của tài khoản nóng (HotAccounts) được dồn về Accounts để lãi/phí tính trên số dư thật
+ *
+ * Chạy khi server đã dừng hoặc không bật ebanking.ledger (sổ cái giữ số dư trong bộ nhớ):
+ *   java EBankingTCP.EndOfDayBatch [yyyy-MM-dd] [partitions] [threads]
+ */
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EndOfDayBatch {
+    private static final double ANNUAL_INTEREST_RATE = Double.parseDouble(System.getProperty("ebanking.eod.interestRate", "0.02"));
+    private static final double DAILY_FEE = Double.parseDouble(System.getProperty("ebanking.eod.dailyFee", "100"));
+    private static final double FEE_FREE_BALANCE = Double.parseDouble(System.getProperty("ebanking.eod.feeFreeBalance", "50000"));
+    private static final int CHUNK_SIZE = Integer.getInteger("ebanking.eod.chunkSize", 5000);
+    
+    private static final String UPDATE_SQL = "UPDATE Accounts SET balance = balance + ? WHERE accountNumber = ?";
+    private static final String INSERT_SQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+    private static final String CHECKPOINT_SQL = "UPDATE BatchCheckpoints SET lastAccount = ?, done = ? WHERE runDate = ? AND partitionId = ?";
+    
+    private final ConnectionPool pool;
+    private final String runDate;
+    private final Timestamp postingTime;
+    private final LongAdder processedAccounts = new LongAdder();
+    private final LongAdder postings = new LongAdder();
+    private final AtomicInteger failedPartitions = new AtomicInteger();
+    
+    public EndOfDayBatch(ConnectionPool pool, LocalDate date) {
+        this.pool = pool;
+        this.runDate = date.toString();
+        this.postingTime = Timestamp.valueOf(date.atTime(23, 59, 59));
+    }
+    
+    public static void main(String[] args) {
+        LocalDate date = args.length > 0 ? LocalDate.parse(args[0]) : LocalDate.now();
+        int partitions = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        ConnectionPool pool = ConnectionPool.getInstance();
+        // Mỗi partition đang chạy giữ một kết nối: không chạy nhiều thread hơn kích thước pool
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Math.min(Runtime.getRuntime().availableProcessors(), pool.getMaxSize());
+        
+        try {
+            new EndOfDayBatch(pool, date).run(partitions, threads);
+        } catch (SQLException e) {
+            System.err.println("Batch error: " + e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+    
+    public void run(int partitionCount, int threads) throws SQLException {
+        foldHotAccountSlots();
+        List<Partition> partitions = loadOrCreatePartitions(partitionCount);
+        List<Partition> pending = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (!partition.done) {
+                pending.add(partition);
+            }
+        }
+        System.out.printf("End-of-day %s: %d partitions, %d pending, %d threads%n",
+                runDate, partitions.size(), pending.size(), threads);
+        if (pending.isEmpty()) {
+            System.out.println("Nothing to do, run already completed.");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> printProgress(start), 5, 5, TimeUnit.SECONDS);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+        try {
+            forkJoinPool.invoke(new PartitionTask(pending, 0, pending.size()));
+        } finally {
+            forkJoinPool.shutdown();
+            progress.shutdownNow();
+        }
+        
+        printProgress(start);
+        if (failedPartitions.get() > 0) {
+            System.out.println(failedPartitions.get() + " partitions failed; run again with the same date to resume.");
+        } else {
+            System.out.println("End-of-day " + runDate + " completed.");
+        }
+    }
+    
+    private void printProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  accounts=%d postings=%d elapsed=%.0fs accounts/s=%.0f%n",
+                processedAccounts.sum(), postings.sum(), seconds, processedAccounts.sum() / Math.max(seconds, 1e-9));
+    }
+    
+    // Chia đôi danh sách partition cho tới khi còn một
+    private class PartitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Partition> partitions;
+        private final int from;
+        private final int to;
+        
+        PartitionTask(List<Partition> partitions, int from, int to) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Partition partition = partitions.get(from);
+                try {
+                    processPartition(partition);
+                } catch (SQLException e) {
+                    failedPartitions.incrementAndGet();
+                    System.err.println("Partition " + partition.id + " failed: " + e.getMessage());
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PartitionTask(partitions, from, middle), new PartitionTask(partitions, middle, to));
+        }
+    }
+    
+    // Tiền gửi vào tài khoản nóng nằm trong AccountSlots cho tới khi được dồn: dồn hết về Accounts
+    // (slot -= v, Accounts += v, tổng không đổi) để số dư đọc từ Accounts là số dư thật.
+    // Tiền gửi đến sau đó cũng như mọi giao dịch đến trong lúc batch chạy: tính vào ngày hôm sau
+    private void foldHotAccountSlots() throws SQLException {
+        Connection connection = pool.borrow();
+        try {
+            boolean hasSlots = false;
+            try (ResultSet rs = connection.getMetaData().getTables(null, null, "%", new String[] { "TABLE" })) {
+                while (rs.next()) {
+                    hasSlots |= rs.getString("TABLE_NAME").equalsIgnoreCase("AccountSlots");
+                }
+            }
+            if (!hasSlots) {
+                return;
+            }
+            
+            List<String> accounts = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT DISTINCT accountNumber FROM AccountSlots WHERE balance <> 0")) {
+                while (rs.next()) {
+                    accounts.add(rs.getString(1));
+                }
+            }
+            double total = 0;
+            for (String accountNumber : accounts) {
+                total += HotAccounts.fold(connection, accountNumber);
+            }
+            connection.commit();
+            if (!accounts.isEmpty()) {
+                System.out.printf("Folded hot account slots of %d accounts (%.2f) into Accounts%n", accounts.size(), total);
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // === Phân vùng và checkpoint ===
+    
+    // Lần chạy đầu của một ngày: chia khoá thành partitionCount khoảng và lưu vào BatchCheckpoints.
+    // Lần chạy lại dùng đúng các khoảng đã lưu để checkpoint còn ý nghĩa.
+    private List<Partition> loadOrCreatePartitions(int partitionCount) throws SQLException {
+        Connection connection = pool.borrow();
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS BatchCheckpoints (
+                        runDate VARCHAR(10) NOT NULL,
+                        partitionId INTEGER NOT NULL,
+                        lowKey VARCHAR(20),
+                        highKey VARCHAR(20),
+                        lastAccount VARCHAR(20),
+                        done BOOLEAN DEFAULT FALSE,
+                        PRIMARY KEY (runDate, partitionId)
+                    )
+                    """);
+                connection.commit();
+            }
+            
+            List<Partition> partitions = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT partitionId, lowKey, highKey, lastAccount, done FROM BatchCheckpoints WHERE runDate = ? ORDER BY partitionId")) {
+                pstmt.setString(1, runDate);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        partitions.add(new Partition(rs.getInt("partitionId"), rs.getString("lowKey"),
+                                rs.getString("highKey"), rs.getString("lastAccount"), rs.getBoolean("done")));
+                    }
+                }
+            }
+            if (!partitions.isEmpty()) {
+                return partitions;
+            }
+            
+            List<String> bounds = computeBounds(connection, partitionCount);
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO BatchCheckpoints (runDate, partitionId, lowKey, highKey, lastAccount, done) VALUES (?, ?, ?, ?, NULL, FALSE)")) {
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    pstmt.setString(1, runDate);
+                    pstmt.setInt(2, i);
+                    pstmt.setString(3, bounds.get(i));
+                    pstmt.setString(4, bounds.get(i + 1));
+                    pstmt.addBatch();
+                    partitions.add(new Partition(i, bounds.get(i), bounds.get(i + 1), null, false));
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+            return partitions;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Ranh giới [b0, b1), [b1, b2), ...; null ở hai đầu nghĩa là không giới hạn
+    private List<String> computeBounds(Connection connection, int partitionCount) throws SQLException {
+        int total;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM Accounts")) {
+            rs.next();
+            total = rs.getInt(1);
+        }
+        int perPartition = Math.max(1, (total + partitionCount - 1) / partitionCount);
+        
+        List<String> bounds = new ArrayList<>();
+        bounds.add(null);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setFetchSize(10000);
+            try (ResultSet rs = stmt.executeQuery("SELECT accountNumber FROM Accounts ORDER BY accountNumber")) {
+                int row = 0;
+                while (rs.next()) {
+                    if (row > 0 && row % perPartition == 0) {
+                        bounds.add(rs.getString(1));
+                    }
+                    row++;
+                }
+            }
+        }
+        bounds.add(null);
+        return bounds;
+    }
+    
+    // === Xử lý một partition ===
+    
+    private void processPartition(Partition partition) throws SQLException {
+        Connection connection = pool.borrow();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT accountNumber, balance FROM Accounts WHERE accountNumber >= ? AND accountNumber > ? AND accountNumber < ? ORDER BY accountNumber");
+             PreparedStatement update = connection.prepareStatement(UPDATE_SQL);
+             PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+             PreparedStatement checkpoint = connection.prepareStatement(CHECKPOINT_SQL)) {
+            select.setMaxRows(CHUNK_SIZE);
+            
+            // [lowKey, highKey), tiếp tục sau tài khoản cuối đã commit; "" và \uffff thay cho không giới hạn
+            String low = partition.lowKey != null ? partition.lowKey : "";
+            String high = partition.highKey != null ? partition.highKey : "\uffff";
+            String after = partition.lastAccount != null ? partition.lastAccount : "";
+            
+            while (true) {
+                List<String> accounts = new ArrayList<>(CHUNK_SIZE);
+                List<Double> balances = new ArrayList<>(CHUNK_SIZE);
+                select.setString(1, low);
+                select.setString(2, after);
+                select.setString(3, high);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        accounts.add(rs.getString("accountNumber"));
+                        balances.add(rs.getDouble("balance"));
+                    }
+                }
+                boolean last = accounts.size() < CHUNK_SIZE;
+                
+                int chunkPostings = 0;
+                for (int i = 0; i < accounts.size(); i++) {
+                    chunkPostings += addPostings(update, insert, accounts.get(i), balances.get(i));
+                }
+                if (chunkPostings > 0) {
+                    update.executeBatch();
+                    insert.executeBatch();
+                }
+                if (!accounts.isEmpty()) {
+                    after = accounts.get(accounts.size() - 1);
+                }
+                
+                // Checkpoint commit cùng dữ liệu của đoạn
+                checkpoint.setString(1, accounts.isEmpty() ? partition.lastAccount : after);
+                checkpoint.setBoolean(2, last);
+                checkpoint.setString(3, runDate);
+                checkpoint.setInt(4, partition.id);
+                checkpoint.executeUpdate();
+                connection.commit();
+                
+                partition.lastAccount = after;
+                processedAccounts.add(accounts.size());
+                postings.add(chunkPostings);
+                if (last) {
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Lãi ngày trên số dư dương; phí ngày khi số dư dưới ngưỡng miễn phí (không làm số dư âm)
+    private int addPostings(PreparedStatement update, PreparedStatement insert,
+                            String accountNumber, double balance) throws SQLException {
+        int count = 0;
+        double interest = round(balance > 0 ? balance * ANNUAL_INTEREST_RATE / 365 : 0);
+        double fee = round(balance < FEE_FREE_BALANCE ? Math.min(DAILY_FEE, Math.max(0, balance + interest)) : 0);
+        
+        if (interest > 0) {
+            addPosting(update, insert, accountNumber, "INTEREST", interest, interest);
+            count++;
+        }
+        if (fee > 0) {
+            addPosting(update, insert, accountNumber, "FEE", -fee, fee);
+            count++;
+        }
+        return count;
+    }
+    
+    private void addPosting(PreparedStatement update, PreparedStatement insert, String accountNumber,
+                            String operation, double delta, double amount) throws SQLException {
+        update.setDouble(1, delta);
+        update.setString(2, accountNumber);
+        update.addBatch();
+        
+        insert.setString(1, accountNumber);
+        insert.setString(2, operation);
+        insert.setTimestamp(3, postingTime);
+        insert.setDouble(4, amount);
+        insert.addBatch();
+    }
+    
+    private static double round(double amount) {
+        return Math.round(amount * 100) / 100.0;
+    }
+    
+    private static class Partition {
+        private final int id;
+        private final String lowKey;
+        private final String highKey;
+        private String lastAccount;
+        private final boolean done;
+        
+        Partition(int id, String lowKey, String highKey, String lastAccount, boolean done) {
+            this.id = id;
+            this.lowKey = lowKey;
+            this.highKey = highKey;
+            this.lastAccount = lastAccount;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Group Commit
+ * Gom DEPOSIT/WITHDRAW của nhiều phiên đồng thời thành một JDBC batch và một lần commit
+ * (bật bằng -Debanking.groupCommit=true).
+ *
+ * Một batch được đóng khi đủ MAX_BATCH thao tác hoặc hết WINDOW kể từ thao tác đầu tiên.
+ * Mỗi phiên chỉ nhận phản hồi sau khi batch chứa thao tác của nó đã commit.
+ * Nếu batch lỗi, batch được rollback và chạy lại từng thao tác với savepoint riêng,
+ * để một thao tác hỏng không kéo theo cả batch.
+ */
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+public class GroupCommitter {
+    private static final boolean ENABLED = Boolean.getBoolean("ebanking.groupCommit");
+    private static final long WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(
+            Long.getLong("ebanking.groupCommit.windowMicros", 2000));
+    private static final int MAX_BATCH = Integer.getInteger("ebanking.groupCommit.maxBatch", 64);
+    
+    private static final String DEPOSIT_SQL = "UPDATE Accounts SET balance = balance + ? WHERE username = ?";
+    private static final String WITHDRAW_SQL = "UPDATE Accounts SET balance = balance - ? WHERE username = ? AND balance >= ?";
+    private static final String INSERT_SQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+    
+    private static GroupCommitter instance;
+    
+    private final ConnectionPool pool;
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    
+    // Thống kê
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong opCount = new AtomicLong();
+    private final AtomicLong failedOpCount = new AtomicLong();
+    private final AtomicLong fallbackBatchCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    
+    private GroupCommitter(ConnectionPool pool) {
+        this.pool = pool;
+        flusher = new Thread(this::flushLoop, "group-commit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static synchronized GroupCommitter getInstance() {
+        if (instance == null) {
+            instance = new GroupCommitter(ConnectionPool.getInstance());
+        }
+        return instance;
+    }
+    
+    // Gửi tiền: chờ tới khi batch được commit
+    public String deposit(String username, String accountNumber, double amount) {
+        return submit(new Operation("DEPOSIT", username, accountNumber, amount));
+    }
+    
+    // Rút tiền: điều kiện balance >= amount được kiểm tra ngay trong câu UPDATE
+    public String withdraw(String username, String accountNumber, double amount) {
+        return submit(new Operation("WITHDRAW", username, accountNumber, amount));
+    }
+    
+    private String submit(Operation op) {
+        if (!running) {
+            return "-ERR Transaction failed";
+        }
+        queue.add(op);
+        // close() có thể đã dừng flusher và dọn hàng đợi ngay trước khi op được thêm vào
+        if (!running && queue.remove(op)) {
+            return "-ERR Transaction failed";
+        }
+        try {
+            return op.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "-ERR Transaction failed";
+        } catch (ExecutionException e) {
+            return "-ERR Transaction failed";
+        }
+    }
+    
+    // === Thread gom batch ===
+    
+    private void flushLoop() {
+        List<Operation> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Operation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                
+                long deadline = first.enqueuedAt + WINDOW_NANOS;
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    Operation next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                System.err.println("Group commit error: " + e.getMessage());
+                complete(batch, "-ERR Transaction failed");
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void flush(List<Operation> batch) {
+        Connection connection;
+        try {
+            connection = pool.borrow();
+        } catch (SQLException e) {
+            System.err.println("Group commit error: " + e.getMessage());
+            complete(batch, "-ERR Transaction failed");
+            return;
+        }
+        
+        try {
+            String[] results;
+            try {
+                results = executeBatch(connection, batch);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                fallbackBatchCount.incrementAndGet();
+                results = executeOneByOne(connection, batch);
+                connection.commit();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(results[i]);
+            }
+        } catch (SQLException e) {
+            System.err.println("Group commit error: " + e.getMessage());
+            rollback(connection);
+            complete(batch, "-ERR Transaction failed");
+        } finally {
+            pool.release(connection);
+            recordBatch(batch);
+        }
+    }
+    
+    // Cả batch: một executeBatch cho mỗi loại UPDATE, một executeBatch cho INSERT
+    private String[] executeBatch(Connection connection, List<Operation> batch) throws SQLException {
+        String[] results = new String[batch.size()];
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        
+        // Gửi tiền chạy trước rút tiền; các thao tác trong một batch là đồng thời nên không có thứ tự nào khác
+        int[] updated = new int[batch.size()];
+        List<Integer> deposits = new ArrayList<>();
+        List<Integer> withdrawals = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            (batch.get(i).isDeposit() ? deposits : withdrawals).add(i);
+        }
+        try (PreparedStatement deposit = connection.prepareStatement(DEPOSIT_SQL);
+             PreparedStatement withdraw = connection.prepareStatement(WITHDRAW_SQL)) {
+            executeUpdates(deposit, batch, deposits, updated);
+            executeUpdates(withdraw, batch, withdrawals, updated);
+        }
+        
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            for (int i = 0; i < batch.size(); i++) {
+                Operation op = batch.get(i);
+                if (updated[i] == 0) {
+                    results[i] = op.failureMessage();
+                    continue;
+                }
+                bindInsert(insert, op, now);
+                insert.addBatch();
+                results[i] = op.successMessage();
+            }
+            insert.executeBatch();
+        }
+        return results;
+    }
+    
+    private void executeUpdates(PreparedStatement update, List<Operation> batch, List<Integer> indexes,
+                                int[] updated) throws SQLException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        for (int i : indexes) {
+            bindUpdate(update, batch.get(i));
+            update.addBatch();
+        }
+        int[] counts = update.executeBatch();
+        for (int j = 0; j < counts.length; j++) {
+            // Không biết số dòng bị ảnh hưởng thì không biết lệnh rút nào thất bại: chạy lại từng thao tác
+            if (counts[j] == Statement.SUCCESS_NO_INFO) {
+                throw new SQLException("Driver did not report batch update counts");
+            }
+            updated[indexes.get(j)] = counts[j];
+        }
+    }
+    
+    // Dự phòng: từng thao tác trong savepoint riêng, cùng một lần commit
+    private String[] executeOneByOne(Connection connection, List<Operation> batch) throws SQLException {
+        String[] results = new String[batch.size()];
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        
+        try (PreparedStatement deposit = connection.prepareStatement(DEPOSIT_SQL);
+             PreparedStatement withdraw = connection.prepareStatement(WITHDRAW_SQL);
+             PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            for (int i = 0; i < batch.size(); i++) {
+                Operation op = batch.get(i);
+                PreparedStatement update = op.isDeposit() ? deposit : withdraw;
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    bindUpdate(update, op);
+                    if (update.executeUpdate() == 0) {
+                        results[i] = op.failureMessage();
+                        continue;
+                    }
+                    bindInsert(insert, op, now);
+                    insert.executeUpdate();
+                    results[i] = op.successMessage();
+                } catch (SQLException e) {
+                    System.err.println("Group commit op failed: " + e.getMessage());
+                    connection.rollback(savepoint);
+                    results[i] = "-ERR Transaction failed";
+                }
+            }
+        }
+        return results;
+    }
+    
+    private void bindUpdate(PreparedStatement update, Operation op) throws SQLException {
+        update.setDouble(1, op.amount);
+        update.setString(2, op.username);
+        // Chỉ rút tiền có điều kiện số dư
+        if (!op.isDeposit()) {
+            update.setDouble(3, op.amount);
+        }
+    }
+    
+    private void bindInsert(PreparedStatement insert, Operation op, Timestamp now) throws SQLException {
+        insert.setString(1, op.accountNumber);
+        insert.setString(2, op.type);
+        insert.setTimestamp(3, now);
+        insert.setDouble(4, op.amount);
+    }
+    
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Rollback error: " + e.getMessage());
+        }
+    }
+    
+    private void complete(List<Operation> batch, String result) {
+        for (Operation op : batch) {
+            op.complete(result);
+        }
+    }
+    
+    private void recordBatch(List<Operation> batch) {
+        long now = System.nanoTime();
+        batchCount.incrementAndGet();
+        opCount.addAndGet(batch.size());
+        maxBatchSize.accumulate(batch.size());
+        for (Operation op : batch) {
+            long wait = now - op.enqueuedAt;
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulate(wait);
+            if (op.result.isDone() && op.result.getNow("").startsWith("-ERR")) {
+                failedOpCount.incrementAndGet();
+            }
+        }
+    }
+    
+    // === Thống kê ===
+    
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+    
+    public long getOpCount() {
+        return opCount.get();
+    }
+    
+    public String getStats() {
+        long batches = batchCount.get();
+        long ops = opCount.get();
+        return String.format(
+                "batches=%d ops=%d avgBatch=%.1f maxBatch=%d failedOps=%d fallbackBatches=%d avgWaitUs=%.0f maxWaitUs=%d",
+                batches, ops,
+                batches == 0 ? 0.0 : (double) ops / batches,
+                maxBatchSize.get(),
+                failedOpCount.get(),
+                fallbackBatchCount.get(),
+                ops == 0 ? 0.0 : totalWaitNanos.get() / 1000.0 / ops,
+                maxWaitNanos.get() / 1000);
+    }
+    
+    // Ngừng nhận thao tác mới, commit nốt những gì đang chờ; thao tác flusher không kịp xử lý bị báo lỗi
+    // để phiên đang chờ không treo
+    public void close() {
+        running = false;
+        try {
+            flusher.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Operation op;
+        while ((op = queue.poll()) != null) {
+            op.complete("-ERR Transaction failed");
+        }
+        System.out.println("Group commit stopped: " + getStats());
+    }
+    
+    private static class Operation {
+        private final String type;
+        private final String username;
+        private final String accountNumber;
+        private final double amount;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        
+        Operation(String type, String username, String accountNumber, double amount) {
+            this.type = type;
+            this.username = username;
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+        }
+        
+        boolean isDeposit() {
+            return type.equals("DEPOSIT");
+        }
+        
+        String successMessage() {
+            return isDeposit() ? "+OK Deposit successful" : "+OK Withdraw successful";
+        }
+        
+        String failureMessage() {
+            return isDeposit() ? "-ERR Transaction failed" : "-ERR Insufficient balance";
+        }
+        
+        void complete(String message) {
+            result.complete(message);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Hot Account Benchmark
+ * Đo thông lượng DEPOSIT khi nhiều thread cùng gửi tiền vào MỘT tài khoản.
+ * Chạy hai lần để so sánh:
+ *   java EBankingTCP.HotAccountBenchmark user=user1 threads=32 ops=20000
+ *   java -Debanking.hotAccounts=ACC001 EBankingTCP.HotAccountBenchmark user=user1 threads=32 ops=20000
+ * Cuối cùng kiểm tra số dư tăng đúng bằng tổng tiền đã gửi thành công.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HotAccountBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadGenerator.parseOptions(args, 0);
+        String username = options.getOrDefault("user", "user1");
+        int threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        int ops = Integer.parseInt(options.getOrDefault("ops", "20000"));
+        double amount = Double.parseDouble(options.getOrDefault("amount", "1"));
+        
+        ConnectionPool pool = ConnectionPool.getInstance();
+        DatabaseManager probe = new DatabaseManager(pool);
+        String login = probe.checkUsername(username);
+        if (!login.startsWith("+OK")) {
+            System.err.println("Cannot use " + username + ": " + login);
+            return;
+        }
+        String accountNumber = login.split(" ")[1];
+        double balanceBefore = probe.getBalance();
+        
+        System.out.printf("Depositing into %s (hot mode %s): %d threads x %d ops%n", accountNumber,
+                HotAccounts.isEnabled() && HotAccounts.getInstance().isHot(accountNumber) ? "on" : "off",
+                threads, ops / threads);
+        
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder succeeded = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                // Mỗi thread một phiên riêng của cùng một tài khoản
+                DatabaseManager dbManager = new DatabaseManager(pool);
+                dbManager.checkUsername(username);
+                startSignal.await();
+                for (int i = 0; i < ops / threads; i++) {
+                    long start = System.nanoTime();
+                    String result = dbManager.deposit(amount);
+                    latency.record(System.nanoTime() - start);
+                    if (result.startsWith("+OK")) {
+                        succeeded.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        long start = System.nanoTime();
+        startSignal.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        
+        double balanceAfter = probe.getBalance();
+        double expected = balanceBefore + succeeded.sum() * amount;
+        System.out.printf("deposits=%d ok=%d throughput=%.0f/s%n",
+                latency.getCount(), succeeded.sum(), latency.getCount() / seconds);
+        System.out.println("latency " + latency.summary());
+        if (HotAccounts.isEnabled()) {
+            HotAccounts.getInstance().close();
+        }
+        System.out.printf("balance before=%.2f after=%.2f expected=%.2f %s%n", balanceBefore, balanceAfter, expected,
+                Math.abs(balanceAfter - expected) < 0.005 ? "OK" : "MISMATCH");
+        pool.close();
+    }
+}
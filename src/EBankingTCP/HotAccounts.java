@@ -0,0 +1,327 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Hot Accounts
+ * Chế độ tài khoản nóng (bật bằng -Debanking.hotAccounts=ACC001,ACC002):
+ * - Tiền gửi vào tài khoản nóng được cộng vào một trong SLOTS dòng của bảng AccountSlots
+ *   thay vì cùng một dòng Accounts, nên các DEPOSIT đồng thời không xếp hàng trên một khoá dòng
+ * - Số dư thật = Accounts.balance + tổng AccountSlots.balance
+ * - Thread nền định kỳ dồn (fold) các slot về Accounts
+ * - Rút tiền/chuyển khoản đi luôn kiểm tra với số dư thật: nếu Accounts.balance không đủ
+ *   thì dồn các slot trong cùng giao dịch CSDL rồi kiểm tra lại
+ *
+ * Một lần dồn chuyển đúng giá trị v đã đọc (slot -= v, Accounts += v) trong một commit,
+ * nên tiền gửi đến giữa lúc đọc và lúc cập nhật không bị mất và tổng luôn không đổi.
+ */
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class HotAccounts {
+    private static final Set<String> ACCOUNTS = parseAccounts(System.getProperty("ebanking.hotAccounts", ""));
+    private static final int SLOTS = Integer.getInteger("ebanking.hotAccounts.slots", 16);
+    private static final long FOLD_INTERVAL_MS = Long.getLong("ebanking.hotAccounts.foldIntervalMs", 1000);
+    
+    private static final String CREDIT_SLOT_SQL = "UPDATE AccountSlots SET balance = balance + ? WHERE accountNumber = ? AND slot = ?";
+    private static final String DEBIT_SQL = "UPDATE Accounts SET balance = balance - ? WHERE accountNumber = ? AND balance >= ?";
+    private static final String INSERT_SQL = "INSERT INTO Transactions (accountNumber, operation, transactionDate, amount) VALUES (?, ?, ?, ?)";
+    
+    private static HotAccounts instance;
+    
+    private final ConnectionPool pool;
+    // Khoá dồn theo tài khoản: hai lần dồn song song có thể cùng trừ một giá trị đọc được
+    private final Map<String, ReentrantLock> foldLocks = new HashMap<>();
+    private final ScheduledExecutorService folder;
+    
+    // Thống kê
+    private final AtomicLong slotCredits = new AtomicLong();
+    private final AtomicLong folds = new AtomicLong();
+    private final AtomicLong withdrawFolds = new AtomicLong();
+    
+    private HotAccounts(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
+        for (String accountNumber : ACCOUNTS) {
+            foldLocks.put(accountNumber, new ReentrantLock());
+        }
+        createSlots();
+        
+        folder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-account-folder");
+            t.setDaemon(true);
+            return t;
+        });
+        folder.scheduleWithFixedDelay(this::foldAll, FOLD_INTERVAL_MS, FOLD_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        System.out.println("Hot accounts " + ACCOUNTS + " use " + SLOTS + " slots each.");
+    }
+    
+    private static Set<String> parseAccounts(String value) {
+        Set<String> accounts = new HashSet<>();
+        for (String account : value.split(",")) {
+            if (!account.trim().isEmpty()) {
+                accounts.add(account.trim());
+            }
+        }
+        return accounts;
+    }
+    
+    public static boolean isEnabled() {
+        return !ACCOUNTS.isEmpty();
+    }
+    
+    public static synchronized HotAccounts getInstance() {
+        if (instance == null) {
+            try {
+                instance = new HotAccounts(ConnectionPool.getInstance());
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot start hot accounts: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+    
+    public boolean isHot(String accountNumber) {
+        return ACCOUNTS.contains(accountNumber);
+    }
+    
+    // Tạo đủ SLOTS dòng cho mỗi tài khoản nóng (slot đã có giữ nguyên số dư)
+    private void createSlots() throws SQLException {
+        Connection connection = pool.borrow();
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS AccountSlots (
+                        accountNumber VARCHAR(20) NOT NULL,
+                        slot INTEGER NOT NULL,
+                        balance DOUBLE DEFAULT 0.0,
+                        PRIMARY KEY (accountNumber, slot)
+                    )
+                    """);
+            }
+            try (PreparedStatement exists = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM AccountSlots WHERE accountNumber = ? AND slot = ?");
+                 PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO AccountSlots (accountNumber, slot, balance) VALUES (?, ?, 0)")) {
+                for (String accountNumber : ACCOUNTS) {
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        exists.setString(1, accountNumber);
+                        exists.setInt(2, slot);
+                        try (ResultSet rs = exists.executeQuery()) {
+                            if (rs.next() && rs.getInt(1) > 0) {
+                                continue;
+                            }
+                        }
+                        insert.setString(1, accountNumber);
+                        insert.setInt(2, slot);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // === Thao tác trên tài khoản nóng ===
+    
+    // Gửi tiền vào một slot ngẫu nhiên
+    public String deposit(String accountNumber, double amount) {
+        int slot = ThreadLocalRandom.current().nextInt(SLOTS);
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(CREDIT_SLOT_SQL)) {
+                pstmt.setDouble(1, amount);
+                pstmt.setString(2, accountNumber);
+                pstmt.setInt(3, slot);
+                if (pstmt.executeUpdate() == 0) {
+                    connection.rollback();
+                    return "-ERR Transaction failed";
+                }
+            }
+            insertTransaction(connection, accountNumber, "DEPOSIT", amount);
+            connection.commit();
+            slotCredits.incrementAndGet();
+            return "+OK Deposit successful";
+        } catch (SQLException e) {
+            System.err.println("Error depositing to hot account: " + e.getMessage());
+            rollback(connection);
+            return "-ERR Transaction failed";
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // Rút tiền: thử trừ Accounts trước, không đủ thì dồn các slot rồi thử lại
+    public String withdraw(String accountNumber, double amount) {
+        ReentrantLock lock = foldLocks.get(accountNumber);
+        lock.lock();
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            if (!debit(connection, accountNumber, amount)) {
+                connection.rollback();
+                return "-ERR Insufficient balance";
+            }
+            insertTransaction(connection, accountNumber, "WITHDRAW", amount);
+            connection.commit();
+            return "+OK Withdraw successful";
+        } catch (SQLException e) {
+            System.err.println("Error withdrawing from hot account: " + e.getMessage());
+            rollback(connection);
+            return "-ERR Transaction failed";
+        } finally {
+            pool.release(connection);
+            lock.unlock();
+        }
+    }
+    
+    // Trừ amount khỏi số dư thật trong giao dịch hiện tại (chưa commit); gọi khi đang giữ khoá dồn
+    boolean debit(Connection connection, String accountNumber, double amount) throws SQLException {
+        if (debitMain(connection, accountNumber, amount)) {
+            return true;
+        }
+        withdrawFolds.incrementAndGet();
+        fold(connection, accountNumber);
+        return debitMain(connection, accountNumber, amount);
+    }
+    
+    private boolean debitMain(Connection connection, String accountNumber, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(DEBIT_SQL)) {
+            pstmt.setDouble(1, amount);
+            pstmt.setString(2, accountNumber);
+            pstmt.setDouble(3, amount);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+    
+    public void lock(String accountNumber) {
+        foldLocks.get(accountNumber).lock();
+    }
+    
+    public void unlock(String accountNumber) {
+        foldLocks.get(accountNumber).unlock();
+    }
+    
+    // Số dư thật
+    public double getBalance(String accountNumber) {
+        String querySQL = """
+            SELECT a.balance + (SELECT COALESCE(SUM(s.balance), 0) FROM AccountSlots s WHERE s.accountNumber = a.accountNumber)
+            FROM Accounts a WHERE a.accountNumber = ?
+            """;
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setString(1, accountNumber);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getDouble(1) : 0.0;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting hot account balance: " + e.getMessage());
+            return 0.0;
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    // === Dồn slot về Accounts ===
+    
+    private void foldAll() {
+        for (String accountNumber : ACCOUNTS) {
+            ReentrantLock lock = foldLocks.get(accountNumber);
+            lock.lock();
+            Connection connection = null;
+            try {
+                connection = pool.borrow();
+                if (fold(connection, accountNumber) != 0) {
+                    connection.commit();
+                    folds.incrementAndGet();
+                }
+            } catch (SQLException e) {
+                System.err.println("Hot account fold error: " + e.getMessage());
+                rollback(connection);
+            } finally {
+                pool.release(connection);
+                lock.unlock();
+            }
+        }
+    }
+    
+    // Chuyển giá trị hiện tại của mọi slot về Accounts, chưa commit; trả về tổng đã chuyển.
+    // Không dùng trạng thái của instance: EndOfDayBatch cũng gọi để dồn slot trước khi tính lãi/phí
+    static double fold(Connection connection, String accountNumber) throws SQLException {
+        double total = 0;
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT slot, balance FROM AccountSlots WHERE accountNumber = ? AND balance <> 0");
+             PreparedStatement drain = connection.prepareStatement(
+                "UPDATE AccountSlots SET balance = balance - ? WHERE accountNumber = ? AND slot = ?")) {
+            select.setString(1, accountNumber);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    double value = rs.getDouble("balance");
+                    drain.setDouble(1, value);
+                    drain.setString(2, accountNumber);
+                    drain.setInt(3, rs.getInt("slot"));
+                    drain.addBatch();
+                    total += value;
+                }
+            }
+            if (total == 0) {
+                return 0;
+            }
+            drain.executeBatch();
+        }
+        
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE Accounts SET balance = balance + ? WHERE accountNumber = ?")) {
+            pstmt.setDouble(1, total);
+            pstmt.setString(2, accountNumber);
+            pstmt.executeUpdate();
+        }
+        return total;
+    }
+    
+    private void insertTransaction(Connection connection, String accountNumber, String operation, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_SQL)) {
+            pstmt.setString(1, accountNumber);
+            pstmt.setString(2, operation);
+            pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.setDouble(4, amount);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    private void rollback(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Rollback error: " + e.getMessage());
+        }
+    }
+    
+    public String getStats() {
+        return String.format("accounts=%d slots=%d slotCredits=%d folds=%d withdrawFolds=%d",
+                ACCOUNTS.size(), SLOTS, slotCredits.get(), folds.get(), withdrawFolds.get());
+    }
+    
+    // Dừng thread nền và dồn lần cuối để Accounts.balance phản ánh số dư thật
+    public void close() {
+        folder.shutdownNow();
+        foldAll();
+        System.out.println("Hot accounts stopped: " + getStats());
+    }
+}
@@ -0,0 +1,95 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Latency Histogram
+ * Histogram kiểu HDR (log-linear): mỗi khoảng luỹ thừa 2 chia thành 16 bucket,
+ * sai số tương đối ~6%, bộ nhớ cố định, ghi không cần khoá (chỉ các phép cộng atomic).
+ * Giá trị tính bằng nano giây.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+    
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+    
+    // Giá trị lớn nhất thuộc bucket
+    static long valueOf(int index) {
+        int bucket = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if (bucket == 0) {
+            return sub;
+        }
+        int shift = bucket - 1;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+    
+    public long getCount() {
+        return totalCount.sum();
+    }
+    
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+    
+    public double getMeanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : (double) totalNanos.sum() / count;
+    }
+    
+    // percentile trong khoảng (0, 100]
+    public long getPercentileNanos(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(valueOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+    
+    // count=.. mean=..us p50=..us p99=..us p999=..us max=..us
+    public String summary() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                getCount(),
+                getMeanNanos() / 1000.0,
+                getPercentileNanos(50) / 1000.0,
+                getPercentileNanos(90) / 1000.0,
+                getPercentileNanos(99) / 1000.0,
+                getPercentileNanos(99.9) / 1000.0,
+                getMaxNanos() / 1000.0);
+    }
+}
@@ -0,0 +1,247 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Ledger Journal
+ * Nhật ký giao dịch ghi trên file ánh xạ bộ nhớ (memory-mapped), mỗi bản ghi có CRC32.
+ *
+ * Cấu trúc file:
+ *   Header (16 byte): MAGIC(int) | VERSION(int) | persistedSeq(long)
+ *   Bản ghi:          length(int) | crc32(int) | payload
+ *   Payload:          seq(long) | timestamp(long) | delta(double) | operation | accountNumber
+ *
+ * Khi đọc lại, dừng ở bản ghi có length = 0, sai CRC hoặc seq không tăng
+ * (phần còn sót lại từ trước lần quay vòng gần nhất).
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class LedgerJournal {
+    private static final int MAGIC = 0x4C444752; // "LDGR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int PERSISTED_SEQ_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean forceOnAppend;
+    private final Object persistLock = new Object();
+    
+    private int position = HEADER_SIZE;
+    private long lastSeq = 0;
+    private volatile long persistedSeq = 0;
+    
+    public LedgerJournal(Path path, int capacity, boolean forceOnAppend) throws IOException {
+        this.forceOnAppend = forceOnAppend;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(PERSISTED_SEQ_OFFSET, 0);
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.force();
+        }
+        persistedSeq = buffer.getLong(PERSISTED_SEQ_OFFSET);
+    }
+    
+    // Đọc lại toàn bộ bản ghi hợp lệ, trả về các bản ghi có seq > afterSeq
+    public synchronized List<Entry> recover(long afterSeq) {
+        List<Entry> entries = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        int pos = HEADER_SIZE;
+        long previousSeq = 0;
+        
+        while (pos + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(pos + RECORD_HEADER_SIZE, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                break;
+            }
+            Entry entry = Entry.decode(payload);
+            if (entry.seq <= previousSeq) {
+                break;
+            }
+            previousSeq = entry.seq;
+            if (entry.seq > afterSeq) {
+                entries.add(entry);
+            }
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        
+        position = pos;
+        lastSeq = Math.max(previousSeq, Math.max(afterSeq, persistedSeq));
+        if (persistedSeq < afterSeq) {
+            markPersisted(afterSeq);
+        }
+        return entries;
+    }
+    
+    // Ghi một bản ghi mới, trả về seq đã cấp
+    public synchronized long append(String accountNumber, String operation, double delta, long timestamp) {
+        byte[] payload = new Entry(lastSeq + 1, accountNumber, operation, delta, timestamp).encode();
+        ensureSpace(RECORD_HEADER_SIZE + payload.length);
+        return write(payload);
+    }
+    
+    // Hai vế của một chuyển khoản (TRANSFER_OUT rồi TRANSFER_IN) được ghi liền nhau,
+    // rewind không bao giờ chen giữa; trả về seq của TRANSFER_OUT
+    public synchronized long appendTransfer(String fromAccount, String toAccount, double amount, long timestamp) {
+        byte[] out = new Entry(lastSeq + 1, fromAccount, "TRANSFER_OUT", -amount, timestamp).encode();
+        byte[] in = new Entry(lastSeq + 2, toAccount, "TRANSFER_IN", amount, timestamp).encode();
+        ensureSpace(2 * RECORD_HEADER_SIZE + out.length + in.length);
+        long seq = write(out);
+        write(in);
+        return seq;
+    }
+    
+    // Chừa chỗ cho marker length = 0 phía sau bản ghi
+    private void ensureSpace(int size) {
+        if (position + size + 4 > buffer.capacity()) {
+            rewind();
+        }
+    }
+    
+    // payload đã được mã hoá với seq = lastSeq + 1
+    private long write(byte[] payload) {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(position + recordSize, 0);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // Ghi length cuối cùng: bản ghi chỉ "tồn tại" khi đã đầy đủ
+        buffer.putInt(position, payload.length);
+        
+        if (forceOnAppend) {
+            buffer.force(position, recordSize);
+        }
+        position += recordSize;
+        return ++lastSeq;
+    }
+    
+    // Journal đầy: chờ mọi bản ghi được lưu xuống CSDL rồi ghi lại từ đầu
+    private void rewind() {
+        synchronized (persistLock) {
+            while (persistedSeq < lastSeq) {
+                try {
+                    persistLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for journal space");
+                }
+            }
+        }
+        position = HEADER_SIZE;
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.force();
+    }
+    
+    // Được gọi bởi thread ghi CSDL sau khi commit
+    public void markPersisted(long seq) {
+        synchronized (persistLock) {
+            if (seq > persistedSeq) {
+                persistedSeq = seq;
+                buffer.putLong(PERSISTED_SEQ_OFFSET, seq);
+            }
+            persistLock.notifyAll();
+        }
+    }
+    
+    public long getPersistedSeq() {
+        return persistedSeq;
+    }
+    
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+    
+    public static class Entry {
+        private final long seq;
+        private final String accountNumber;
+        private final String operation;
+        private final double delta;
+        private final long timestamp;
+        
+        public Entry(long seq, String accountNumber, String operation, double delta, long timestamp) {
+            this.seq = seq;
+            this.accountNumber = accountNumber;
+            this.operation = operation;
+            this.delta = delta;
+            this.timestamp = timestamp;
+        }
+        
+        public long getSeq() {
+            return seq;
+        }
+        
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+        
+        public String getOperation() {
+            return operation;
+        }
+        
+        public double getDelta() {
+            return delta;
+        }
+        
+        public double getAmount() {
+            return Math.abs(delta);
+        }
+        
+        public long getTimestamp() {
+            return timestamp;
+        }
+        
+        byte[] encode() {
+            byte[] op = operation.getBytes(StandardCharsets.UTF_8);
+            byte[] account = accountNumber.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer out = ByteBuffer.allocate(8 + 8 + 8 + 2 + op.length + 2 + account.length);
+            out.putLong(seq).putLong(timestamp).putDouble(delta);
+            out.putShort((short) op.length).put(op);
+            out.putShort((short) account.length).put(account);
+            return out.array();
+        }
+        
+        static Entry decode(byte[] payload) {
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            long seq = in.getLong();
+            long timestamp = in.getLong();
+            double delta = in.getDouble();
+            byte[] op = new byte[in.getShort()];
+            in.get(op);
+            byte[] account = new byte[in.getShort()];
+            in.get(account);
+            return new Entry(seq, new String(account, StandardCharsets.UTF_8),
+                    new String(op, StandardCharsets.UTF_8), delta, timestamp);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Load Generator
+ * Tạo tải không giao diện: mở N phiên đồng thời, đăng nhập bằng các tài khoản mẫu,
+ * gửi hỗn hợp DEPOSIT/WITHDRAW/BALANCE/REPORT với tốc độ mục tiêu (open-loop),
+ * sau đó in và ghi ra file bản tóm tắt JSON để so sánh giữa các bản build.
+ *
+ * Open-loop: lệnh được lên lịch theo thời điểm dự kiến, không chờ phản hồi trước đó.
+ * Độ trễ tính từ thời điểm dự kiến gửi, nên server chậm không làm giảm tải (tránh coordinated omission).
+ * Lệnh chưa có phản hồi khi mất kết nối hoặc hết thời gian chờ được tính là lỗi;
+ * throughput tính trên cửa sổ gửi, không gồm thời gian chờ phản hồi cuối.
+ *
+ * Chạy: java EBankingTCP.Client load sessions=100 rate=2000 duration=60 \
+ *          mix=DEPOSIT:30,WITHDRAW:20,BALANCE:40,REPORT:10 output=load-summary.json
+ */
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator {
+    private static final String DEFAULT_ACCOUNTS = "user1:password123,user2:password456,admin:admin888";
+    private static final String DEFAULT_MIX = "DEPOSIT:30,WITHDRAW:20,BALANCE:40,REPORT:10";
+    
+    private final String host;
+    private final int port;
+    private final int sessionCount;
+    private final double rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final String[] opTable;
+    private final List<String[]> accounts;
+    private final String output;
+    
+    private final List<Session> sessions = new ArrayList<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder unanswered = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private volatile long measureFrom;
+    
+    public LoadGenerator(Map<String, String> options) {
+        host = options.getOrDefault("host", "127.0.0.1");
+        port = Integer.parseInt(options.getOrDefault("port", String.valueOf(Server.PORT)));
+        sessionCount = Integer.parseInt(options.getOrDefault("sessions", "50"));
+        rate = Double.parseDouble(options.getOrDefault("rate", "500"));
+        durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "0"));
+        output = options.getOrDefault("output", "load-summary.json");
+        opTable = buildOpTable(options.getOrDefault("mix", DEFAULT_MIX));
+        
+        accounts = new ArrayList<>();
+        int seeded = Integer.parseInt(options.getOrDefault("seeded", "0"));
+        if (seeded > 0) {
+            // Tài khoản do DatabaseSetup scale sinh ra, mỗi phiên một tài khoản ngẫu nhiên
+            Random random = new Random();
+            for (int i = 0; i < sessionCount; i++) {
+                String username = String.format(DatabaseSetup.SEED_USERNAME_FORMAT, 1 + random.nextInt(seeded));
+                accounts.add(new String[] { username, DatabaseSetup.SEED_PASSWORD });
+            }
+        } else {
+            for (String account : options.getOrDefault("accounts", DEFAULT_ACCOUNTS).split(",")) {
+                accounts.add(account.split(":", 2));
+            }
+        }
+    }
+    
+    // Bảng 100 phần tử theo tỉ lệ mix, chọn ngẫu nhiên một phần tử cho mỗi lệnh
+    private static String[] buildOpTable(String mix) {
+        List<String> table = new ArrayList<>();
+        int total = 0;
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String item : mix.split(",")) {
+            String[] kv = item.split(":");
+            int weight = Integer.parseInt(kv[1]);
+            weights.put(kv[0].toUpperCase(), weight);
+            total += weight;
+        }
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            int slots = Math.max(1, Math.round(entry.getValue() * 100f / total));
+            for (int i = 0; i < slots; i++) {
+                table.add(entry.getKey());
+            }
+        }
+        return table.toArray(new String[0]);
+    }
+    
+    private static String commandFor(String op) {
+        switch (op) {
+            case "DEPOSIT":
+                return "DEPOSIT 10";
+            case "WITHDRAW":
+                return "WITHDRAW 10";
+            case "REPORT":
+                return "REPORT * * 20";
+            default:
+                return op;
+        }
+    }
+    
+    public void run() throws InterruptedException {
+        System.out.println("Opening " + sessionCount + " sessions to " + host + ":" + port + "...");
+        for (int i = 0; i < sessionCount; i++) {
+            String[] account = accounts.get(i % accounts.size());
+            try {
+                Session session = new Session(account[0], account[1]);
+                sessions.add(session);
+                session.start();
+            } catch (IOException e) {
+                connectionErrors.increment();
+                System.err.println("Session " + i + " failed: " + e.getMessage());
+            }
+        }
+        if (sessions.isEmpty()) {
+            System.err.println("No session could log in.");
+            return;
+        }
+        
+        System.out.printf("Running %.0f ops/s for %ds (warmup %ds) on %d sessions%n",
+                rate, durationSeconds, warmupSeconds, sessions.size());
+        
+        // Lịch gửi cố định: lệnh thứ k được dự kiến gửi tại start + k / rate
+        long intervalNanos = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + durationSeconds * 1_000_000_000L;
+        Random random = new Random();
+        long k = 0;
+        while (true) {
+            long intended = start + k * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Session session = sessions.get((int) (k % sessions.size()));
+            String op = opTable[random.nextInt(opTable.length)];
+            session.send(op, intended);
+            k++;
+        }
+        
+        // Chờ phản hồi cho các lệnh còn dở; lệnh vẫn chưa có phản hồi bị tính là lỗi
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Session session : sessions) {
+            session.awaitDrained(drainDeadline);
+            session.close();
+            session.failUnanswered();
+        }
+        
+        // Thông lượng trên cửa sổ gửi, không tính thời gian chờ phản hồi cuối
+        String summary = summary((end - measureFrom) / 1e9);
+        System.out.println(summary);
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            out.println(summary);
+        } catch (IOException e) {
+            System.err.println("Cannot write summary: " + e.getMessage());
+        }
+    }
+    
+    private void record(String op, long intended, String response) {
+        if (intended < measureFrom) {
+            return;
+        }
+        long latency = System.nanoTime() - intended;
+        overall.record(latency);
+        latencies.computeIfAbsent(op, key -> new LatencyHistogram()).record(latency);
+        completed.increment();
+        if (response == null || response.startsWith("-ERR")) {
+            errors.computeIfAbsent(op, key -> new LongAdder()).increment();
+        }
+    }
+    
+    // Lệnh đã gửi trong cửa sổ đo nhưng không bao giờ nhận được phản hồi
+    private void recordUnanswered(InFlight request) {
+        if (request.intended < measureFrom) {
+            return;
+        }
+        unanswered.increment();
+        errors.computeIfAbsent(request.op, key -> new LongAdder()).increment();
+    }
+    
+    // JSON một dòng, khoá cố định để dễ diff giữa các bản build
+    private String summary(double elapsedSeconds) {
+        long done = completed.sum();
+        long errorTotal = 0;
+        StringBuilder ops = new StringBuilder();
+        Set<String> opNames = new TreeSet<>(latencies.keySet());
+        opNames.addAll(errors.keySet());
+        for (String op : opNames) {
+            LongAdder opErrors = errors.get(op);
+            long opErrorCount = opErrors != null ? opErrors.sum() : 0;
+            errorTotal += opErrorCount;
+            LatencyHistogram h = latencies.computeIfAbsent(op, key -> new LatencyHistogram());
+            if (ops.length() > 0) {
+                ops.append(',');
+            }
+            ops.append(String.format(Locale.ROOT, "\"%s\":{\"count\":%d,\"errors\":%d,%s}",
+                    op, h.getCount(), opErrorCount, latencyJson(h)));
+        }
+        // Lệnh không có phản hồi vẫn tính vào mẫu số của errorRate
+        long accounted = done + unanswered.sum();
+        return String.format(Locale.ROOT,
+                "{\"sessions\":%d,\"targetRate\":%.1f,\"durationSec\":%d,\"sent\":%d,\"completed\":%d,\"unanswered\":%d,"
+                        + "\"throughput\":%.1f,\"errors\":%d,\"errorRate\":%.5f,\"connectionErrors\":%d,%s,\"ops\":{%s}}",
+                sessions.size(), rate, durationSeconds, sent.sum(), done, unanswered.sum(),
+                done / Math.max(elapsedSeconds, 1e-9), errorTotal,
+                accounted == 0 ? 0.0 : (double) errorTotal / accounted,
+                connectionErrors.sum(), latencyJson(overall), ops);
+    }
+    
+    private static String latencyJson(LatencyHistogram h) {
+        return String.format(Locale.ROOT,
+                "\"latencyUs\":{\"mean\":%.1f,\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}",
+                h.getMeanNanos() / 1000.0,
+                h.getPercentileNanos(50) / 1000.0,
+                h.getPercentileNanos(99) / 1000.0,
+                h.getPercentileNanos(99.9) / 1000.0,
+                h.getMaxNanos() / 1000.0);
+    }
+    
+    // Một lệnh đã gửi, chờ phản hồi
+    private static class InFlight {
+        // Đánh dấu QUIT khi đóng phiên: thread đọc dừng khi gặp, không tính vào số liệu
+        private static final InFlight QUIT = new InFlight("QUIT", 0);
+        
+        private final String op;
+        private final long intended;
+        
+        InFlight(String op, long intended) {
+            this.op = op;
+            this.intended = intended;
+        }
+    }
+    
+    /*
+     * Một kết nối: thread lập lịch ghi lệnh, thread đọc ghép phản hồi theo thứ tự FIFO
+     */
+    private class Session implements Runnable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private final BlockingQueue<InFlight> inFlight = new LinkedBlockingQueue<>();
+        private final AtomicLong outstanding = new AtomicLong();
+        private final Thread reader;
+        
+        Session(String username, String password) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+            
+            in.readLine(); // banner
+            if (!request("USER " + username).startsWith("+OK")
+                    || !request("PASSWORD " + password).startsWith("+OK")) {
+                socket.close();
+                throw new IOException("Login failed for " + username);
+            }
+            reader = new Thread(this, "load-reader-" + username);
+            reader.setDaemon(true);
+        }
+        
+        private String request(String command) throws IOException {
+            out.println(command);
+            out.flush();
+            String response = in.readLine();
+            if (response == null) {
+                throw new IOException("Server closed connection");
+            }
+            return response;
+        }
+        
+        void start() {
+            reader.start();
+        }
+        
+        synchronized void send(String op, long intended) {
+            inFlight.add(new InFlight(op, intended));
+            outstanding.incrementAndGet();
+            out.println(commandFor(op));
+            out.flush();
+            sent.increment();
+        }
+        
+        @Override
+        public void run() {
+            InFlight current = null;
+            try {
+                String response;
+                while ((response = in.readLine()) != null) {
+                    current = inFlight.take();
+                    if (current == InFlight.QUIT) {
+                        current = null;
+                        break;
+                    }
+                    if (Client.isMultiLine(current.op, response)) {
+                        String line;
+                        String previous = null;
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            previous = line;
+                        }
+                        // REPORT lỗi giữa chừng: dòng "-ERR" ngay trước "."
+                        if (previous != null && previous.startsWith("-ERR")) {
+                            response = previous;
+                        }
+                    }
+                    record(current.op, current.intended, response);
+                    current = null;
+                    outstanding.decrementAndGet();
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    connectionErrors.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Mất kết nối: lệnh đang đọc dở và các lệnh còn chờ không bao giờ có phản hồi
+            if (current != null) {
+                recordUnanswered(current);
+            }
+            failUnanswered();
+        }
+        
+        void awaitDrained(long deadlineNanos) {
+            while (outstanding.get() > 0 && reader.isAlive() && System.nanoTime() < deadlineNanos) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+        
+        // Gọi từ thread đọc khi mất kết nối và từ run() sau khi đóng phiên; poll() nên mỗi lệnh chỉ tính một lần
+        void failUnanswered() {
+            InFlight request;
+            while ((request = inFlight.poll()) != null) {
+                if (request != InFlight.QUIT) {
+                    recordUnanswered(request);
+                }
+            }
+        }
+        
+        void close() {
+            try {
+                synchronized (this) {
+                    inFlight.add(InFlight.QUIT);
+                    out.println("QUIT");
+                    out.flush();
+                }
+                // Thread đọc ghi nhận các phản hồi còn lại và dừng ở "+OK Goodbye"
+                reader.join(1000);
+                // Server không trả lời QUIT: đóng socket để readLine() trong thread đọc thoát ra
+                socket.close();
+                reader.join(1000);
+            } catch (IOException e) {
+                // bỏ qua khi đóng
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    // key=value ...
+    public static Map<String, String> parseOptions(String[] args, int from) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length == 2) {
+                options.put(kv[0], kv[1]);
+            }
+        }
+        return options;
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator(parseOptions(args, 0)).run();
+    }
+}
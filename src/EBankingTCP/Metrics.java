@@ -0,0 +1,143 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Metrics
+ * Thống kê thời gian xử lý theo lệnh (cmd.*), theo phương thức DatabaseManager (db.*),
+ * thời gian mượn kết nối (pool.*) và ghi socket (io.*), số lỗi, số phiên đang mở.
+ * Xem bằng lệnh STATS (chỉ admin) hoặc file snapshot ghi định kỳ.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics {
+    private static final String STATS_FILE = System.getProperty("ebanking.stats.file", "./ebanking-stats.log");
+    private static final long DUMP_INTERVAL_SECONDS = Long.getLong("ebanking.stats.intervalSec", 60);
+    private static final Set<String> ADMINS = new HashSet<>(Arrays.asList(
+            System.getProperty("ebanking.admins", "admin").split(",")));
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+            "USER", "PASSWORD", "RESUME", "DEPOSIT", "WITHDRAW", "TRANSFER", "BALANCE", "REPORT", "STATS", "QUIT"));
+    
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private static final AtomicInteger activeSessions = new AtomicInteger();
+    private static final LongAdder totalSessions = new LongAdder();
+    private static final long startedAt = System.currentTimeMillis();
+    private static ScheduledExecutorService dumper;
+    
+    private Metrics() {
+    }
+    
+    public static boolean isAdmin(String username) {
+        return username != null && ADMINS.contains(username);
+    }
+    
+    // Ghi thời gian xử lý một lệnh; lệnh lạ được gộp vào cmd.OTHER để số histogram không tăng vô hạn
+    public static void recordCommand(String cmd, long nanos, boolean error) {
+        String name = "cmd." + (COMMANDS.contains(cmd) ? cmd : "OTHER");
+        record(name, nanos);
+        if (error) {
+            errors.computeIfAbsent(name, k -> new LongAdder()).increment();
+        }
+    }
+    
+    public static void record(String name, long nanos) {
+        LatencyHistogram histogram = timers.get(name);
+        if (histogram == null) {
+            histogram = timers.computeIfAbsent(name, k -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+    
+    public static void recordError(String name) {
+        errors.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+    
+    public static void sessionOpened() {
+        activeSessions.incrementAndGet();
+        totalSessions.increment();
+    }
+    
+    public static void sessionClosed() {
+        activeSessions.decrementAndGet();
+    }
+    
+    public static int getActiveSessions() {
+        return activeSessions.get();
+    }
+    
+    // Mỗi dòng một chỉ số, theo thứ tự tên
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("time=").append(LocalDateTime.now())
+          .append(" uptimeSec=").append((System.currentTimeMillis() - startedAt) / 1000).append('\n');
+        sb.append("sessions active=").append(activeSessions.get())
+          .append(" total=").append(totalSessions.sum())
+          .append(" resumeTokens=").append(SessionTokens.getInstance().getActiveCount()).append('\n');
+        
+        ConnectionPool pool = ConnectionPool.getInstance();
+        sb.append("pool active=").append(pool.getActiveCount())
+          .append(" idle=").append(pool.getIdleCount())
+          .append(" open=").append(pool.getTotalCount())
+          .append(" max=").append(pool.getMaxSize()).append('\n');
+        
+        if (GroupCommitter.isEnabled()) {
+            sb.append("groupCommit ").append(GroupCommitter.getInstance().getStats()).append('\n');
+        }
+        if (AccountLedger.isEnabled()) {
+            sb.append("ledger pending=").append(AccountLedger.getInstance().getPendingCount()).append('\n');
+        }
+        if (HotAccounts.isEnabled()) {
+            sb.append("hotAccounts ").append(HotAccounts.getInstance().getStats()).append('\n');
+        }
+        
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(timers).entrySet()) {
+            LongAdder errorCount = errors.get(entry.getKey());
+            sb.append(entry.getKey()).append(' ')
+              .append(entry.getValue().summary())
+              .append(" errors=").append(errorCount != null ? errorCount.sum() : 0)
+              .append('\n');
+        }
+        return sb.toString();
+    }
+    
+    // Ghi snapshot định kỳ ra file (ebanking.stats.intervalSec = 0 để tắt)
+    public static synchronized void startDumper() {
+        if (dumper != null || DUMP_INTERVAL_SECONDS <= 0) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dumper");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(Metrics::dump, DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public static synchronized void stopDumper() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+            dump();
+        }
+    }
+    
+    private static void dump() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(STATS_FILE, true))) {
+            out.print(snapshot());
+            out.println();
+        } catch (IOException e) {
+            System.err.println("Error writing stats file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package EBankingTCP;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * E-Banking System - NIO Server
+ * Một thread Selector giữ toàn bộ kết nối, giải mã từng dòng lệnh,
+ * chỉ giao lệnh hoàn chỉnh cho một worker pool nhỏ.
+ * Phiên rảnh không chiếm thread; kết nối CSDL chỉ được mượn từ pool khi xử lý lệnh.
+ * Client gửi liên tục mà không đọc phản hồi bị chặn lại: ngừng đọc khi hàng lệnh hoặc hàng phản hồi đầy,
+ * và mỗi lượt worker chỉ xử lý tối đa MAX_COMMANDS_PER_RUN lệnh trước khi nhường cho phiên khác.
+ */
+
+public class NioServer {
+    private static final int WORKERS = Integer.getInteger("ebanking.nio.workers",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final int READ_BUFFER_SIZE = 512;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int WRITE_CHUNK_SIZE = 8192;
+    private static final int MAX_QUEUED_COMMANDS = 256;
+    private static final int MAX_QUEUED_OUTPUT = 256 * 1024;
+    private static final int MAX_COMMANDS_PER_RUN = 64;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    // Đánh dấu dòng quá dài trong hàng lệnh; so sánh theo tham chiếu nên không trùng với lệnh client gửi
+    private static final String LINE_TOO_LONG = new String("-ERR Line too long");
+    
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private final Queue<NioSession> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    
+    public NioServer() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(Server.PORT), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            workers = Executors.newFixedThreadPool(WORKERS);
+            ConnectionPool.getInstance();
+            Metrics.startDumper();
+            if (AccountLedger.isEnabled()) {
+                AccountLedger.getInstance();
+            }
+            if (HotAccounts.isEnabled()) {
+                HotAccounts.getInstance();
+            }
+            System.out.println("E-Banking NIO Server started on port " + Server.PORT
+                    + " (" + WORKERS + " workers)");
+            System.out.println("Waiting for clients...");
+        } catch (IOException e) {
+            System.err.println("Server startup error: " + e.getMessage());
+            selector = null;
+        }
+    }
+    
+    public void start() {
+        if (selector == null) {
+            return;
+        }
+        running = true;
+        try {
+            while (running) {
+                selector.select();
+                
+                // Bật OP_WRITE cho các phiên vừa có phản hồi từ worker
+                NioSession pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    pending.enableWrite();
+                }
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            NioSession session = (NioSession) key.attachment();
+                            if (key.isReadable()) {
+                                session.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof NioSession) {
+                            ((NioSession) attachment).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Selector error: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        
+        NioSession session = new NioSession(channel);
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        
+        // Gửi banner chào mừng
+        session.enqueue(Server.BANNER);
+        session.enableWrite();
+    }
+    
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+    
+    private void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing server socket: " + e.getMessage());
+        }
+        if (AccountLedger.isEnabled()) {
+            AccountLedger.getInstance().close();
+        }
+        if (GroupCommitter.isEnabled()) {
+            GroupCommitter.getInstance().close();
+        }
+        if (HotAccounts.isEnabled()) {
+            HotAccounts.getInstance().close();
+        }
+        Metrics.stopDumper();
+        ConnectionPool.getInstance().close();
+    }
+    
+    /*
+     * Trạng thái của một kết nối.
+     * Thread Selector: đọc, tách dòng, ghi.
+     * Worker: xử lý lệnh tuần tự (mỗi phiên tối đa một worker tại một thời điểm).
+     */
+    private class NioSession implements Runnable {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        private boolean discardingLine = false;
+        
+        private final Queue<String> commands = new ConcurrentLinkedQueue<>();
+        private final Queue<ByteBuffer> outQueue = new ConcurrentLinkedQueue<>();
+        // Kích thước hai hàng đợi (số lệnh / số byte), dùng để chặn client không đọc phản hồi
+        private final AtomicInteger queuedCommands = new AtomicInteger();
+        private final AtomicInteger queuedOutput = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+        private volatile boolean closeAfterWrite = false;
+        
+        // Chỉ được truy cập từ worker đang chạy phiên
+        private CommandProcessor processor;
+        private final PrintWriter responseWriter = new PrintWriter(new ResponseWriter());
+        
+        NioSession(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        // === Thread Selector ===
+        
+        void read() throws IOException {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    if (discardingLine) {
+                        discardingLine = false;
+                    } else {
+                        commands.add(decodeLine());
+                        queuedCommands.incrementAndGet();
+                    }
+                    lineBuffer.reset();
+                } else if (!discardingLine) {
+                    lineBuffer.write(b);
+                    if (lineBuffer.size() > MAX_LINE_LENGTH) {
+                        lineBuffer.reset();
+                        discardingLine = true;
+                        // Worker trả lỗi theo đúng thứ tự với các lệnh đã đọc trước đó
+                        commands.add(LINE_TOO_LONG);
+                        queuedCommands.incrementAndGet();
+                    }
+                }
+            }
+            readBuffer.clear();
+            
+            if (!commands.isEmpty()) {
+                schedule();
+            }
+            if (readPaused()) {
+                updateInterest();
+            }
+        }
+        
+        // Ngừng đọc khi đã có quá nhiều lệnh chờ xử lý hoặc phản hồi chưa gửi được
+        private boolean readPaused() {
+            return queuedCommands.get() >= MAX_QUEUED_COMMANDS || outputBackedUp();
+        }
+        
+        private boolean outputBackedUp() {
+            return queuedOutput.get() >= MAX_QUEUED_OUTPUT;
+        }
+        
+        private String decodeLine() {
+            byte[] bytes = lineBuffer.toByteArray();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return new String(bytes, 0, length, CHARSET);
+        }
+        
+        void write() throws IOException {
+            // Đọc cờ trước khi gửi: phản hồi QUIT đã nằm trong outQueue trước khi cờ được bật
+            boolean quitting = closeAfterWrite;
+            while (!outQueue.isEmpty()) {
+                // Gathering write: gửi mọi khối đang chờ trong một system call
+                ByteBuffer[] buffers = outQueue.toArray(new ByteBuffer[0]);
+                long start = System.nanoTime();
+                channel.write(buffers);
+                Metrics.record("io.write", System.nanoTime() - start);
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer.hasRemaining()) {
+                        updateInterest();
+                        return; // Socket đầy, chờ OP_WRITE lần sau
+                    }
+                    outQueue.poll();
+                    queuedOutput.addAndGet(-buffer.limit());
+                }
+            }
+            if (quitting) {
+                close();
+                return;
+            }
+            updateInterest();
+            // Worker dừng vì phản hồi dồn lại: chạy tiếp khi đã gửi bớt
+            if (!outputBackedUp() && !commands.isEmpty()) {
+                schedule();
+            }
+        }
+        
+        void enableWrite() {
+            if (key.isValid()) {
+                key.interestOps(readPaused() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+        
+        // OP_READ trừ khi đang bị chặn, OP_WRITE khi còn phản hồi chờ gửi
+        private void updateInterest() {
+            if (key.isValid()) {
+                int ops = readPaused() ? 0 : SelectionKey.OP_READ;
+                if (!outQueue.isEmpty()) {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(ops);
+            }
+        }
+        
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                System.out.println("Client disconnected: " + channel.getRemoteAddress());
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+            // Giải phóng CommandProcessor trên worker
+            schedule();
+        }
+        
+        // === Worker ===
+        
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+        
+        @Override
+        public void run() {
+            try {
+                String command;
+                boolean quit = false;
+                int processed = 0;
+                while (!closed && !closeAfterWrite && !quit && processed < MAX_COMMANDS_PER_RUN
+                        && !outputBackedUp() && (command = commands.poll()) != null) {
+                    queuedCommands.decrementAndGet();
+                    processed++;
+                    if (command == LINE_TOO_LONG) {
+                        responseWriter.println(LINE_TOO_LONG);
+                        continue;
+                    }
+                    if (processor == null) {
+                        processor = new CommandProcessor(new DatabaseManager());
+                    }
+                    processor.processCommand(command.trim(), responseWriter);
+                    
+                    // Nếu là QUIT thì đóng kết nối sau khi gửi xong phản hồi
+                    quit = command.equalsIgnoreCase("QUIT");
+                }
+                // Phản hồi của cả loạt lệnh vừa đọc được gộp thành một lần ghi
+                responseWriter.flush();
+                // Chỉ bật cờ khi phản hồi QUIT đã nằm trong outQueue
+                if (quit) {
+                    closeAfterWrite = true;
+                }
+                // Kể cả khi không có phản hồi: thread Selector bật lại OP_READ nếu hàng lệnh đã vơi
+                if (processed > 0 && !closed) {
+                    requestWrite();
+                }
+                if (closed && processor != null) {
+                    processor.close();
+                    processor = null;
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            
+            // Lệnh mới có thể đến trong lúc thoát vòng lặp, hoặc đã hết lượt: xếp lại cuối hàng của worker pool
+            if ((!closed && !closeAfterWrite && !outputBackedUp() && !commands.isEmpty())
+                    || (closed && processor != null)) {
+                schedule();
+            }
+        }
+        
+        void enqueue(String response) {
+            addOutput(ByteBuffer.wrap((response + System.lineSeparator()).getBytes(CHARSET)));
+        }
+        
+        private void addOutput(ByteBuffer buffer) {
+            queuedOutput.addAndGet(buffer.limit());
+            outQueue.add(buffer);
+        }
+        
+        // Nhờ thread Selector bật OP_WRITE
+        private void requestWrite() {
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+        
+        /*
+         * Gom phản hồi thành từng khối WRITE_CHUNK_SIZE ký tự.
+         * Phản hồi dài (REPORT) được gửi dần theo khối trong khi vẫn đang đọc CSDL.
+         */
+        private class ResponseWriter extends Writer {
+            private final StringBuilder pending = new StringBuilder();
+            
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                pending.append(cbuf, off, len);
+                if (pending.length() >= WRITE_CHUNK_SIZE) {
+                    flush();
+                    requestWrite();
+                }
+            }
+            
+            @Override
+            public void flush() {
+                if (pending.length() > 0) {
+                    addOutput(ByteBuffer.wrap(pending.toString().getBytes(CHARSET)));
+                    pending.setLength(0);
+                }
+            }
+            
+            @Override
+            public void close() {
+                flush();
+            }
+        }
+    }
+    
+    public static void main(String[] args) {
+        NioServer server = new NioServer();
+        server.start();
+    }
+}
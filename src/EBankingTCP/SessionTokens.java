@@ -0,0 +1,146 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Session Tokens
+ * Cấp token khôi phục phiên sau khi PASSWORD thành công; lệnh RESUME <token> khôi phục
+ * đăng nhập từ bảng phiên trong bộ nhớ, không cần truy vấn CSDL.
+ *
+ * Token = id.hạn.chữ ký, id ngẫu nhiên 128 bit, chữ ký HMAC-SHA256 trên "id.hạn".
+ * Token hết hạn sau ebanking.session.ttlSec giây và bị thu hồi khi QUIT.
+ * Khoá ký sinh ngẫu nhiên khi khởi động (hoặc ebanking.session.secret), nên token không còn
+ * hiệu lực sau khi server khởi động lại - bảng phiên cũng chỉ nằm trong bộ nhớ.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class SessionTokens {
+    private static final long TTL_MILLIS = Long.getLong("ebanking.session.ttlSec", 1800) * 1000;
+    private static final long PURGE_INTERVAL_MILLIS = 60_000;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    
+    private static SessionTokens instance;
+    
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile long nextPurge = System.currentTimeMillis() + PURGE_INTERVAL_MILLIS;
+    
+    private SessionTokens() {
+        String secret = System.getProperty("ebanking.session.secret");
+        byte[] keyBytes;
+        if (secret != null) {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            keyBytes = new byte[32];
+            random.nextBytes(keyBytes);
+        }
+        key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+    }
+    
+    public static synchronized SessionTokens getInstance() {
+        if (instance == null) {
+            instance = new SessionTokens();
+        }
+        return instance;
+    }
+    
+    // Cấp token cho phiên vừa đăng nhập
+    public String issue(String username, String accountNumber) {
+        long now = System.currentTimeMillis();
+        purgeExpired(now);
+        
+        byte[] idBytes = new byte[16];
+        random.nextBytes(idBytes);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+        long expiresAt = now + TTL_MILLIS;
+        
+        sessions.put(id, new Session(username, accountNumber, expiresAt));
+        String payload = id + "." + expiresAt;
+        return payload + "." + sign(payload);
+    }
+    
+    // Trả về phiên nếu token hợp lệ, chưa hết hạn và chưa bị thu hồi; ngược lại null
+    public Session resume(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        String payload = parts[0] + "." + parts[1];
+        // So sánh thời gian hằng để không lộ chữ ký đúng qua thời gian phản hồi
+        if (!MessageDigest.isEqual(sign(payload).getBytes(StandardCharsets.US_ASCII),
+                                   parts[2].getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            sessions.remove(parts[0]);
+            return null;
+        }
+        return sessions.get(parts[0]);
+    }
+    
+    // Thu hồi token (QUIT)
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token.split("\\.")[0]);
+        }
+    }
+    
+    public int getActiveCount() {
+        return sessions.size();
+    }
+    
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign session token: " + e.getMessage(), e);
+        }
+    }
+    
+    // Dọn phiên hết hạn, tối đa mỗi phút một lần
+    private void purgeExpired(long now) {
+        if (now < nextPurge) {
+            return;
+        }
+        nextPurge = now + PURGE_INTERVAL_MILLIS;
+        sessions.values().removeIf(session -> session.expiresAt < now);
+    }
+    
+    public static class Session {
+        private final String username;
+        private final String accountNumber;
+        private final long expiresAt;
+        
+        Session(String username, String accountNumber, long expiresAt) {
+            this.username = username;
+            this.accountNumber = accountNumber;
+            this.expiresAt = expiresAt;
+        }
+        
+        public String getUsername() {
+            return username;
+        }
+        
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Striped Locks
+ * Mảng khoá cố định, mỗi số tài khoản được băm vào một khoá.
+ * Các tài khoản khác stripe không chặn nhau, bộ nhớ không tăng theo số tài khoản.
+ */
+
+import java.util.concurrent.locks.ReentrantLock;
+
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+    
+    public StripedLocks(int stripes) {
+        // Làm tròn lên luỹ thừa của 2 để dùng phép AND thay cho phép chia
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    public int stripeOf(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & (locks.length - 1);
+    }
+    
+    public ReentrantLock lockFor(String key) {
+        return locks[stripeOf(key)];
+    }
+    
+    public void lock(String key) {
+        lockFor(key).lock();
+    }
+    
+    public void unlock(String key) {
+        lockFor(key).unlock();
+    }
+    
+    // Khoá hai key theo thứ tự chỉ số stripe tăng dần: mọi thread lấy khoá theo cùng một
+    // thứ tự toàn cục nên không thể deadlock; hai key cùng stripe chỉ khoá một lần
+    public void lockBoth(String a, String b) {
+        int i = stripeOf(a);
+        int j = stripeOf(b);
+        locks[Math.min(i, j)].lock();
+        if (i != j) {
+            locks[Math.max(i, j)].lock();
+        }
+    }
+    
+    public void unlockBoth(String a, String b) {
+        int i = stripeOf(a);
+        int j = stripeOf(b);
+        if (i != j) {
+            locks[Math.max(i, j)].unlock();
+        }
+        locks[Math.min(i, j)].unlock();
+    }
+}
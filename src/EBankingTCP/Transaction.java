@@ -59,7 +59,26 @@ public class Transaction implements Serializable {
     
     // Format for display
     public String toDisplayFormat() {
-        String op = operation.equals("DEPOSIT") ? "GUI" : "RUT";
+        String op;
+        switch (operation) {
+            case "DEPOSIT":
+                op = "GUI";
+                break;
+            case "TRANSFER_OUT":
+                op = "CHUYEN";
+                break;
+            case "TRANSFER_IN":
+                op = "NHAN";
+                break;
+            case "INTEREST":
+                op = "LAI";
+                break;
+            case "FEE":
+                op = "PHI";
+                break;
+            default:
+                op = "RUT";
+        }
         return String.format("%s\t|| %s\t|| %s\t|| %.0f", 
                            accountNumber, 
                            transactionDate.toLocalDate(),
@@ -0,0 +1,433 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Transaction Archive
+ * Lưu trữ giao dịch cũ ra file để bảng Transactions chỉ còn dữ liệu gần đây.
+ *
+ * Mỗi tháng một file segment chỉ ghi nối (transactions-yyyy-MM.seg) và một file chỉ mục (.idx):
+ * - Segment gồm các block nén deflate, mỗi block chứa giao dịch của MỘT tài khoản (mới nhất trước)
+ * - Mỗi dòng chỉ mục: số tài khoản, vị trí, độ dài block, số bản ghi, thời gian nhỏ/lớn nhất
+ * - File watermark chứa mốc thời gian: mọi giao dịch trước mốc đã được chuyển ra archive
+ *
+ * Job lưu trữ: java EBankingTCP.TransactionArchive [số ngày giữ lại trong bảng, mặc định 90]
+ * Mỗi tháng: block và chỉ mục được fsync, watermark tiến tới cuối tháng, rồi mới commit lệnh xoá khỏi CSDL;
+ * nếu job dừng giữa chừng, giao dịch có thể nằm ở cả hai nơi - REPORT loại trùng theo id.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class TransactionArchive {
+    private static final Path ARCHIVE_DIR = Paths.get(System.getProperty("ebanking.archive.dir", "./archive"));
+    private static final int HORIZON_DAYS = Integer.getInteger("ebanking.archive.horizonDays", 90);
+    private static final long REFRESH_INTERVAL_MS = 5000;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    
+    private static TransactionArchive instance;
+    
+    // tháng (yyyy-MM) -> số tài khoản -> các block
+    private volatile Map<String, Map<String, List<Block>>> index = new HashMap<>();
+    private volatile long watermark;
+    private volatile long watermarkModified = -1;
+    private volatile long nextRefresh;
+    
+    private TransactionArchive() {
+        refreshIfChanged();
+    }
+    
+    public static synchronized TransactionArchive getInstance() {
+        if (instance == null) {
+            instance = new TransactionArchive();
+        }
+        return instance;
+    }
+    
+    // true nếu khoảng thời gian bắt đầu từ fromMillis chạm vào phần đã lưu trữ
+    public boolean covers(long fromMillis) {
+        refreshIfChanged();
+        return fromMillis < watermark;
+    }
+    
+    // Job lưu trữ chạy ở tiến trình khác: nạp lại chỉ mục khi file watermark thay đổi (kiểm tra tối đa mỗi 5 giây).
+    // So cả giá trị lẫn thời gian sửa vì job có thể ghi watermark nhiều lần trong cùng một tick của mtime.
+    private void refreshIfChanged() {
+        long now = System.currentTimeMillis();
+        if (now < nextRefresh) {
+            return;
+        }
+        synchronized (this) {
+            if (now < nextRefresh) {
+                return;
+            }
+            nextRefresh = now + REFRESH_INTERVAL_MS;
+            Path watermarkFile = ARCHIVE_DIR.resolve("watermark");
+            try {
+                if (!Files.exists(watermarkFile)) {
+                    return;
+                }
+                long modified = Files.getLastModifiedTime(watermarkFile).toMillis();
+                long newWatermark = Long.parseLong(new String(Files.readAllBytes(watermarkFile)).trim());
+                if (modified == watermarkModified && newWatermark == watermark) {
+                    return;
+                }
+                index = loadIndex();
+                watermark = newWatermark;
+                watermarkModified = modified;
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error loading transaction archive: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static Map<String, Map<String, List<Block>>> loadIndex() throws IOException {
+        Map<String, Map<String, List<Block>>> loaded = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(ARCHIVE_DIR, "transactions-*.idx")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String month = name.substring("transactions-".length(), name.length() - ".idx".length());
+                Map<String, List<Block>> accounts = new HashMap<>();
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    while (true) {
+                        Block block;
+                        try {
+                            block = Block.read(in);
+                        } catch (EOFException e) {
+                            // Dòng chỉ mục cuối bị cắt dở: block tương ứng chưa được commit xoá khỏi CSDL
+                            break;
+                        }
+                        accounts.computeIfAbsent(block.accountNumber, k -> new ArrayList<>()).add(block);
+                    }
+                }
+                loaded.put(month, accounts);
+            }
+        }
+        return loaded;
+    }
+    
+    // === Đọc ===
+    
+    // Tối đa maxRows giao dịch mới nhất của tài khoản trong [lower, upper), trước cursor (cursorMillis, cursorId),
+    // sắp xếp mới nhất trước. Mỗi id chỉ một lần: job chạy lại có thể ghi cùng giao dịch vào hai block
+    public List<ArchivedTransaction> read(String accountNumber, long lower, long upper,
+                                          long cursorMillis, long cursorId, int maxRows) {
+        long start = System.nanoTime();
+        List<ArchivedTransaction> result = new ArrayList<>();
+        Set<Long> ids = new HashSet<>();
+        long newest = Math.min(Math.min(upper, watermark), cursorMillis + 1);
+        if (newest <= lower) {
+            return result;
+        }
+        
+        // Duyệt từ tháng mới nhất; các tháng cũ hơn chỉ chứa giao dịch cũ hơn nên dừng khi đã đủ
+        YearMonth month = YearMonth.from(toDate(newest - 1));
+        YearMonth oldest = YearMonth.from(toDate(lower));
+        Map<String, Map<String, List<Block>>> snapshot = index;
+        try {
+            for (; !month.isBefore(oldest) && result.size() < maxRows; month = month.minusMonths(1)) {
+                Map<String, List<Block>> accounts = snapshot.get(month.toString());
+                List<Block> blocks = accounts != null ? accounts.get(accountNumber) : null;
+                if (blocks == null) {
+                    continue;
+                }
+                Path segment = ARCHIVE_DIR.resolve("transactions-" + month + ".seg");
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                    for (Block block : blocks) {
+                        if (block.maxMillis < lower || block.minMillis >= newest) {
+                            continue;
+                        }
+                        for (ArchivedTransaction t : block.load(channel, accountNumber)) {
+                            long millis = t.millis;
+                            if (millis >= lower && millis < upper
+                                    && (millis < cursorMillis || (millis == cursorMillis && t.id < cursorId))
+                                    && ids.add(t.id)) {
+                                result.add(t);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading transaction archive: " + e.getMessage());
+        } finally {
+            Metrics.record("archive.read", System.nanoTime() - start);
+        }
+        
+        result.sort(NEWEST_FIRST);
+        return result.size() > maxRows ? new ArrayList<>(result.subList(0, maxRows)) : result;
+    }
+    
+    public static final Comparator<ArchivedTransaction> NEWEST_FIRST = (a, b) ->
+            a.millis != b.millis ? Long.compare(b.millis, a.millis) : Long.compare(b.id, a.id);
+    
+    private static LocalDate toDate(long millis) {
+        return new java.util.Date(millis).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+    
+    public static class ArchivedTransaction {
+        private final long id;
+        private final long millis;
+        private final Transaction transaction;
+        
+        public ArchivedTransaction(long id, long millis, Transaction transaction) {
+            this.id = id;
+            this.millis = millis;
+            this.transaction = transaction;
+        }
+        
+        public long getId() {
+            return id;
+        }
+        
+        public long getMillis() {
+            return millis;
+        }
+        
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+    
+    // Một block của segment: giao dịch của một tài khoản trong một lần lưu trữ
+    private static class Block {
+        private final String accountNumber;
+        private final long offset;
+        private final int length;
+        private final int count;
+        private final long minMillis;
+        private final long maxMillis;
+        
+        Block(String accountNumber, long offset, int length, int count, long minMillis, long maxMillis) {
+            this.accountNumber = accountNumber;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+        
+        static Block read(DataInputStream in) throws IOException {
+            return new Block(in.readUTF(), in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong());
+        }
+        
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(accountNumber);
+            out.writeLong(offset);
+            out.writeInt(length);
+            out.writeInt(count);
+            out.writeLong(minMillis);
+            out.writeLong(maxMillis);
+        }
+        
+        List<ArchivedTransaction> load(FileChannel channel, String accountNumber) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Truncated archive block");
+                }
+            }
+            List<ArchivedTransaction> transactions = new ArrayList<>(count);
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                    new ByteArrayInputStream(buffer.array())))) {
+                for (int i = 0; i < count; i++) {
+                    long id = in.readLong();
+                    long millis = in.readLong();
+                    String operation = in.readUTF();
+                    double amount = in.readDouble();
+                    transactions.add(new ArchivedTransaction(id, millis, new Transaction(
+                            accountNumber, operation, new Timestamp(millis).toLocalDateTime(), amount)));
+                }
+            }
+            return transactions;
+        }
+    }
+    
+    // === Job lưu trữ ===
+    
+    public static void main(String[] args) {
+        int horizonDays = args.length > 0 ? Integer.parseInt(args[0]) : HORIZON_DAYS;
+        LocalDate cutoffDate = LocalDate.now().minusDays(horizonDays);
+        ConnectionPool pool = ConnectionPool.getInstance();
+        try {
+            archive(pool, Timestamp.valueOf(cutoffDate.atStartOfDay()));
+        } catch (IOException | SQLException e) {
+            System.err.println("Archive error: " + e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+    
+    // Chuyển mọi giao dịch trước cutoff ra archive, từng tháng một, mỗi tháng một lần commit
+    static void archive(ConnectionPool pool, Timestamp cutoff) throws IOException, SQLException {
+        Files.createDirectories(ARCHIVE_DIR);
+        long start = System.nanoTime();
+        long total = 0;
+        
+        Connection connection = pool.borrow();
+        try {
+            Timestamp oldest;
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MIN(transactionDate) FROM Transactions")) {
+                oldest = rs.next() ? rs.getTimestamp(1) : null;
+            }
+            
+            if (oldest != null && oldest.before(cutoff)) {
+                YearMonth last = YearMonth.from(cutoff.toLocalDateTime());
+                for (YearMonth month = YearMonth.from(oldest.toLocalDateTime()); !month.isAfter(last); month = month.plusMonths(1)) {
+                    Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+                    Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+                    if (to.after(cutoff)) {
+                        to = cutoff;
+                    }
+                    if (!from.before(to)) {
+                        continue;
+                    }
+                    long moved = archiveMonth(connection, month, from, to);
+                    total += moved;
+                    if (moved > 0) {
+                        System.out.println("  " + month + ": " + moved + " transactions archived");
+                    }
+                }
+            }
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+        
+        // Không còn giao dịch nào trước cutoff trong bảng
+        advanceWatermark(cutoff.getTime());
+        
+        System.out.printf("Archived %d transactions before %s in %.1fs%n",
+                total, cutoff.toLocalDateTime().toLocalDate(), (System.nanoTime() - start) / 1e9);
+    }
+    
+    private static long archiveMonth(Connection connection, YearMonth month, Timestamp from, Timestamp to)
+            throws IOException, SQLException {
+        String querySQL = """
+            SELECT id, accountNumber, operation, transactionDate, amount FROM Transactions
+            WHERE transactionDate >= ? AND transactionDate < ?
+            ORDER BY accountNumber, transactionDate DESC, id DESC
+            """;
+        Path segmentPath = ARCHIVE_DIR.resolve("transactions-" + month + ".seg");
+        Path indexPath = ARCHIVE_DIR.resolve("transactions-" + month + ".idx");
+        
+        long moved = 0;
+        try (FileChannel segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileOutputStream indexFile = new FileOutputStream(indexPath.toFile(), true);
+             DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(indexFile));
+             PreparedStatement select = connection.prepareStatement(querySQL);
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM Transactions WHERE id = ?")) {
+            select.setTimestamp(1, from);
+            select.setTimestamp(2, to);
+            select.setFetchSize(1000);
+            
+            BlockWriter writer = null;
+            int pendingDeletes = 0;
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String accountNumber = rs.getString("accountNumber");
+                    if (writer == null || !writer.accountNumber.equals(accountNumber)) {
+                        if (writer != null) {
+                            writer.finish(segment).write(indexOut);
+                        }
+                        writer = new BlockWriter(accountNumber);
+                    }
+                    long id = rs.getLong("id");
+                    writer.add(id, rs.getTimestamp("transactionDate").getTime(),
+                            rs.getString("operation"), rs.getDouble("amount"));
+                    
+                    delete.setLong(1, id);
+                    delete.addBatch();
+                    if (++pendingDeletes == DELETE_BATCH_SIZE) {
+                        delete.executeBatch();
+                        pendingDeletes = 0;
+                    }
+                    moved++;
+                }
+            }
+            if (writer != null) {
+                writer.finish(segment).write(indexOut);
+            }
+            if (pendingDeletes > 0) {
+                delete.executeBatch();
+            }
+            
+            // Archive bền vững trên đĩa, server thấy được (watermark), rồi mới xoá khỏi CSDL
+            indexOut.flush();
+            segment.force(true);
+            indexFile.getFD().sync();
+            advanceWatermark(to.getTime());
+            if (moved > 0) {
+                awaitServerRefresh();
+            }
+            connection.commit();
+        }
+        return moved;
+    }
+    
+    // Server chỉ đọc archive cho khoảng thời gian trước mốc này; watermark không bao giờ lùi lại.
+    // Luôn ghi lại file (kể cả khi giá trị không đổi) để server nạp lại chỉ mục vừa được nối thêm.
+    private static void advanceWatermark(long millis) throws IOException {
+        Path watermarkFile = ARCHIVE_DIR.resolve("watermark");
+        long previous = Files.exists(watermarkFile)
+                ? Long.parseLong(new String(Files.readAllBytes(watermarkFile)).trim()) : 0;
+        Path temp = ARCHIVE_DIR.resolve("watermark.tmp");
+        Files.write(temp, String.valueOf(Math.max(previous, millis)).getBytes());
+        Files.move(temp, watermarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // Server kiểm tra watermark tối đa mỗi REFRESH_INTERVAL_MS: chờ để nó nạp chỉ mục mới trước khi xoá
+    private static void awaitServerRefresh() throws InterruptedIOException {
+        try {
+            Thread.sleep(REFRESH_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted before commit");
+        }
+    }
+    
+    // Gom giao dịch của một tài khoản thành một block nén
+    private static class BlockWriter {
+        private final String accountNumber;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        private int count;
+        private long minMillis = Long.MAX_VALUE;
+        private long maxMillis = Long.MIN_VALUE;
+        
+        BlockWriter(String accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+        
+        void add(long id, long millis, String operation, double amount) throws IOException {
+            out.writeLong(id);
+            out.writeLong(millis);
+            out.writeUTF(operation);
+            out.writeDouble(amount);
+            count++;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+        
+        Block finish(FileChannel segment) throws IOException {
+            out.close();
+            long offset = segment.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            return new Block(accountNumber, offset, bytes.size(), count, minMillis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package EBankingTCP;
+
+/*
+ * E-Banking System - Transfer Benchmark
+ * Đo thông lượng TRANSFER khi nhiều thread chuyển tiền qua lại giữa một tập tài khoản nhỏ
+ * (tập càng nhỏ, tranh chấp càng cao). Gọi thẳng DatabaseManager, không qua socket.
+ * Cuối cùng kiểm tra tổng số dư của tập tài khoản không đổi.
+ *
+ * Chạy: java EBankingTCP.TransferBenchmark threads=32 accounts=10 ops=20000 [amount=1]
+ *       (thêm -Debanking.ledger=true để đo chế độ sổ cái)
+ */
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransferBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadGenerator.parseOptions(args, 0);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        int accountCount = Integer.parseInt(options.getOrDefault("accounts", "10"));
+        int ops = Integer.parseInt(options.getOrDefault("ops", "20000"));
+        double amount = Double.parseDouble(options.getOrDefault("amount", "1"));
+        
+        ConnectionPool pool = ConnectionPool.getInstance();
+        List<String> accounts = loadAccounts(pool, accountCount);
+        if (accounts.size() < 2) {
+            System.err.println("Need at least 2 accounts (run DatabaseSetup first).");
+            return;
+        }
+        double totalBefore = totalBalance(pool, accounts);
+        
+        System.out.printf("Transferring between %d accounts: %d threads x %d ops%n",
+                accounts.size(), threads, ops / threads);
+        
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder succeeded = new LongAdder();
+        Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                DatabaseManager dbManager = new DatabaseManager(pool);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                startSignal.await();
+                for (int i = 0; i < ops / threads; i++) {
+                    String from = accounts.get(random.nextInt(accounts.size()));
+                    String to = accounts.get(random.nextInt(accounts.size()));
+                    if (from.equals(to)) {
+                        to = accounts.get((accounts.indexOf(from) + 1) % accounts.size());
+                    }
+                    long start = System.nanoTime();
+                    String result = dbManager.transfer(from, to, amount);
+                    latency.record(System.nanoTime() - start);
+                    if (result.startsWith("+OK")) {
+                        succeeded.increment();
+                    } else {
+                        failures.computeIfAbsent(result, k -> new LongAdder()).increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        long start = System.nanoTime();
+        startSignal.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        
+        if (AccountLedger.isEnabled()) {
+            AccountLedger.getInstance().close();
+        }
+        double totalAfter = totalBalance(pool, accounts);
+        
+        System.out.printf("transfers=%d ok=%d throughput=%.0f/s%n",
+                latency.getCount(), succeeded.sum(), latency.getCount() / seconds);
+        System.out.println("latency " + latency.summary());
+        for (Map.Entry<String, LongAdder> entry : failures.entrySet()) {
+            System.out.println("failed " + entry.getValue().sum() + " x " + entry.getKey());
+        }
+        System.out.printf("total balance before=%.2f after=%.2f %s%n", totalBefore, totalAfter,
+                Math.abs(totalBefore - totalAfter) < 0.005 ? "OK" : "MISMATCH");
+        pool.close();
+    }
+    
+    private static List<String> loadAccounts(ConnectionPool pool, int count) throws SQLException {
+        List<String> accounts = new ArrayList<>();
+        Connection connection = pool.borrow();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setMaxRows(count);
+            try (ResultSet rs = stmt.executeQuery("SELECT accountNumber FROM Accounts ORDER BY accountNumber")) {
+                while (rs.next()) {
+                    accounts.add(rs.getString("accountNumber"));
+                }
+            }
+        } finally {
+            pool.release(connection);
+        }
+        return accounts;
+    }
+    
+    private static double totalBalance(ConnectionPool pool, List<String> accounts) throws SQLException {
+        double total = 0;
+        Connection connection = pool.borrow();
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT balance FROM Accounts WHERE accountNumber = ?")) {
+            for (String accountNumber : accounts) {
+                pstmt.setString(1, accountNumber);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        total += rs.getDouble("balance");
+                    }
+                }
+            }
+        } finally {
+            pool.release(connection);
+        }
+        return total;
+    }
+}
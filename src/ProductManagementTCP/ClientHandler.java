@@ -11,13 +11,13 @@ import java.util.List;
 
 public class ClientHandler implements Runnable {
     private Socket clientSocket;
-    private DatabaseManager dbManager;
+    private InventoryEngine inventory;
     private BufferedReader in;
     private PrintWriter out;
     
     public ClientHandler(Socket socket) {
         this.clientSocket = socket;
-        this.dbManager = DatabaseManager.getInstance();
+        this.inventory = InventoryEngine.getInstance();
     }
     
     @Override
@@ -97,7 +97,7 @@ public class ClientHandler implements Runnable {
                 return;
             }
             
-            boolean success = dbManager.addProduct(productID, name, price, count);
+            boolean success = inventory.addProduct(productID, name, price, count);
             
             if (success) {
                 out.println("OK");
@@ -127,7 +127,7 @@ public class ClientHandler implements Runnable {
                 continue;
             }
 
-            boolean success = dbManager.buyProduct(productID);
+            boolean success = inventory.buyProduct(productID);
 
             if (success) {
                 result.append("\t").append(productID).append(":OK");
@@ -155,7 +155,7 @@ public class ClientHandler implements Runnable {
             double fromPrice = Double.parseDouble(parts[1].trim());
             double toPrice = Double.parseDouble(parts[2].trim());
             
-            List<Product> products = dbManager.findProductsByPriceRange(fromPrice, toPrice);
+            List<Product> products = inventory.findProductsByPriceRange(fromPrice, toPrice);
             
             if (products.isEmpty()) {
                 out.println("EMPTY\tNo products found in price range [" + fromPrice + " - " + toPrice + "]");
@@ -185,7 +185,7 @@ public class ClientHandler implements Runnable {
             return;
         }
         
-        List<Product> products = dbManager.findProductsByName(name);
+        List<Product> products = inventory.findProductsByName(name);
         
         if (products.isEmpty()) {
             out.println("EMPTY\tNo products found with name containing: " + name);
@@ -3,7 +3,8 @@ package ProductManagementTCP;
 /*
  * Product Management System - Database Manager
  * Sử dụng Microsoft Access Database với UCanAccess JDBC driver
- * Chỉ sử dụng 1 kết nối duy nhất cho tất cả clients
+ * Chỉ sử dụng 1 kết nối duy nhất, chỉ InventoryEngine dùng: nạp toàn bộ bảng khi khởi động
+ * và ghi các thay đổi từ thread ghi nền (không có hai lời gọi đồng thời trên kết nối)
  */
 
 import java.sql.*;
@@ -67,165 +68,110 @@ public class DatabaseManager {
         }
     }
     
-    // Thêm sản phẩm mới
-    public synchronized boolean addProduct(String productID, String name, double price, int count) {
-        // Kiểm tra mã sản phẩm đã tồn tại chưa
-        if (isProductExists(productID)) {
-            return false;
+    private static final String INSERT_SQL = "INSERT INTO Products (productID, name, count, price) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_COUNT_SQL = "UPDATE Products SET count = ? WHERE productID = ?";
+    
+    // Lấy tất cả sản phẩm; lỗi được ném ra để server không chạy với kho hàng rỗng
+    public synchronized List<Product> getAllProducts() throws SQLException {
+        if (connection == null) {
+            throw new SQLException("No database connection");
         }
+        List<Product> products = new ArrayList<>();
+        String querySQL = "SELECT * FROM Products";
         
-        String insertSQL = "INSERT INTO Products (productID, name, count, price) VALUES (?, ?, ?, ?)";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-            pstmt.setString(1, productID);
-            pstmt.setString(2, name);
-            pstmt.setInt(3, count);
-            pstmt.setDouble(4, price);
-            
-            pstmt.executeUpdate();
-            connection.commit();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error adding product: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(querySQL)) {
+            while (rs.next()) {
+                products.add(new Product(
+                    rs.getString("productID"),
+                    rs.getString("name"),
+                    rs.getInt("count"),
+                    rs.getDouble("price")
+                ));
             }
-            return false;
         }
+        return products;
     }
     
-    // Kiểm tra sản phẩm tồn tại
-    private boolean isProductExists(String productID) {
-        String querySQL = "SELECT COUNT(*) FROM Products WHERE productID = ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, productID);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Error checking product: " + e.getMessage());
+    // Ghi sản phẩm mới và số lượng mới trong một transaction. Nếu lỗi, ghi lại từng dòng
+    // để một dòng hỏng không chặn các dòng khác. Trả về mã các sản phẩm chưa ghi được
+    public synchronized List<String> saveChanges(List<Product> inserts, List<Product> updates) throws SQLException {
+        if (connection == null) {
+            throw new SQLException("No database connection");
         }
-        return false;
-    }
-    
-    // Mua sản phẩm - giảm số lượng đi 1
-    public synchronized boolean buyProduct(String productID) {
-        // Kiểm tra sản phẩm tồn tại và còn hàng
-        String checkSQL = "SELECT count FROM Products WHERE productID = ?";
-        int currentCount = 0;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(checkSQL)) {
-            pstmt.setString(1, productID);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    currentCount = rs.getInt("count");
-                } else {
-                    return false; // Sản phẩm không tồn tại
-                }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+             PreparedStatement update = connection.prepareStatement(UPDATE_COUNT_SQL)) {
+            for (Product product : inserts) {
+                bindInsert(insert, product);
+                insert.addBatch();
+            }
+            for (Product product : updates) {
+                bindUpdate(update, product);
+                update.addBatch();
+            }
+            if (!inserts.isEmpty()) {
+                insert.executeBatch();
             }
+            if (!updates.isEmpty()) {
+                update.executeBatch();
+            }
+            connection.commit();
+            return new ArrayList<>();
         } catch (SQLException e) {
-            System.err.println("Error checking product count: " + e.getMessage());
-            return false;
+            System.err.println("Error saving products, retrying one by one: " + e.getMessage());
+            rollback();
         }
         
-        if (currentCount <= 0) {
-            return false; // Hết hàng
+        List<String> failed = new ArrayList<>();
+        for (Product product : inserts) {
+            if (!saveOne(INSERT_SQL, product, true)) {
+                failed.add(product.getProductID());
+            }
         }
-        
-        // Giảm số lượng
-        String updateSQL = "UPDATE Products SET count = count - 1 WHERE productID = ? AND count > 0";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
-            pstmt.setString(1, productID);
-            int rowsAffected = pstmt.executeUpdate();
-            connection.commit();
-            return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("Error buying product: " + e.getMessage());
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
+        for (Product product : updates) {
+            if (!saveOne(UPDATE_COUNT_SQL, product, false)) {
+                failed.add(product.getProductID());
             }
-            return false;
         }
+        return failed;
     }
     
-    // Tìm sản phẩm theo tên (tìm gần đúng, không phân biệt hoa thường)
-    public synchronized List<Product> findProductsByName(String name) {
-        List<Product> products = new ArrayList<>();
-        String querySQL = "SELECT * FROM Products WHERE LOWER(name) LIKE LOWER(?)";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setString(1, "%" + name + "%");
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    products.add(new Product(
-                        rs.getString("productID"),
-                        rs.getString("name"),
-                        rs.getInt("count"),
-                        rs.getDouble("price")
-                    ));
-                }
+    private boolean saveOne(String sql, Product product, boolean insert) {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            if (insert) {
+                bindInsert(pstmt, product);
+            } else {
+                bindUpdate(pstmt, product);
             }
+            pstmt.executeUpdate();
+            connection.commit();
+            return true;
         } catch (SQLException e) {
-            System.err.println("Error finding products by name: " + e.getMessage());
+            System.err.println("Error saving product " + product.getProductID() + ": " + e.getMessage());
+            rollback();
+            return false;
         }
-        return products;
     }
     
-    // Tìm sản phẩm theo khoảng giá
-    public synchronized List<Product> findProductsByPriceRange(double fromPrice, double toPrice) {
-        List<Product> products = new ArrayList<>();
-        String querySQL = "SELECT * FROM Products WHERE price >= ? AND price <= ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
-            pstmt.setDouble(1, fromPrice);
-            pstmt.setDouble(2, toPrice);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    products.add(new Product(
-                        rs.getString("productID"),
-                        rs.getString("name"),
-                        rs.getInt("count"),
-                        rs.getDouble("price")
-                    ));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Error finding products by price: " + e.getMessage());
-        }
-        return products;
+    private static void bindInsert(PreparedStatement pstmt, Product product) throws SQLException {
+        pstmt.setString(1, product.getProductID());
+        pstmt.setString(2, product.getName());
+        pstmt.setInt(3, product.getCount());
+        pstmt.setDouble(4, product.getPrice());
     }
     
-    // Lấy tất cả sản phẩm
-    public synchronized List<Product> getAllProducts() {
-        List<Product> products = new ArrayList<>();
-        String querySQL = "SELECT * FROM Products";
-        
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(querySQL)) {
-            while (rs.next()) {
-                products.add(new Product(
-                    rs.getString("productID"),
-                    rs.getString("name"),
-                    rs.getInt("count"),
-                    rs.getDouble("price")
-                ));
-            }
-        } catch (SQLException e) {
-            System.err.println("Error getting all products: " + e.getMessage());
+    private static void bindUpdate(PreparedStatement pstmt, Product product) throws SQLException {
+        pstmt.setInt(1, product.getCount());
+        pstmt.setString(2, product.getProductID());
+    }
+    
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            System.err.println("Rollback error: " + ex.getMessage());
         }
-        return products;
     }
     
     // Đóng kết nối
@@ -0,0 +1,259 @@
+package ProductManagementTCP;
+
+/*
+ * Product Management System - Inventory Engine
+ * Kho hàng trong bộ nhớ, dùng chung cho mọi ClientHandler:
+ * - Products nằm trong ConcurrentHashMap, NAME/PRICE đọc không cần khoá chung
+ * - BUY giảm số lượng dưới khoá của một stripe (theo productID), sản phẩm khác stripe được mua song song
+ * - Thay đổi được ghi xuống bảng Products bởi một thread nền mỗi FLUSH_INTERVAL_MS;
+ *   nhiều lần mua cùng một sản phẩm gộp thành một UPDATE. close() ghi nốt trước khi tắt
+ * - Dòng ghi lỗi chỉ bị hoãn riêng nó; lỗi MAX_ATTEMPTS lần liên tiếp thì bị bỏ (ghi log để xử lý tay)
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+public class InventoryEngine {
+    private static final int LOCK_STRIPES = 64;
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final long RETRY_DELAY_MS = 5000;
+    private static final int MAX_ATTEMPTS = 5;
+    
+    // Singleton instance
+    private static InventoryEngine instance;
+    
+    private final DatabaseManager database;
+    private final ConcurrentHashMap<String, Item> items = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // Sản phẩm mới chưa INSERT / sản phẩm đổi số lượng chưa UPDATE
+    private final Set<String> pendingInserts = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService writer;
+    // CSDL không dùng được: hoãn toàn bộ; dòng lỗi riêng lẻ: hoãn theo từng sản phẩm (chỉ thread ghi truy cập)
+    private volatile long retryAt = 0;
+    private final Map<String, Retry> retries = new HashMap<>();
+    private boolean closed = false;
+    
+    private static class Retry {
+        private int attempts;
+        private long at;
+    }
+    
+    // Một sản phẩm trong kho; chỉ count thay đổi, dưới khoá stripe của sản phẩm
+    private static class Item {
+        private final String productID;
+        private final String name;
+        private final double price;
+        private volatile int count;
+        
+        Item(String productID, String name, int count, double price) {
+            this.productID = productID;
+            this.name = name;
+            this.count = count;
+            this.price = price;
+        }
+        
+        Product toProduct() {
+            return new Product(productID, name, count, price);
+        }
+    }
+    
+    private InventoryEngine() {
+        database = DatabaseManager.getInstance();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        
+        // Nạp toàn bộ bảng một lần; sau đó bộ nhớ là bản chính, nên không được chạy tiếp với kho rỗng giả
+        try {
+            for (Product product : database.getAllProducts()) {
+                items.put(product.getProductID(),
+                          new Item(product.getProductID(), product.getName(), product.getCount(), product.getPrice()));
+            }
+        } catch (SQLException e) {
+            database.closeConnection();
+            throw new IllegalStateException("Cannot load inventory: " + e.getMessage(), e);
+        }
+        System.out.println("Inventory loaded: " + items.size() + " products.");
+        
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(() -> flush(false), FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    public static synchronized InventoryEngine getInstance() {
+        if (instance == null) {
+            instance = new InventoryEngine();
+        }
+        return instance;
+    }
+    
+    // Thêm sản phẩm mới; false nếu mã sản phẩm đã tồn tại
+    public boolean addProduct(String productID, String name, double price, int count) {
+        if (items.putIfAbsent(productID, new Item(productID, name, count, price)) != null) {
+            return false;
+        }
+        pendingInserts.add(productID);
+        return true;
+    }
+    
+    // Mua sản phẩm - giảm số lượng đi 1; false nếu không tồn tại hoặc hết hàng
+    public boolean buyProduct(String productID) {
+        Item item = items.get(productID);
+        if (item == null) {
+            return false;
+        }
+        synchronized (locks[Math.floorMod(productID.hashCode(), LOCK_STRIPES)]) {
+            if (item.count <= 0) {
+                return false;
+            }
+            item.count--;
+        }
+        dirty.add(productID);
+        return true;
+    }
+    
+    // Tìm sản phẩm theo tên (tìm gần đúng, không phân biệt hoa thường)
+    public List<Product> findProductsByName(String name) {
+        String keyword = name.toLowerCase();
+        return find(item -> item.name.toLowerCase().contains(keyword));
+    }
+    
+    // Tìm sản phẩm theo khoảng giá
+    public List<Product> findProductsByPriceRange(double fromPrice, double toPrice) {
+        return find(item -> item.price >= fromPrice && item.price <= toPrice);
+    }
+    
+    // Lấy tất cả sản phẩm
+    public List<Product> getAllProducts() {
+        return find(item -> true);
+    }
+    
+    private List<Product> find(Predicate<Item> filter) {
+        List<Product> products = new ArrayList<>();
+        for (Item item : items.values()) {
+            if (filter.test(item)) {
+                products.add(item.toProduct());
+            }
+        }
+        products.sort(Comparator.comparing(Product::getProductID));
+        return products;
+    }
+    
+    // Ghi các thay đổi đang chờ. CSDL lỗi thì giữ tất cả và thử lại sau RETRY_DELAY_MS;
+    // dòng lỗi riêng lẻ chỉ hoãn chính nó. force = true (khi tắt) bỏ qua mọi thời gian chờ
+    private synchronized void flush(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now < retryAt) {
+            return;
+        }
+        
+        // Lấy ra khỏi hàng chờ TRƯỚC khi đọc số lượng: lần mua sau đó sẽ được ghi ở lần flush sau
+        Set<String> insertIds = drain(pendingInserts);
+        Set<String> updateIds = drain(dirty);
+        updateIds.removeAll(insertIds);
+        if (!force) {
+            holdBack(insertIds, pendingInserts, now);
+            holdBack(updateIds, dirty, now);
+        }
+        if (insertIds.isEmpty() && updateIds.isEmpty()) {
+            return;
+        }
+        
+        List<String> failed;
+        try {
+            failed = database.saveChanges(snapshot(insertIds), snapshot(updateIds));
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error saving inventory: " + e.getMessage());
+            pendingInserts.addAll(insertIds);
+            dirty.addAll(updateIds);
+            retryAt = now + RETRY_DELAY_MS;
+            return;
+        }
+        
+        Set<String> saved = new HashSet<>(insertIds);
+        saved.addAll(updateIds);
+        saved.removeAll(failed);
+        retries.keySet().removeAll(saved);
+        for (String productID : failed) {
+            boolean insert = insertIds.contains(productID);
+            Retry retry = retries.computeIfAbsent(productID, k -> new Retry());
+            if (++retry.attempts >= MAX_ATTEMPTS) {
+                // Bỏ dòng này để không ghi lại mãi; log giữ giá trị để xử lý tay
+                retries.remove(productID);
+                System.err.println("Inventory: giving up on " + (insert ? "INSERT " : "UPDATE ")
+                        + items.get(productID).toProduct() + " after " + MAX_ATTEMPTS + " attempts");
+                continue;
+            }
+            retry.at = now + RETRY_DELAY_MS;
+            (insert ? pendingInserts : dirty).add(productID);
+        }
+    }
+    
+    // Đưa các sản phẩm chưa đến lượt thử lại về hàng chờ
+    private void holdBack(Set<String> drained, Set<String> pending, long now) {
+        for (Iterator<String> it = drained.iterator(); it.hasNext(); ) {
+            String productID = it.next();
+            Retry retry = retries.get(productID);
+            if (retry != null && now < retry.at) {
+                it.remove();
+                pending.add(productID);
+            }
+        }
+    }
+    
+    private static Set<String> drain(Set<String> pending) {
+        Set<String> drained = new HashSet<>();
+        for (String productID : pending) {
+            if (pending.remove(productID)) {
+                drained.add(productID);
+            }
+        }
+        return drained;
+    }
+    
+    private List<Product> snapshot(Set<String> productIDs) {
+        List<Product> products = new ArrayList<>(productIDs.size());
+        for (String productID : productIDs) {
+            products.add(items.get(productID).toProduct());
+        }
+        return products;
+    }
+    
+    // Dừng thread ghi, ghi nốt các thay đổi rồi đóng kết nối CSDL
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+        int unsaved = pendingInserts.size() + dirty.size();
+        if (unsaved > 0) {
+            System.err.println("Inventory: " + unsaved + " products could not be saved.");
+        }
+        database.closeConnection();
+    }
+}
@@ -19,6 +19,7 @@ public class Server {
     private ServerSocket serverSocket;
     private ExecutorService threadPool;
     private volatile boolean running;
+    private volatile InventoryEngine inventory;
     
     public Server() {
         this.threadPool = Executors.newFixedThreadPool(MAX_THREADS);
@@ -26,6 +27,15 @@ public class Server {
     }
     
     public void start() {
+        // Nạp kho hàng trước khi nhận kết nối: CSDL lỗi thì không khởi động
+        try {
+            inventory = InventoryEngine.getInstance();
+        } catch (IllegalStateException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            threadPool.shutdown();
+            return;
+        }
+        
         try {
             serverSocket = new ServerSocket(PORT, 0, java.net.InetAddress.getByName(HOST));
             running = true;
@@ -65,8 +75,6 @@ public class Server {
     }
     
     private void initializeSampleData() {
-        DatabaseManager dbManager = DatabaseManager.getInstance();
-        
         // Thêm dữ liệu mẫu nếu chưa có
         String[][] sampleProducts = {
             {"P001", "Laptop Dell Inspiron 15", "50000000", "10"},
@@ -83,7 +91,7 @@ public class Server {
         
         for (String[] product : sampleProducts) {
             try {
-                dbManager.addProduct(
+                inventory.addProduct(
                     product[0],
                     product[1],
                     Double.parseDouble(product[2]),
@@ -121,18 +129,26 @@ public class Server {
             threadPool.shutdownNow();
         }
         
-        // Đóng database connection
-        DatabaseManager.getInstance().closeConnection();
+        // Ghi nốt thay đổi của kho hàng và đóng database connection
+        closeInventory();
         
         System.out.println("Server shutdown complete.");
     }
     
+    private void closeInventory() {
+        if (inventory != null) {
+            inventory.close();
+        }
+    }
+    
     public static void main(String[] args) {
         Server server = new Server();
         
         // Đăng ký shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             server.stop();
+            // JVM chờ hook kết thúc: các lần mua chưa ghi xuống CSDL không bị mất khi Ctrl+C
+            server.closeInventory();
         }));
         
         server.start();
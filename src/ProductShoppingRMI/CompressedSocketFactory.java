@@ -0,0 +1,294 @@
+package ProductShoppingRMI;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedSocketFactory - Socket factory nén DEFLATE cho lưu lượng RMI qua đường WAN
+ * Dữ liệu được gom thành frame theo mỗi lần RMI flush; frame nhỏ hơn ngưỡng gửi nguyên,
+ * frame lớn hơn nén bằng một Deflater dùng suốt kết nối (SYNC_FLUSH) để danh sách sản phẩm
+ * lặp lại giữa các lời gọi cũng được nén theo từ điển chung.
+ * Bật khi khởi động server: -Dshopping.rmi.compress=true (ngưỡng: -Dshopping.rmi.compressThreshold=512)
+ */
+public class CompressedSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int FRAME_RAW = 0;
+    private static final int FRAME_DEFLATED = 1;
+    private static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    // Thống kê trong JVM này (cả hai chiều nếu client và server cùng JVM)
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder wireBytes = new LongAdder();
+
+    private final int threshold;
+
+    public CompressedSocketFactory(int threshold) {
+        this.threshold = threshold;
+    }
+
+    // Factory theo tuỳ chọn khởi động, null = socket RMI mặc định
+    public static CompressedSocketFactory fromProperties() {
+        if (!Boolean.getBoolean("shopping.rmi.compress")) {
+            return null;
+        }
+        return new CompressedSocketFactory(Integer.getInteger("shopping.rmi.compressThreshold", 512));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return new CompressedSocket(host, port, threshold);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new CompressedServerSocket(port, threshold);
+    }
+
+    public static long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public static long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    public static void resetStats() {
+        rawBytes.reset();
+        wireBytes.reset();
+    }
+
+    // RMI so sánh factory để dùng chung kết nối giữa các đối tượng export cùng cấu hình
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CompressedSocketFactory && ((CompressedSocketFactory) o).threshold == threshold;
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode() * 31 + threshold;
+    }
+
+    private static class CompressedServerSocket extends ServerSocket {
+        private final int threshold;
+
+        CompressedServerSocket(int port, int threshold) throws IOException {
+            super(port);
+            this.threshold = threshold;
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = new CompressedSocket(threshold);
+            implAccept(socket);
+            return socket;
+        }
+    }
+
+    private static class CompressedSocket extends Socket {
+        private final int threshold;
+        private InputStream in;
+        private OutputStream out;
+
+        CompressedSocket(int threshold) {
+            super();
+            this.threshold = threshold;
+        }
+
+        CompressedSocket(String host, int port, int threshold) throws IOException {
+            super(host, port);
+            this.threshold = threshold;
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new InflatingInputStream(super.getInputStream());
+            }
+            return in;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new DeflatingOutputStream(super.getOutputStream(), threshold);
+            }
+            return out;
+        }
+    }
+
+    // Frame: [loại 1 byte][độ dài trên dây 4 byte][độ dài gốc 4 byte][dữ liệu]
+    private static class DeflatingOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int threshold;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final byte[] buffer = new byte[MAX_FRAME_SIZE];
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private final byte[] chunk = new byte[8192];
+        private int count;
+
+        DeflatingOutputStream(OutputStream out, int threshold) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, MAX_FRAME_SIZE + 16));
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeFrame();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeFrame();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+
+        private void writeFrame() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            rawBytes.add(count);
+            if (count < threshold) {
+                out.writeByte(FRAME_RAW);
+                out.writeInt(count);
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+                wireBytes.add(count + 9);
+            } else {
+                compressed.reset();
+                deflater.setInput(buffer, 0, count);
+                int n;
+                do {
+                    n = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    compressed.write(chunk, 0, n);
+                } while (n == chunk.length);
+
+                out.writeByte(FRAME_DEFLATED);
+                out.writeInt(compressed.size());
+                out.writeInt(count);
+                compressed.writeTo(out);
+                wireBytes.add(compressed.size() + 9);
+            }
+            count = 0;
+        }
+    }
+
+    private static class InflatingInputStream extends InputStream {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private byte[] buffer = new byte[0];
+        private byte[] compressed = new byte[0];
+        private int position;
+        private int limit;
+
+        InflatingInputStream(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 8192));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !readFrame()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !readFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean readFrame() throws IOException {
+            int type;
+            try {
+                type = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return false;
+            }
+            int wireLength = in.readInt();
+            int rawLength = in.readInt();
+            if (rawLength < 0 || rawLength > MAX_FRAME_SIZE || wireLength < 0) {
+                throw new IOException("Corrupted compressed frame");
+            }
+            if (buffer.length < rawLength) {
+                buffer = new byte[MAX_FRAME_SIZE];
+            }
+
+            if (type == FRAME_RAW) {
+                in.readFully(buffer, 0, rawLength);
+            } else if (type == FRAME_DEFLATED) {
+                if (compressed.length < wireLength) {
+                    compressed = new byte[wireLength];
+                }
+                in.readFully(compressed, 0, wireLength);
+                inflater.setInput(compressed, 0, wireLength);
+                try {
+                    int produced = 0;
+                    while (produced < rawLength) {
+                        int n = inflater.inflate(buffer, produced, rawLength - produced);
+                        if (n == 0 && inflater.needsInput()) {
+                            throw new IOException("Truncated compressed frame");
+                        }
+                        produced += n;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupted compressed frame: " + e.getMessage());
+                }
+            } else {
+                throw new IOException("Unknown frame type " + type);
+            }
+            position = 0;
+            limit = rawLength;
+            return true;
+        }
+    }
+}
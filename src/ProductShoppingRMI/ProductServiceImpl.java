@@ -17,7 +17,16 @@ public class ProductServiceImpl extends UnicastRemoteObject implements ProductSe
     private ConcurrentHashMap<String, Boolean> loggedInUsers;
 
     public ProductServiceImpl() throws RemoteException {
-        super();
+        this(null);
+    }
+
+    /**
+     * Export service với socket factory tuỳ chọn
+     * @param socketFactory Factory nén dữ liệu, null = socket RMI mặc định
+     * @throws RemoteException Lỗi export đối tượng
+     */
+    public ProductServiceImpl(CompressedSocketFactory socketFactory) throws RemoteException {
+        super(0, socketFactory, socketFactory);
         this.dbManager = new DatabaseManager();
         this.loggedInUsers = new ConcurrentHashMap<>();
         System.out.println("[Server] ProductServiceImpl đã được khởi tạo!");
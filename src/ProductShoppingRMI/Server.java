@@ -30,8 +30,10 @@ public class Server {
             System.out.println("║    SERVER MUA BÁN SẢN PHẨM (RMI) - ĐANG CHẠY                ║");
             System.out.println("╠══════════════════════════════════════════════════════════════╣");
             
-            // Tạo instance của implementation
-            productService = new ProductServiceImpl();
+            // Tạo instance của implementation (nén DEFLATE nếu bật -Dshopping.rmi.compress=true)
+            CompressedSocketFactory socketFactory = CompressedSocketFactory.fromProperties();
+            productService = new ProductServiceImpl(socketFactory);
+            System.out.println("║  Nén dữ liệu: " + (socketFactory != null ? "DEFLATE" : "tắt"));
             
             // Tạo registry trên port 5918
             registry = LocateRegistry.createRegistry(REGISTRY_PORT);